@@ -0,0 +1,50 @@
+import com.typesafe.config.Config;
+import play.Environment;
+import play.api.OptionalSourceMapper;
+import play.api.routing.Router;
+import play.http.DefaultHttpErrorHandler;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.mvc.Results;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Answers work rejected because too much is waiting, e.g. database operations of a full
+ * bulkhead or passwords to hash, with 503, so clients retry later instead of seeing an
+ * error page. Other errors are handled as usual.
+ *
+ * Play will automatically use any class called `ErrorHandler` that is in
+ * the root package.
+ */
+@Singleton
+public class ErrorHandler extends DefaultHttpErrorHandler {
+
+    /**
+     * Seconds after which clients may retry a rejected request
+     */
+    private static final String RETRY_AFTER = "1";
+
+    @Inject
+    public ErrorHandler(Config config, Environment environment, OptionalSourceMapper sourceMapper,
+                        Provider<Router> routes) {
+        super(config, environment, sourceMapper, routes);
+    }
+
+    @Override
+    public CompletionStage<Result> onServerError(Http.RequestHeader request, Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RejectedExecutionException) {
+                return CompletableFuture.completedFuture(
+                    Results.status(Http.Status.SERVICE_UNAVAILABLE, "Server busy, please try again")
+                        .withHeader(Http.HeaderNames.RETRY_AFTER, RETRY_AFTER));
+            }
+        }
+        return super.onServerError(request, exception);
+    }
+}
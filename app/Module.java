@@ -1,6 +1,8 @@
 import com.google.inject.AbstractModule;
 import java.time.Clock;
 
+import repositoryies.InvalidationBus;
+import repositoryies.TrigramIndexes;
 import services.ApplicationTimer;
 import services.AtomicCounter;
 import services.Counter;
@@ -24,6 +26,10 @@ public class Module extends AbstractModule {
         // Ask Guice to create an instance of ApplicationTimer when the
         // application starts.
         bind(ApplicationTimer.class).asEagerSingleton();
+        // Create the trigram indexes of the list filters once the evolutions ran
+        bind(TrigramIndexes.class).asEagerSingleton();
+        // Listen to the cache invalidations of the other nodes from the start
+        bind(InvalidationBus.class).asEagerSingleton();
         // Set AtomicCounter as the implementation for Counter.
         bind(Counter.class).to(AtomicCounter.class);
     }
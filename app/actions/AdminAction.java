@@ -42,7 +42,7 @@ public class AdminAction extends Action<Admin> {
 
         try {
             Long userId = Long.parseLong(userIdOptional.get());
-            return userRepository.findById(userId).thenComposeAsync(userOptional -> {
+            return userRepository.findAuthenticated(userId).thenComposeAsync(userOptional -> {
                 if (userOptional.isEmpty()) {
                     return CompletableFuture.completedFuture(
                         Results.redirect(routes.AuthController.showLogin())
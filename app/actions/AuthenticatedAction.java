@@ -45,7 +45,7 @@ public class AuthenticatedAction extends Action<Authenticated> {
 
         try {
             Long userId = Long.parseLong(userIdOptional.get());
-            return userRepository.findById(userId).thenComposeAsync(userOptional -> {
+            return userRepository.findAuthenticated(userId).thenComposeAsync(userOptional -> {
                 if (userOptional.isEmpty()) {
                     return CompletableFuture.completedFuture(
                         Results.redirect(routes.AuthController.showLogin())
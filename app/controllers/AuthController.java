@@ -15,8 +15,11 @@ import play.mvc.Controller;
 import play.mvc.Http;
 import play.mvc.Result;
 import play.mvc.Results;
+import play.twirl.api.Html;
 import repositoryies.UserRepository;
 import services.EmailService;
+import services.LoginRateLimiter;
+import services.PasswordHasher;
 import services.PasswordStrengthService;
 import services.SlackNotificationService;
 import utils.GlobalConfigHelper;
@@ -29,6 +32,7 @@ import views.html.auth.resetPassword;
 import javax.inject.Inject;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * This controller handles authentication related actions
@@ -43,6 +47,8 @@ public class AuthController extends Controller {
     private final EmailService emailService;
     private final SlackNotificationService slackNotificationService;
     private final PasswordStrengthService passwordStrengthService;
+    private final PasswordHasher passwordHasher;
+    private final LoginRateLimiter rateLimiter;
 
     @Inject
     public AuthController(UserRepository userRepository,
@@ -51,7 +57,9 @@ public class AuthController extends Controller {
                          MessagesApi messagesApi,
                          EmailService emailService,
                          SlackNotificationService slackNotificationService,
-                         PasswordStrengthService passwordStrengthService) {
+                         PasswordStrengthService passwordStrengthService,
+                         PasswordHasher passwordHasher,
+                         LoginRateLimiter rateLimiter) {
         this.userRepository = userRepository;
         this.formFactory = formFactory;
         this.classLoaderExecutionContext = classLoaderExecutionContext;
@@ -59,6 +67,8 @@ public class AuthController extends Controller {
         this.emailService = emailService;
         this.slackNotificationService = slackNotificationService;
         this.passwordStrengthService = passwordStrengthService;
+        this.passwordHasher = passwordHasher;
+        this.rateLimiter = rateLimiter;
     }
 
     /**
@@ -67,7 +77,7 @@ public class AuthController extends Controller {
     public Result showLogin(Http.Request request) {
         // If user is already logged in, redirect to crops
         if (request.session().get("userId").isPresent()) {
-            return Results.redirect(routes.CropController.list(0, "name", "asc", ""));
+            return Results.redirect(routes.CropController.list(0, "name", "asc", "", ""));
         }
         
         Form<LoginForm> loginForm = formFactory.form(LoginForm.class);
@@ -87,11 +97,34 @@ public class AuthController extends Controller {
         }
 
         LoginForm data = loginForm.get();
-        
-        return userRepository.findByUsername(data.getUsername()).thenApplyAsync(userOptional -> {
-            if (userOptional.isPresent()) {
-                User user = userOptional.get();
-                if (user.checkPassword(data.getPassword())) {
+
+        // Refuse too many attempts before reading the user or checking the password
+        return rateLimiter.tryAcquire(LoginRateLimiter.Action.LOGIN, request, data.getUsername()).thenComposeAsync(allowed -> {
+            if (!allowed) {
+                return CompletableFuture.completedFuture(tooManyAttempts(login.render(
+                    loginForm.withGlobalError("ログインの試行回数が多すぎます。しばらく時間をおいて再度お試しください。"),
+                    request,
+                    messagesApi.preferred(request)
+                )));
+            }
+            return authenticate(request, loginForm, data);
+        }, classLoaderExecutionContext.current());
+    }
+
+    /**
+     * Check the password of a login and start the session
+     */
+    private CompletionStage<Result> authenticate(Http.Request request, Form<LoginForm> loginForm, LoginForm data) {
+        return userRepository.findByUsername(data.getUsername()).thenComposeAsync(userOptional -> {
+            // bcrypt runs on the password hashing threads, not on the rendering pool
+            CompletionStage<Boolean> passwordMatches = userOptional
+                .map(user -> passwordHasher.check(data.getPassword(), user.getPassword()))
+                .orElse(CompletableFuture.completedFuture(false));
+            return passwordMatches.thenApplyAsync(matches -> {
+                if (matches) {
+                    User user = userOptional.get();
+                    rehashIfNeeded(user, data.getPassword());
+                    rateLimiter.reset(LoginRateLimiter.Action.LOGIN, data.getUsername());
                     // Send Slack notification for successful login
                     slackNotificationService.notifyUserLogin(user, request)
                         .exceptionally(throwable -> {
@@ -99,27 +132,48 @@ public class AuthController extends Controller {
                             return false;
                         });
                     
-                    return Results.redirect(routes.CropController.list(0, "name", "asc", ""))
+                    return Results.redirect(routes.CropController.list(0, "name", "asc", "", ""))
                             .addingToSession(request, "userId", user.getId().toString())
                             .flashing("success", "ログインしました");
                 }
-            }
-            
-            return badRequest(login.render(
-                loginForm.withError("username", "ユーザー名またはパスワードが間違っています"),
-                request, 
-                messagesApi.preferred(request)
-            ));
+                
+                return badRequest(login.render(
+                    loginForm.withError("username", "ユーザー名またはパスワードが間違っています"),
+                    request, 
+                    messagesApi.preferred(request)
+                ));
+            }, classLoaderExecutionContext.current());
         }, classLoaderExecutionContext.current());
     }
 
+    /**
+     * Replace the hash of a password made with another bcrypt cost than new hashes,
+     * without making the login wait for it
+     */
+    private void rehashIfNeeded(User user, String password) {
+        if (!passwordHasher.needsRehash(user.getPassword())) {
+            return;
+        }
+        try {
+            passwordHasher.hash(password).thenCompose(passwordHash -> {
+                user.setPasswordHash(passwordHash);
+                return userRepository.update(user);
+            }).exceptionally(throwable -> {
+                play.Logger.of(AuthController.class).warn("Failed to rehash the password of user: " + user.getUsername(), throwable);
+                return null;
+            });
+        } catch (RejectedExecutionException e) {
+            // Too busy now, the password is rehashed at a later login
+        }
+    }
+
     /**
      * Display the registration form
      */
     public Result showRegister(Http.Request request) {
         // If user is already logged in, redirect to crops
         if (request.session().get("userId").isPresent()) {
-            return Results.redirect(routes.CropController.list(0, "name", "asc", ""));
+            return Results.redirect(routes.CropController.list(0, "name", "asc", "", ""));
         }
         
         Form<RegisterForm> registerForm = formFactory.form(RegisterForm.class);
@@ -199,31 +253,36 @@ public class AuthController extends Controller {
                 }
                 
                 // Create new user
-                User user = new User(data.getUsername(), data.getEmail(), data.getPassword());
-                return userRepository.insert(user).thenComposeAsync(userId -> {
-                    // Update user ID
-                    user.setId(userId);
-                    
-                    // Send welcome email asynchronously
-                    emailService.sendWelcomeEmail(data.getEmail(), data.getUsername())
-                        .exceptionally(throwable -> {
-                            // Log error but don't fail registration
-                            play.Logger.of(AuthController.class).warn("Failed to send welcome email to: " + data.getEmail(), throwable);
-                            return false;
-                        });
-                    
-                    // Send Slack notification for user registration
-                    slackNotificationService.notifyUserRegistration(user, request)
-                        .exceptionally(throwable -> {
-                            play.Logger.of(AuthController.class).warn("Failed to send Slack registration notification for user: " + data.getUsername(), throwable);
-                            return false;
-                        });
-                    
-                    return CompletableFuture.completedFuture(
-                        Results.redirect(routes.CropController.list(0, "name", "asc", ""))
-                                .addingToSession(request, "userId", userId.toString())
-                                .flashing("success", "アカウントが作成されました")
-                    );
+                return passwordHasher.hash(data.getPassword()).thenComposeAsync(passwordHash -> {
+                    User user = new User();
+                    user.setUsername(data.getUsername());
+                    user.setEmail(data.getEmail());
+                    user.setPasswordHash(passwordHash);
+                    return userRepository.insert(user).thenComposeAsync(userId -> {
+                        // Update user ID
+                        user.setId(userId);
+                        
+                        // Send welcome email asynchronously
+                        emailService.sendWelcomeEmail(data.getEmail(), data.getUsername())
+                            .exceptionally(throwable -> {
+                                // Log error but don't fail registration
+                                play.Logger.of(AuthController.class).warn("Failed to send welcome email to: " + data.getEmail(), throwable);
+                                return false;
+                            });
+                        
+                        // Send Slack notification for user registration
+                        slackNotificationService.notifyUserRegistration(user, request)
+                            .exceptionally(throwable -> {
+                                play.Logger.of(AuthController.class).warn("Failed to send Slack registration notification for user: " + data.getUsername(), throwable);
+                                return false;
+                            });
+                        
+                        return CompletableFuture.completedFuture(
+                            Results.redirect(routes.CropController.list(0, "name", "asc", "", ""))
+                                    .addingToSession(request, "userId", userId.toString())
+                                    .flashing("success", "アカウントが作成されました")
+                        );
+                    }, classLoaderExecutionContext.current());
                 }, classLoaderExecutionContext.current());
             }, classLoaderExecutionContext.current());
         }, classLoaderExecutionContext.current());
@@ -259,7 +318,25 @@ public class AuthController extends Controller {
         }
 
         ForgotPasswordForm data = forgotPasswordForm.get();
-        
+
+        // Refuse too many requests before looking up the email
+        return rateLimiter.tryAcquire(LoginRateLimiter.Action.FORGOT_PASSWORD, request, data.getEmail()).thenComposeAsync(allowed -> {
+            if (!allowed) {
+                return CompletableFuture.completedFuture(tooManyAttempts(forgotPassword.render(
+                    forgotPasswordForm.withGlobalError("リクエストが多すぎます。しばらく時間をおいて再度お試しください。"),
+                    request,
+                    messagesApi.preferred(request)
+                )));
+            }
+            return sendResetEmail(request, forgotPasswordForm, data);
+        }, classLoaderExecutionContext.current());
+    }
+
+    /**
+     * Send the password reset email, if there is a user with the email
+     */
+    private CompletionStage<Result> sendResetEmail(Http.Request request, Form<ForgotPasswordForm> forgotPasswordForm,
+                                                   ForgotPasswordForm data) {
         return userRepository.findByEmail(data.getEmail()).thenComposeAsync(userOptional -> {
             if (userOptional.isPresent()) {
                 User user = userOptional.get();
@@ -363,10 +440,11 @@ public class AuthController extends Controller {
                 User user = userOptional.get();
                 if (user.isResetTokenValid(data.getToken())) {
                     // Update password and clear reset token
-                    user.setPassword(data.getPassword());
-                    user.clearResetToken();
-                    
-                    return userRepository.update(user).thenApplyAsync(v -> {
+                    return passwordHasher.hash(data.getPassword()).thenComposeAsync(passwordHash -> {
+                        user.setPasswordHash(passwordHash);
+                        user.clearResetToken();
+                        return userRepository.update(user);
+                    }, classLoaderExecutionContext.current()).thenApplyAsync(v -> {
                         return Results.redirect(routes.AuthController.showLogin())
                                 .flashing("success", "パスワードが正常に変更されました。新しいパスワードでログインしてください。");
                     }, classLoaderExecutionContext.current());
@@ -380,6 +458,14 @@ public class AuthController extends Controller {
         }, classLoaderExecutionContext.current());
     }
 
+    /**
+     * Answer a refused attempt with 429, telling the client when to try again
+     */
+    private Result tooManyAttempts(Html page) {
+        return status(TOO_MANY_REQUESTS, page)
+                .withHeader(Http.HeaderNames.RETRY_AFTER, Long.toString(rateLimiter.getWindow().toSeconds()));
+    }
+
     /**
      * Get base URL from request
      */
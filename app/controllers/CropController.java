@@ -61,7 +61,7 @@ public class CropController extends Controller {
      * This result directly redirect to application home.
      */
     private Result GO_CROP_LIST = Results.redirect(
-            routes.CropController.list(0, "name", "asc", "")
+            routes.CropController.list(0, "name", "asc", "", "")
     );
 
     /**
@@ -71,11 +71,12 @@ public class CropController extends Controller {
      * @param sortBy Column to be sorted
      * @param order  Sort order (either asc or desc)
      * @param filter Filter applied on crop names
+     * @param cursor Cursor of a deep page, empty for pages addressed by number
      */
-    public CompletionStage<Result> list(Http.Request request, int page, String sortBy, String order, String filter) {
+    public CompletionStage<Result> list(Http.Request request, int page, String sortBy, String order, String filter, String cursor) {
         User user = getCurrentUser(request);
         // Run a db operation in another thread (using DatabaseExecutionContext)
-        return cropRepository.pageByUser(page, 10, sortBy, order, filter, user.getId()).thenApplyAsync(pagedList -> {
+        return cropRepository.pageByUser(page, 10, sortBy, order, filter, cursor, user.getId()).thenApplyAsync(pagedList -> {
             // This is the HTTP rendering thread context
             return ok(list.render(pagedList, sortBy, order, filter, request, messagesApi.preferred(request)));
         }, classLoaderExecutionContext.current());
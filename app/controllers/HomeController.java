@@ -26,7 +26,7 @@ public class HomeController extends Controller {
     public Result index(Http.Request request) {
         // Check if user is logged in
         if (request.session().get("userId").isPresent()) {
-            return Results.redirect(routes.CropController.list(0, "name", "asc", ""));
+            return Results.redirect(routes.CropController.list(0, "name", "asc", "", ""));
         } else {
             return Results.redirect(routes.AuthController.showLogin());
         }
@@ -0,0 +1,64 @@
+package controllers;
+
+import com.typesafe.config.Config;
+import play.mvc.Controller;
+import play.mvc.Http;
+import play.mvc.Result;
+import repositoryies.DatabaseMetrics;
+import repositoryies.UserCache;
+import services.PasswordHasher;
+import utils.PrometheusText;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Reports the metrics of the application in the Prometheus text format to scrapers
+ * that send the configured token. Without a token the metrics are not served at all.
+ */
+@Singleton
+public class MetricsController extends Controller {
+
+    private final DatabaseMetrics databaseMetrics;
+    private final UserCache userCache;
+    private final PasswordHasher passwordHasher;
+    private final String token;
+
+    @Inject
+    public MetricsController(DatabaseMetrics databaseMetrics, UserCache userCache, PasswordHasher passwordHasher,
+                             Config config) {
+        this.databaseMetrics = databaseMetrics;
+        this.userCache = userCache;
+        this.passwordHasher = passwordHasher;
+        this.token = config.getString("metrics.token");
+    }
+
+    public Result metrics(Http.Request request) {
+        if (token.isEmpty()) {
+            return notFound();
+        }
+        if (!authorized(request)) {
+            return unauthorized();
+        }
+        PrometheusText text = new PrometheusText();
+        databaseMetrics.writeTo(text);
+        text.metric("auth_user_cache_hits_total", "counter", "Authenticated users found in the cache");
+        text.sample("auth_user_cache_hits_total", userCache.getHits());
+        text.metric("auth_user_cache_misses_total", "counter", "Authenticated users read from the database");
+        text.sample("auth_user_cache_misses_total", userCache.getMisses());
+        text.metric("auth_user_cache_size", "gauge", "Users in the cache");
+        text.sample("auth_user_cache_size", userCache.size());
+        passwordHasher.writeTo(text);
+        return ok(text.toString()).as(PrometheusText.CONTENT_TYPE);
+    }
+
+    private boolean authorized(Http.Request request) {
+        String expected = "Bearer " + token;
+        return request.header(Http.HeaderNames.AUTHORIZATION)
+            .map(header -> MessageDigest.isEqual(
+                header.getBytes(StandardCharsets.UTF_8), expected.getBytes(StandardCharsets.UTF_8)))
+            .orElse(false);
+    }
+}
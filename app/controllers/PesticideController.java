@@ -3,32 +3,33 @@ package controllers;
 import actions.Admin;
 import actions.AuthenticatedAction;
 import actions.GlobalConfig;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import forms.PesticideUploadForm;
-import models.PesticideRegistration;
 import models.User;
 import play.data.Form;
 import play.data.FormFactory;
 import play.i18n.MessagesApi;
 import play.libs.Files;
+import play.libs.Json;
 import play.libs.concurrent.ClassLoaderExecutionContext;
 import play.mvc.Controller;
 import play.mvc.Http;
 import play.mvc.Result;
 import play.mvc.Results;
 import repositoryies.PesticideRepository;
+import services.PesticideImportJob;
+import services.PesticideImportService;
 import views.html.pesticide.list;
 import views.html.pesticide.upload;
 
 import javax.inject.Inject;
-import java.io.*;
-import java.nio.charset.Charset;
+import java.io.IOException;
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
 
 /**
  * Controller for pesticide registration management (admin only)
@@ -38,6 +39,7 @@ import java.util.zip.ZipInputStream;
 public class PesticideController extends Controller {
 
     private final PesticideRepository pesticideRepository;
+    private final PesticideImportService pesticideImportService;
     private final FormFactory formFactory;
     private final ClassLoaderExecutionContext classLoaderExecutionContext;
     private final MessagesApi messagesApi;
@@ -45,9 +47,11 @@ public class PesticideController extends Controller {
     @Inject
     public PesticideController(FormFactory formFactory,
                               PesticideRepository pesticideRepository,
+                              PesticideImportService pesticideImportService,
                               ClassLoaderExecutionContext classLoaderExecutionContext,
                               MessagesApi messagesApi) {
         this.pesticideRepository = pesticideRepository;
+        this.pesticideImportService = pesticideImportService;
         this.formFactory = formFactory;
         this.classLoaderExecutionContext = classLoaderExecutionContext;
         this.messagesApi = messagesApi;
@@ -60,8 +64,8 @@ public class PesticideController extends Controller {
     /**
      * Display the paginated list of pesticide registrations.
      */
-    public CompletionStage<Result> list(Http.Request request, int page, String sortBy, String order, String filter) {
-        return pesticideRepository.page(page, 10, sortBy, order, filter).thenApplyAsync(pagedList -> {
+    public CompletionStage<Result> list(Http.Request request, int page, String sortBy, String order, String filter, String cursor) {
+        return pesticideRepository.page(page, 10, sortBy, order, filter, cursor).thenApplyAsync(pagedList -> {
             return ok(list.render(pagedList, sortBy, order, filter, request, messagesApi.preferred(request)));
         }, classLoaderExecutionContext.current());
     }
@@ -75,13 +79,15 @@ public class PesticideController extends Controller {
     }
 
     /**
-     * Handle file upload and parse ZIP files
+     * Handle file upload and start a background import of the ZIP files
      */
     public CompletionStage<Result> upload(Http.Request request) {
         Http.MultipartFormData<Files.TemporaryFile> body = request.body().asMultipartFormData();
-        Http.MultipartFormData.FilePart<Files.TemporaryFile> file = body.getFile("file");
+        List<Http.MultipartFormData.FilePart<Files.TemporaryFile>> files = body.getFiles().stream()
+            .filter(part -> "file".equals(part.getKey()) && !part.getFilename().isEmpty())
+            .collect(Collectors.toList());
         
-        if (file == null) {
+        if (files.isEmpty()) {
             Form<PesticideUploadForm> uploadForm = formFactory.form(PesticideUploadForm.class);
             return CompletableFuture.completedFuture(
                 badRequest(upload.render(
@@ -92,8 +98,7 @@ public class PesticideController extends Controller {
             );
         }
 
-        String fileName = file.getFilename();
-        if (!fileName.toLowerCase().endsWith(".zip")) {
+        if (files.stream().anyMatch(file -> !file.getFilename().toLowerCase().endsWith(".zip"))) {
             Form<PesticideUploadForm> uploadForm = formFactory.form(PesticideUploadForm.class);
             return CompletableFuture.completedFuture(
                 badRequest(upload.render(
@@ -104,140 +109,92 @@ public class PesticideController extends Controller {
             );
         }
 
-        try {
-            Path filePath = file.getRef().path();
-            List<PesticideRegistration> pesticides = parseZipFile(filePath);
-            
-            if (pesticides.isEmpty()) {
-                Form<PesticideUploadForm> uploadForm = formFactory.form(PesticideUploadForm.class);
-                return CompletableFuture.completedFuture(
-                    badRequest(upload.render(
-                        uploadForm.withError("file", "有効なデータが見つかりませんでした"),
-                        request, 
-                        messagesApi.preferred(request)
-                    ))
-                );
-            }
-
-            return pesticideRepository.insertAll(pesticides).thenApplyAsync(v -> {
-                return Results.redirect(routes.PesticideController.list(0, "registrationNumber", "asc", ""))
-                        .flashing("success", pesticides.size() + "件の農薬登録情報を追加しました");
-            }, classLoaderExecutionContext.current());
+        String[] modeValues = body.asFormUrlEncoded().get("mode");
+        String modeValue = modeValues != null && modeValues.length > 0 ? modeValues[0] : "";
+        PesticideImportJob.Mode mode;
+        switch (modeValue) {
+            case "append":
+                mode = PesticideImportJob.Mode.APPEND;
+                break;
+            case "incremental":
+                mode = PesticideImportJob.Mode.INCREMENTAL;
+                break;
+            default:
+                mode = PesticideImportJob.Mode.REPLACE;
+                break;
+        }
+        List<Path> paths = files.stream().map(file -> file.getRef().path()).collect(Collectors.toList());
+        String fileName = files.stream().map(Http.MultipartFormData.FilePart::getFilename).collect(Collectors.joining(", "));
 
-        } catch (Exception e) {
-            play.Logger.of(PesticideController.class).error("Failed to parse zip file", e);
+        try {
+            PesticideImportJob job = pesticideImportService.submit(paths, fileName, mode);
+            return CompletableFuture.completedFuture(
+                Results.redirect(routes.PesticideController.showUpload())
+                    .flashing("importJobId", job.getId())
+                    .flashing("success", "インポートを開始しました。進捗は下記で確認できます。")
+            );
+        } catch (RejectedExecutionException e) {
             Form<PesticideUploadForm> uploadForm = formFactory.form(PesticideUploadForm.class);
             return CompletableFuture.completedFuture(
                 badRequest(upload.render(
-                    uploadForm.withError("file", "ファイルの解析に失敗しました: " + e.getMessage()),
-                    request, 
+                    uploadForm.withError("file", "他のインポートが実行中です。完了してから再度お試しください"),
+                    request,
+                    messagesApi.preferred(request)
+                ))
+            );
+        } catch (IOException e) {
+            play.Logger.of(PesticideController.class).error("Failed to store uploaded zip file", e);
+            Form<PesticideUploadForm> uploadForm = formFactory.form(PesticideUploadForm.class);
+            return CompletableFuture.completedFuture(
+                badRequest(upload.render(
+                    uploadForm.withError("file", "ファイルの保存に失敗しました: " + e.getMessage()),
+                    request,
                     messagesApi.preferred(request)
                 ))
             );
         }
     }
 
+    /**
+     * Report the progress of a background import as JSON, polled by the upload page
+     */
+    public Result importStatus(Http.Request request, String id) {
+        return pesticideImportService.findJob(id)
+            .map(job -> {
+                ObjectNode json = Json.newObject();
+                json.put("id", job.getId());
+                json.put("fileName", job.getFileName());
+                json.put("mode", job.getMode().name());
+                json.put("status", job.getStatus().name());
+                json.put("parsed", job.getParsed());
+                json.put("inserted", job.getInserted());
+                json.put("rejected", job.getRejected());
+                json.put("progress", job.getProgress());
+                json.put("rowsPerSecond", job.getRowsPerSecond());
+                json.put("elapsedSeconds", job.getElapsed().getSeconds());
+                json.put("etaSeconds", job.getEtaSeconds());
+                if (job.getDiff() != null) {
+                    ObjectNode diff = json.putObject("diff");
+                    diff.put("inserted", job.getDiff().getInserted());
+                    diff.put("updated", job.getDiff().getUpdated());
+                    diff.put("deleted", job.getDiff().getDeleted());
+                    diff.put("unchanged", job.getDiff().getUnchanged());
+                }
+                if (job.getErrorMessage() != null) {
+                    json.put("error", job.getErrorMessage());
+                }
+                return ok(json);
+            })
+            .orElseGet(() -> notFound("Import job not found"));
+    }
+
     /**
      * Clear all pesticide data
      */
     public CompletionStage<Result> clear(Http.Request request) {
         return pesticideRepository.deleteAll().thenApplyAsync(v -> {
-            return Results.redirect(routes.PesticideController.list(0, "registrationNumber", "asc", ""))
+            return Results.redirect(routes.PesticideController.list(0, "registrationNumber", "asc", "", ""))
                     .flashing("success", "全ての農薬登録情報を削除しました");
         }, classLoaderExecutionContext.current());
     }
-
-    private List<PesticideRegistration> parseZipFile(Path zipPath) throws IOException {
-        List<PesticideRegistration> pesticides = new ArrayList<>();
-        
-        try (ZipInputStream zis = new ZipInputStream(new FileInputStream(zipPath.toFile()), 
-                Charset.forName("Shift_JIS"))) {
-            ZipEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                if (!entry.isDirectory() && entry.getName().toLowerCase().endsWith(".csv")) {
-                    pesticides.addAll(parseCsvFromZip(zis));
-                }
-                zis.closeEntry();
-            }
-        }
-        
-        return pesticides;
-    }
-
-    private List<PesticideRegistration> parseCsvFromZip(ZipInputStream zis) throws IOException {
-        List<PesticideRegistration> pesticides = new ArrayList<>();
-        
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(zis, "Shift_JIS"))) {
-            String line;
-            boolean isFirstLine = true;
-            
-            while ((line = reader.readLine()) != null) {
-                if (isFirstLine) {
-                    isFirstLine = false;
-                    continue; // Skip header line
-                }
-                
-                String[] fields = line.split(",", -1);
-                if (fields.length >= 25) {  // Updated to expect 25 fields instead of 10
-                    PesticideRegistration pesticide = new PesticideRegistration();
-                    pesticide.setRegistrationNumber(cleanField(fields[0]));
-                    pesticide.setUsage(cleanField(fields[1]));
-                    pesticide.setPesticideType(cleanField(fields[2]));
-                    pesticide.setPesticideName(cleanField(fields[3]));
-                    pesticide.setAbbreviation(cleanField(fields[4]));
-                    pesticide.setCropName(cleanField(fields[5]));
-                    pesticide.setApplicationLocation(cleanField(fields[6]));
-                    pesticide.setTargetPestDisease(cleanField(fields[7]));
-                    pesticide.setPurpose(cleanField(fields[8]));
-                    pesticide.setDilutionAmount(cleanField(fields[9]));
-                    
-                    // Additional fields
-                    pesticide.setSprayVolume(cleanField(fields[10]));
-                    pesticide.setUsageTime(cleanField(fields[11]));
-                    pesticide.setMainAgentUsageCount(cleanField(fields[12]));
-                    pesticide.setUsageMethod(cleanField(fields[13]));
-                    pesticide.setFumigationTime(cleanField(fields[14]));
-                    pesticide.setFumigationTemperature(cleanField(fields[15]));
-                    pesticide.setApplicableSoil(cleanField(fields[16]));
-                    pesticide.setApplicableZoneName(cleanField(fields[17]));
-                    pesticide.setApplicablePesticideName(cleanField(fields[18]));
-                    pesticide.setMixtureCount(cleanField(fields[19]));
-                    pesticide.setActiveIngredient1TotalUsage(cleanField(fields[20]));
-                    pesticide.setActiveIngredient2TotalUsage(cleanField(fields[21]));
-                    pesticide.setActiveIngredient3TotalUsage(cleanField(fields[22]));
-                    pesticide.setActiveIngredient4TotalUsage(cleanField(fields[23]));
-                    pesticide.setActiveIngredient5TotalUsage(cleanField(fields[24]));
-                    
-                    pesticides.add(pesticide);
-                } else if (fields.length >= 10) {
-                    // Backward compatibility: handle files with only the original 10 fields
-                    PesticideRegistration pesticide = new PesticideRegistration();
-                    pesticide.setRegistrationNumber(cleanField(fields[0]));
-                    pesticide.setUsage(cleanField(fields[1]));
-                    pesticide.setPesticideType(cleanField(fields[2]));
-                    pesticide.setPesticideName(cleanField(fields[3]));
-                    pesticide.setAbbreviation(cleanField(fields[4]));
-                    pesticide.setCropName(cleanField(fields[5]));
-                    pesticide.setApplicationLocation(cleanField(fields[6]));
-                    pesticide.setTargetPestDisease(cleanField(fields[7]));
-                    pesticide.setPurpose(cleanField(fields[8]));
-                    pesticide.setDilutionAmount(cleanField(fields[9]));
-                    
-                    pesticides.add(pesticide);
-                }
-            }
-        }
-        
-        return pesticides;
-    }
-
-    private String cleanField(String field) {
-        if (field == null) return "";
-        // Remove quotes if present
-        field = field.trim();
-        if (field.startsWith("\"") && field.endsWith("\"")) {
-            field = field.substring(1, field.length() - 1);
-        }
-        return field;
-    }
-}
\ No newline at end of file
+}
@@ -60,7 +60,7 @@ public class SoilDiagnosticController extends Controller {
      * This result directly redirect to application home.
      */
     private Result GO_SOIL_DIAGNOSTIC_LIST = Results.redirect(
-            routes.SoilDiagnosticController.list(0, "diagnosticDate", "desc", "")
+            routes.SoilDiagnosticController.list(0, "diagnosticDate", "desc", "", "")
     );
 
     /**
@@ -70,11 +70,12 @@ public class SoilDiagnosticController extends Controller {
      * @param sortBy Column to be sorted
      * @param order  Sort order (either asc or desc)
      * @param filter Filter applied on field names
+     * @param cursor Cursor of a deep page, empty for pages addressed by number
      */
-    public CompletionStage<Result> list(Http.Request request, int page, String sortBy, String order, String filter) {
+    public CompletionStage<Result> list(Http.Request request, int page, String sortBy, String order, String filter, String cursor) {
         User user = getCurrentUser(request);
         // Run a db operation in another thread (using DatabaseExecutionContext)
-        return soilDiagnosticRepository.pageByUser(page, 10, sortBy, order, filter, user.getId()).thenApplyAsync(pagedList -> {
+        return soilDiagnosticRepository.pageByUser(page, 10, sortBy, order, filter, cursor, user.getId()).thenApplyAsync(pagedList -> {
             // This is the HTTP rendering thread context
             return ok(list.render(pagedList, sortBy, order, filter, request, messagesApi.preferred(request)));
         }, classLoaderExecutionContext.current());
@@ -3,6 +3,9 @@ package controllers;
 import actions.Authenticated;
 import actions.AuthenticatedAction;
 import actions.GlobalConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import jakarta.persistence.PersistenceException;
 import models.WorkHistory;
 import models.User;
@@ -10,7 +13,10 @@ import models.Field;
 import models.Crop;
 import play.data.Form;
 import play.data.FormFactory;
+import play.data.validation.ValidationError;
+import play.i18n.Messages;
 import play.i18n.MessagesApi;
+import play.libs.Json;
 import play.libs.concurrent.ClassLoaderExecutionContext;
 import play.mvc.Controller;
 import play.mvc.Http;
@@ -26,14 +32,28 @@ import views.html.workHistory.editForm;
 import views.html.workHistory.list;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.function.BiFunction;
 import java.util.Map;
 
 @Authenticated
 @GlobalConfig
 public class WorkHistoryController extends Controller {
 
+    /**
+     * Maximum number of work histories accepted by one bulk request
+     */
+    static final int MAX_BULK_ROWS = 500;
+
+    /**
+     * Work history properties a bulk request may set, the same as the forms
+     */
+    private static final String[] BULK_FIELDS = {"date", "startTime", "endTime", "field.id", "crop.id", "content"};
+
     private final WorkHistoryRepository workHistoryRepository;
     private final FieldRepository fieldRepository;
     private final CropRepository cropRepository;
@@ -63,11 +83,23 @@ public class WorkHistoryController extends Controller {
         return request.attrs().get(AuthenticatedAction.USER_KEY);
     }
 
+    /**
+     * Read the field and crop options at the same time, then render a form with them
+     * in the HTTP rendering thread context
+     */
+    private CompletionStage<Result> withOptions(User user, BiFunction<Map<String, String>, Map<String, String>, Result> render) {
+        return fieldRepository.optionsByUser(user.getId()).thenCombineAsync(
+            cropRepository.optionsByUser(user.getId()),
+            render,
+            classLoaderExecutionContext.current()
+        ).exceptionally(e -> internalServerError("Error loading form data"));
+    }
+
     /**
      * This result directly redirect to work history list.
      */
     private Result GO_WORK_HISTORY_LIST = Results.redirect(
-            routes.WorkHistoryController.list(0, "date", "desc", "")
+            routes.WorkHistoryController.list(0, "date", "desc", "", "")
     );
 
     /**
@@ -77,11 +109,12 @@ public class WorkHistoryController extends Controller {
      * @param sortBy Column to be sorted
      * @param order  Sort order (either asc or desc)
      * @param filter Filter applied on work history content
+     * @param cursor Cursor of a deep page, empty for pages addressed by number
      */
-    public CompletionStage<Result> list(Http.Request request, int page, String sortBy, String order, String filter) {
+    public CompletionStage<Result> list(Http.Request request, int page, String sortBy, String order, String filter, String cursor) {
         User user = getCurrentUser(request);
         // Run a db operation in another thread (using DatabaseExecutionContext)
-        return workHistoryRepository.pageByUser(page, 10, sortBy, order, filter, user.getId()).thenApplyAsync(pagedList -> {
+        return workHistoryRepository.pageByUser(page, 10, sortBy, order, filter, cursor, user.getId()).thenApplyAsync(pagedList -> {
             // This is the HTTP rendering thread context
             return ok(list.render(pagedList, sortBy, order, filter, request, messagesApi.preferred(request)));
         }, classLoaderExecutionContext.current());
@@ -95,23 +128,19 @@ public class WorkHistoryController extends Controller {
     public CompletionStage<Result> edit(Http.Request request, Long id) {
         User user = getCurrentUser(request);
 
-        // Run the lookup in another thread:
-        return workHistoryRepository.lookupByUser(id, user.getId()).thenApplyAsync(workHistoryOptional -> {
+        // Run the lookup and read the options in other threads at the same time
+        CompletableFuture<Optional<WorkHistory>> lookup = workHistoryRepository.lookupByUser(id, user.getId()).toCompletableFuture();
+        CompletableFuture<Map<String, String>> fieldsFuture = fieldRepository.optionsByUser(user.getId()).toCompletableFuture();
+        CompletableFuture<Map<String, String>> cropsFuture = cropRepository.optionsByUser(user.getId()).toCompletableFuture();
+
+        return CompletableFuture.allOf(lookup, fieldsFuture, cropsFuture).thenApplyAsync(done -> {
+            // This is the HTTP rendering thread context, all results are available
+            Optional<WorkHistory> workHistoryOptional = lookup.join();
             if (workHistoryOptional.isEmpty()) {
                 return notFound("WorkHistory not found or you don't have permission to access it");
             }
-            // This is the HTTP rendering thread context
-            WorkHistory wh = workHistoryOptional.get();
-            Form<WorkHistory> workHistoryForm = formFactory.form(WorkHistory.class).fill(wh);
-            
-            // Get the options and render the form synchronously in this thread
-            try {
-                Map<String, String> fields = fieldRepository.optionsByUser(user.getId()).toCompletableFuture().get();
-                Map<String, String> crops = cropRepository.optionsByUser(user.getId()).toCompletableFuture().get();
-                return ok(editForm.render(id, workHistoryForm, fields, crops, request, messagesApi.preferred(request)));
-            } catch (Exception e) {
-                return internalServerError("Error loading form data");
-            }
+            Form<WorkHistory> workHistoryForm = formFactory.form(WorkHistory.class).fill(workHistoryOptional.get());
+            return ok(editForm.render(id, workHistoryForm, fieldsFuture.join(), cropsFuture.join(), request, messagesApi.preferred(request)));
         }, classLoaderExecutionContext.current());
     }
 
@@ -124,16 +153,10 @@ public class WorkHistoryController extends Controller {
         User user = getCurrentUser(request);
         Form<WorkHistory> workHistoryForm = formFactory.form(WorkHistory.class).bindFromRequest(request);
         if (workHistoryForm.hasErrors()) {
-            // This is the HTTP rendering thread context
-            try {
-                Map<String, String> fields = fieldRepository.optionsByUser(user.getId()).toCompletableFuture().get();
-                Map<String, String> crops = cropRepository.optionsByUser(user.getId()).toCompletableFuture().get();
-                return java.util.concurrent.CompletableFuture.completedFuture(
-                    badRequest(editForm.render(id, workHistoryForm, fields, crops, request, messagesApi.preferred(request)))
-                );
-            } catch (Exception e) {
-                return java.util.concurrent.CompletableFuture.completedFuture(internalServerError("Error loading form data"));
-            }
+            // Read the options and then render the failure case
+            return withOptions(user, (fields, crops) ->
+                badRequest(editForm.render(id, workHistoryForm, fields, crops, request, messagesApi.preferred(request)))
+            );
         } else {
             WorkHistory newWorkHistoryData = workHistoryForm.get();
             newWorkHistoryData.setUser(user); // Ensure the work history belongs to current user
@@ -165,13 +188,8 @@ public class WorkHistoryController extends Controller {
         Form<WorkHistory> workHistoryForm = formFactory.form(WorkHistory.class);
         
         // Get options for fields and crops
-        return fieldRepository.optionsByUser(user.getId()).thenCombineAsync(
-            cropRepository.optionsByUser(user.getId()), 
-            (fields, crops) -> {
-                // This is the HTTP rendering thread context
-                return ok(createForm.render(workHistoryForm, fields, crops, request, messagesApi.preferred(request)));
-            }, 
-            classLoaderExecutionContext.current()
+        return withOptions(user, (fields, crops) ->
+            ok(createForm.render(workHistoryForm, fields, crops, request, messagesApi.preferred(request)))
         );
     }
 
@@ -182,16 +200,10 @@ public class WorkHistoryController extends Controller {
         User user = getCurrentUser(request);
         Form<WorkHistory> workHistoryForm = formFactory.form(WorkHistory.class).bindFromRequest(request);
         if (workHistoryForm.hasErrors()) {
-            // This is the HTTP rendering thread context
-            try {
-                Map<String, String> fields = fieldRepository.optionsByUser(user.getId()).toCompletableFuture().get();
-                Map<String, String> crops = cropRepository.optionsByUser(user.getId()).toCompletableFuture().get();
-                return java.util.concurrent.CompletableFuture.completedFuture(
-                    badRequest(createForm.render(workHistoryForm, fields, crops, request, messagesApi.preferred(request)))
-                );
-            } catch (Exception e) {
-                return java.util.concurrent.CompletableFuture.completedFuture(internalServerError("Error loading form data"));
-            }
+            // Read the options and then render the failure case
+            return withOptions(user, (fields, crops) ->
+                badRequest(createForm.render(workHistoryForm, fields, crops, request, messagesApi.preferred(request)))
+            );
         }
 
         WorkHistory workHistory = workHistoryForm.get();
@@ -211,6 +223,97 @@ public class WorkHistoryController extends Controller {
         }, classLoaderExecutionContext.current());
     }
 
+    /**
+     * Save many work histories at once, e.g. everything done during a day. The body is
+     * a JSON array of work histories with the properties of the form, e.g.
+     * {@code [{"date": "2024-04-01", "startTime": "09:00", "endTime": "11:00",
+     * "field": {"id": 1}, "crop": {"id": 2}, "content": "..."}]}.
+     *
+     * Every entry is validated like a form submission. If any entry is invalid nothing
+     * is saved, and the errors are returned with the index of their entry.
+     */
+    public CompletionStage<Result> bulkSave(Http.Request request) {
+        User user = getCurrentUser(request);
+        JsonNode json = request.body().asJson();
+        if (json == null || !json.isArray()) {
+            return CompletableFuture.completedFuture(badRequest(bulkError("Expected a JSON array of work histories")));
+        }
+        if (json.size() > MAX_BULK_ROWS) {
+            return CompletableFuture.completedFuture(badRequest(bulkError("At most " + MAX_BULK_ROWS + " work histories can be saved at once")));
+        }
+
+        Messages messages = messagesApi.preferred(request);
+        List<WorkHistory> workHistories = new ArrayList<>();
+        List<Integer> rows = new ArrayList<>();
+        ArrayNode errors = Json.newArray();
+        for (int row = 0; row < json.size(); row++) {
+            Form<WorkHistory> workHistoryForm = formFactory.form(WorkHistory.class)
+                    .bind(messages.lang(), request.attrs(), json.get(row), BULK_FIELDS);
+            if (workHistoryForm.hasErrors()) {
+                for (ValidationError error : workHistoryForm.errors()) {
+                    addBulkError(errors, row, error.key(), error.format(messages));
+                }
+            } else {
+                WorkHistory workHistory = workHistoryForm.get();
+                workHistory.setUser(user); // Set the current user as the owner
+                workHistories.add(workHistory);
+                rows.add(row);
+            }
+        }
+
+        // Only the user's own fields and crops may be referenced
+        return withOptions(user, (fields, crops) -> {
+            for (int i = 0; i < workHistories.size(); i++) {
+                WorkHistory workHistory = workHistories.get(i);
+                if (workHistory.getField() == null || !fields.containsKey(String.valueOf(workHistory.getField().getId()))) {
+                    addBulkError(errors, rows.get(i), "field.id", "Unknown field");
+                }
+                if (workHistory.getCrop() == null || !crops.containsKey(String.valueOf(workHistory.getCrop().getId()))) {
+                    addBulkError(errors, rows.get(i), "crop.id", "Unknown crop");
+                }
+            }
+            if (errors.isEmpty()) {
+                return null;
+            }
+            ObjectNode invalid = Json.newObject();
+            invalid.set("errors", errors);
+            return badRequest(invalid);
+        }).thenComposeAsync(invalid -> {
+            if (invalid != null) {
+                return CompletableFuture.completedFuture(invalid);
+            }
+            return workHistoryRepository.insertAll(workHistories).thenApplyAsync(ids -> {
+                // Send one Slack notification for all of them
+                slackNotificationService.notifyDataCreation("作業履歴", ids.size() + "件", user, request)
+                    .exceptionally(throwable -> {
+                        play.Logger.of(WorkHistoryController.class).warn("Failed to send Slack creation notification for " + ids.size() + " work histories", throwable);
+                        return false;
+                    });
+
+                ObjectNode result = Json.newObject();
+                result.put("inserted", ids.size());
+                ArrayNode idArray = result.putArray("ids");
+                for (Long id : ids) {
+                    idArray.add(id);
+                }
+                return created(result);
+            }, classLoaderExecutionContext.current());
+        }, classLoaderExecutionContext.current());
+    }
+
+    private static ObjectNode bulkError(String message) {
+        ObjectNode error = Json.newObject();
+        error.put("error", message);
+        return error;
+    }
+
+    private static void addBulkError(ArrayNode errors, int row, String field, String message) {
+        ObjectNode error = errors.addObject();
+        error.put("row", row);
+        error.put("field", field);
+        error.put("message", message);
+    }
+
     /**
      * Handle work history deletion
      */
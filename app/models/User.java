@@ -48,12 +48,6 @@ public class User extends BaseModel {
     public User() {
     }
 
-    public User(String username, String email, String password) {
-        this.username = username;
-        this.email = email;
-        this.setPassword(password);
-    }
-
     public String getUsername() {
         return username;
     }
@@ -74,8 +68,11 @@ public class User extends BaseModel {
         return password;
     }
 
-    public void setPassword(String password) {
-        this.password = BCrypt.hashpw(password, BCrypt.gensalt());
+    /**
+     * Set a password hashed by the {@code services.PasswordHasher}
+     */
+    public void setPasswordHash(String hash) {
+        this.password = hash;
     }
 
     public boolean checkPassword(String password) {
@@ -0,0 +1,136 @@
+package repositoryies;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits how many operations of one kind of workload use the database at once, so
+ * that a heavy workload cannot take all connections from the others. Operations
+ * beyond the limit wait in a bounded queue; when the queue is full they are rejected
+ * at once with a {@link BulkheadFullException} instead of waiting for a connection.
+ */
+public final class Bulkhead implements Executor {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final int queryTimeoutSeconds;
+    private final Executor executor;
+
+    /**
+     * Guarded by this
+     */
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+    private int running;
+
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param executor Executor actually running the operations
+     */
+    Bulkhead(String name, int maxConcurrent, int maxQueued, int queryTimeoutSeconds, Executor executor) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.queryTimeoutSeconds = queryTimeoutSeconds;
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        synchronized (this) {
+            if (running >= maxConcurrent) {
+                if (queue.size() >= maxQueued) {
+                    rejected.increment();
+                    throw new BulkheadFullException(name);
+                }
+                queue.add(command);
+                return;
+            }
+            running++;
+        }
+        start(command);
+    }
+
+    /**
+     * Hand an operation which holds a slot to the executor. When the executor rejects it,
+     * the slot goes to the next queued operation or is freed, and the rejection is thrown.
+     */
+    private void start(Runnable command) {
+        try {
+            executor.execute(() -> run(command));
+        } catch (RuntimeException e) {
+            Runnable next = release();
+            while (next != null) {
+                Runnable queued = next;
+                try {
+                    executor.execute(() -> run(queued));
+                    next = null;
+                } catch (RuntimeException again) {
+                    // Nobody waits for the queued operation at the executor, so it is dropped
+                    e.addSuppressed(again);
+                    next = release();
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Run an operation and then the queued ones, as long as there are any
+     */
+    private void run(Runnable command) {
+        Runnable next = command;
+        while (next != null) {
+            try {
+                next.run();
+            } finally {
+                next = release();
+            }
+        }
+    }
+
+    /**
+     * Give the slot of a finished or rejected operation to the next queued one, or free it
+     *
+     * @return The queued operation, now holding the slot, or null
+     */
+    private synchronized Runnable release() {
+        Runnable next = queue.poll();
+        if (next == null) {
+            running--;
+        }
+        return next;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Seconds after which the database should cancel a query of this workload, 0 for no limit
+     */
+    public int getQueryTimeoutSeconds() {
+        return queryTimeoutSeconds;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * Number of operations rejected since the start
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,16 @@
+package repositoryies;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Thrown when a database operation is rejected because too many operations of its
+ * workload are already running or waiting
+ */
+public class BulkheadFullException extends RejectedExecutionException {
+
+    private static final long serialVersionUID = 1L;
+
+    public BulkheadFullException(String bulkhead) {
+        super("Too many " + bulkhead + " database operations");
+    }
+}
@@ -0,0 +1,72 @@
+package repositoryies;
+
+import com.typesafe.config.Config;
+import play.Logger;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.List;
+
+/**
+ * The bulkheads of the workloads sharing the database connections: logins and other
+ * user lookups, the interactive pages of the users, and the admin pages with their
+ * large pesticide tables. Each is configured under {@code database.bulkheads}.
+ */
+@Singleton
+public class Bulkheads {
+
+    private static final Logger.ALogger logger = Logger.of(Bulkheads.class);
+
+    private final Bulkhead auth;
+    private final Bulkhead interactive;
+    private final Bulkhead admin;
+
+    @Inject
+    public Bulkheads(DatabaseExecutionContext executionContext, Config config) {
+        this.auth = bulkhead("auth", executionContext, config);
+        this.interactive = bulkhead("interactive", executionContext, config);
+        this.admin = bulkhead("admin", executionContext, config);
+
+        // Leave connections for the work outside the bulkheads, e.g. new id blocks
+        int available = config.getInt("fixedConnectionPool") - config.getInt("database.bulkheads.reservedConnections");
+        int concurrent = all().stream().mapToInt(Bulkhead::getMaxConcurrent).sum();
+        if (concurrent > available) {
+            logger.warn("The bulkheads may use " + concurrent + " connections at once, but only " + available
+                + " are left besides the reserved ones; operations may wait for connections beyond their bulkhead");
+        }
+    }
+
+    private static Bulkhead bulkhead(String name, DatabaseExecutionContext executionContext, Config config) {
+        Config settings = config.getConfig("database.bulkheads." + name);
+        return new Bulkhead(name,
+                settings.getInt("maxConcurrent"),
+                settings.getInt("maxQueued"),
+                (int) settings.getDuration("queryTimeout").getSeconds(),
+                executionContext);
+    }
+
+    /**
+     * Lookups of users, e.g. for logins and for the user of every authenticated request
+     */
+    public Bulkhead auth() {
+        return auth;
+    }
+
+    /**
+     * The crops, fields, soil diagnostics and work histories of the users
+     */
+    public Bulkhead interactive() {
+        return interactive;
+    }
+
+    /**
+     * The pesticide registrations of the admin pages
+     */
+    public Bulkhead admin() {
+        return admin;
+    }
+
+    public List<Bulkhead> all() {
+        return List.of(auth, interactive, admin);
+    }
+}
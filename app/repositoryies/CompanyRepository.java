@@ -9,29 +9,38 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.CompletionStage;
 
-import static java.util.concurrent.CompletableFuture.supplyAsync;
 
 /**
  *
  */
 public class CompanyRepository {
 
-    private final DatabaseExecutionContext executionContext;
+    private final Bulkhead bulkhead;
+    private final OptionCache optionCache;
+    private final DatabaseMetrics metrics;
 
     @Inject
-    public CompanyRepository(DatabaseExecutionContext executionContext) {
-        this.executionContext = executionContext;
+    public CompanyRepository(Bulkheads bulkheads, OptionCache optionCache, DatabaseMetrics metrics) {
+        this.bulkhead = bulkheads.interactive();
+        this.optionCache = optionCache;
+        this.metrics = metrics;
     }
 
+    /**
+     * Get options for all companies, which are shared by all users and cached until they change
+     */
     public CompletionStage<Map<String, String>> options() {
-        return supplyAsync(() -> DB.find(Company.class).orderBy("name").findList(), executionContext)
+        return optionCache.options(Company.class, null, () -> metrics.supplyAsync("CompanyRepository.options", () -> DB.find(Company.class)
+                .select("name")
+                .orderBy("name")
+                .findList(), bulkhead)
                 .thenApply(list -> {
                     HashMap<String, String> options = new LinkedHashMap<String, String>();
                     for (Company c : list) {
                         options.put(c.getId().toString(), c.getName());
                     }
                     return options;
-                });
+                }));
     }
 
 }
@@ -2,7 +2,7 @@ package repositoryies;
 
 import io.ebean.DB;
 import io.ebean.Model;
-import io.ebean.PagedList;
+import io.ebean.Query;
 import io.ebean.Transaction;
 import models.Crop;
 
@@ -12,8 +12,8 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
 
-import static java.util.concurrent.CompletableFuture.supplyAsync;
 
 /**
  * A repository that executes database operations in a different
@@ -21,70 +21,80 @@ import static java.util.concurrent.CompletableFuture.supplyAsync;
  */
 public class CropRepository {
 
-    private final DatabaseExecutionContext executionContext;
-
-    @Inject
-    public CropRepository(DatabaseExecutionContext executionContext) {
-        this.executionContext = executionContext;
-    }
+    /**
+     * Properties the list can be sorted by with keyset pagination
+     */
+    private static final Map<String, Function<Crop, Object>> SORT_KEYS = Map.of(
+        "name", Crop::getName,
+        "introduced", Crop::getIntroduced,
+        "discontinued", Crop::getDiscontinued,
+        "company.name", crop -> crop.getCompany() == null ? null : crop.getCompany().getName()
+    );
 
     /**
-     * Return a paged list of crop
-     *
-     * @param page     Page to display
-     * @param pageSize Number of crops per page
-     * @param sortBy   Crop property used for sorting
-     * @param order    Sort order (either or asc or desc)
-     * @param filter   Filter applied on the name column
+     * Properties shown in the list, which are the only ones read for a list page
      */
-    public CompletionStage<PagedList<Crop>> page(int page, int pageSize, String sortBy, String order, String filter) {
-        return supplyAsync(() ->
-                DB.find(Crop.class)
-                    .fetch("company").where()
-                    .ilike("name", "%" + filter + "%")
-                    .orderBy(sortBy + " " + order)
-                    .setFirstRow(page * pageSize)
-                    .setMaxRows(pageSize)
-                    .findPagedList(), executionContext);
+    private static final String LIST_PROPERTIES = "name, introduced, discontinued";
+
+    private final Bulkhead bulkhead;
+    private final PageCountCache counts;
+    private final InvalidationBus changes;
+    private final OptionCache optionCache;
+    private final IdAllocator ids;
+    private final DatabaseMetrics metrics;
+
+    @Inject
+    public CropRepository(Bulkheads bulkheads, PageCountCache counts, InvalidationBus changes,
+                          OptionCache optionCache, IdAllocator ids, DatabaseMetrics metrics) {
+        this.bulkhead = bulkheads.interactive();
+        this.counts = counts;
+        this.changes = changes;
+        this.optionCache = optionCache;
+        this.ids = ids;
+        this.metrics = metrics;
     }
 
     /**
-     * Return a paged list of crops for a specific user
+     * Return a page of crops for a specific user, read by offset or, for deep pages,
+     * by cursor. See {@link Keyset}.
+     *
+     * @param cursor Cursor of the page from the previous page, empty to read by offset
      */
-    public CompletionStage<PagedList<Crop>> pageByUser(int page, int pageSize, String sortBy, String order, String filter, Long userId) {
-        return supplyAsync(() ->
-                DB.find(Crop.class)
-                    .fetch("company")
-                    .fetch("user")
+    public CompletionStage<KeysetPage<Crop>> pageByUser(int page, int pageSize, String sortBy, String order, String filter,
+                                                        String cursor, Long userId) {
+        return metrics.supplyAsync("CropRepository.pageByUser", () -> {
+            Query<Crop> query = DB.find(Crop.class)
+                    .select(LIST_PROPERTIES)
+                    .fetch("company", "name")
                     .where()
                     .eq("user.id", userId)
-                    .ilike("name", "%" + filter + "%")
-                    .orderBy(sortBy + " " + order)
-                    .setFirstRow(page * pageSize)
-                    .setMaxRows(pageSize)
-                    .findPagedList(), executionContext);
+                    .ilike("name", TrigramIndexes.containsPattern(filter))
+                    .query()
+                    .setTimeout(bulkhead.getQueryTimeoutSeconds());
+            return Keyset.page(query, SORT_KEYS, counts, userId + ":" + filter, page, pageSize, sortBy, order, cursor);
+        }, bulkhead);
     }
 
     public CompletionStage<Optional<Crop>> lookup(Long id) {
-        return supplyAsync(() -> DB.find(Crop.class).setId(id).findOneOrEmpty(), executionContext);
+        return metrics.supplyAsync("CropRepository.lookup", () -> DB.find(Crop.class).setId(id).findOneOrEmpty(), bulkhead);
     }
 
     /**
      * Lookup a crop by ID and ensure it belongs to the specified user
      */
     public CompletionStage<Optional<Crop>> lookupByUser(Long id, Long userId) {
-        return supplyAsync(() -> 
+        return metrics.supplyAsync("CropRepository.lookupByUser", () -> 
                 DB.find(Crop.class)
                     .fetch("company")
                     .fetch("user")
                     .where()
                     .eq("id", id)
                     .eq("user.id", userId)
-                    .findOneOrEmpty(), executionContext);
+                    .findOneOrEmpty(), bulkhead);
     }
 
     public CompletionStage<Optional<Long>> update(Long id, Crop newCropData) {
-        return supplyAsync(() -> {
+        return metrics.supplyAsync("CropRepository.update", () -> {
             Transaction txn = DB.beginTransaction();
             Optional<Long> value = Optional.empty();
             try {
@@ -98,14 +108,14 @@ public class CropRepository {
                 txn.end();
             }
             return value;
-        }, executionContext);
+        }, bulkhead).whenComplete((result, error) -> changes.changed(Crop.class));
     }
 
     /**
      * Update a crop ensuring it belongs to the specified user
      */
     public CompletionStage<Optional<Long>> updateByUser(Long id, Crop newCropData, Long userId) {
-        return supplyAsync(() -> {
+        return metrics.supplyAsync("CropRepository.updateByUser", () -> {
             Transaction txn = DB.beginTransaction();
             Optional<Long> value = Optional.empty();
             try {
@@ -124,11 +134,11 @@ public class CropRepository {
                 txn.end();
             }
             return value;
-        }, executionContext);
+        }, bulkhead).whenComplete((result, error) -> changes.changed(Crop.class));
     }
 
     public CompletionStage<Optional<Long>> delete(Long id) {
-        return supplyAsync(() -> {
+        return metrics.<Optional<Long>>supplyAsync("CropRepository.delete", () -> {
             try {
                 Optional<Crop> cropOptional = DB.find(Crop.class).setId(id).findOneOrEmpty();
                 cropOptional.ifPresent(Model::delete);
@@ -136,14 +146,14 @@ public class CropRepository {
             } catch (Exception e) {
                 return Optional.empty();
             }
-        }, executionContext);
+        }, bulkhead).whenComplete((result, error) -> changes.changed(Crop.class));
     }
 
     /**
      * Delete a crop ensuring it belongs to the specified user
      */
     public CompletionStage<Boolean> deleteByUser(Long id, Long userId) {
-        return supplyAsync(() -> {
+        return metrics.supplyAsync("CropRepository.deleteByUser", () -> {
             try {
                 Optional<Crop> cropOptional = DB.find(Crop.class)
                         .fetch("user")
@@ -156,32 +166,33 @@ public class CropRepository {
             } catch (Exception e) {
                 return false;
             }
-        }, executionContext);
+        }, bulkhead).whenComplete((result, error) -> changes.changed(Crop.class));
     }
 
     public CompletionStage<Long> insert(Crop crop) {
-        return supplyAsync(() -> {
-             crop.setId(System.currentTimeMillis()); // not ideal, but it works
+        return metrics.supplyAsync("CropRepository.insert", () -> {
+             crop.setId(ids.nextId());
              DB.insert(crop);
              return crop.getId();
-        }, executionContext);
+        }, bulkhead).whenComplete((result, error) -> changes.changed(Crop.class));
     }
 
     /**
-     * Get options for crops belonging to a specific user
+     * Get options for crops belonging to a specific user, cached until they change
      */
     public CompletionStage<Map<String, String>> optionsByUser(Long userId) {
-        return supplyAsync(() -> DB.find(Crop.class)
+        return optionCache.options(Crop.class, userId, () -> metrics.supplyAsync("CropRepository.optionsByUser", () -> DB.find(Crop.class)
+                .select("name")
                 .where()
                 .eq("user.id", userId)
                 .orderBy("name")
-                .findList(), executionContext)
+                .findList(), bulkhead)
                 .thenApply(list -> {
                     java.util.HashMap<String, String> options = new java.util.LinkedHashMap<String, String>();
                     for (Crop c : list) {
                         options.put(c.getId().toString(), c.getName());
                     }
                     return options;
-                });
+                }));
     }
 }
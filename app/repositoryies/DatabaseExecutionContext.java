@@ -1,20 +1,127 @@
 package repositoryies;
 
+import com.typesafe.config.Config;
 import org.apache.pekko.actor.ActorSystem;
+import play.Logger;
+import play.inject.ApplicationLifecycle;
 import play.libs.concurrent.CustomExecutionContext;
 
 import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Custom execution context, so that blocking database operations don't
  * happen on the rendering thread pool.
  *
+ * By default the operations run on the fixed thread pool of "database.dispatcher".
+ * With {@code database.executor = "virtual-threads"} every operation gets a virtual
+ * thread of its own instead, and at most as many operations as there are connections
+ * run at once. Waiting operations are parked virtual threads rather than queued jobs,
+ * and a thread blocked on JDBC does not occupy a platform thread. Virtual threads
+ * need Java 21; on older runtimes the dispatcher is used.
+ *
  * @link https://www.playframework.com/documentation/latest/ThreadPools
  */
+@Singleton
 public class DatabaseExecutionContext extends CustomExecutionContext {
 
+    private static final Logger.ALogger logger = Logger.of(DatabaseExecutionContext.class);
+
+    static final String VIRTUAL_THREADS = "virtual-threads";
+
+    /**
+     * Null when the dispatcher runs the operations
+     */
+    private final ExecutorService virtualThreads;
+    private final Semaphore connections;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+
     @Inject
-    public DatabaseExecutionContext(ActorSystem actorSystem) {
+    public DatabaseExecutionContext(ActorSystem actorSystem, Config config, ApplicationLifecycle lifecycle) {
         super(actorSystem, "database.dispatcher");
+        String executor = config.getString("database.executor");
+        this.virtualThreads = VIRTUAL_THREADS.equals(executor) ? newVirtualThreadPerTaskExecutor() : null;
+        this.connections = new Semaphore(config.getInt("database.virtualThreads.maxConcurrency"), true);
+        if (virtualThreads != null) {
+            logger.info("Database operations run on virtual threads, at most " + connections.availablePermits() + " at once");
+            lifecycle.addStopHook(() -> {
+                virtualThreads.shutdown();
+                return CompletableFuture.completedFuture(null);
+            });
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        queued.incrementAndGet();
+        try {
+            if (virtualThreads == null) {
+                super.execute(() -> run(command));
+                return;
+            }
+            virtualThreads.execute(() -> {
+                // Parks the virtual thread until a connection is free
+                connections.acquireUninterruptibly();
+                try {
+                    run(command);
+                } finally {
+                    connections.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            queued.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void run(Runnable command) {
+        queued.decrementAndGet();
+        running.incrementAndGet();
+        try {
+            command.run();
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    /**
+     * Number of operations waiting for a thread or, with virtual threads, for a connection
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * Number of operations running
+     */
+    public int getRunning() {
+        return running.get();
+    }
+
+    /**
+     * Whether the operations run on virtual threads
+     */
+    public boolean isVirtual() {
+        return virtualThreads != null;
+    }
+
+    /**
+     * {@code Executors.newVirtualThreadPerTaskExecutor()}, which is looked up at runtime
+     * because the application is compiled for Java 17
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Virtual threads need Java 21 or later, running database operations on database.dispatcher");
+            return null;
+        }
     }
 }
@@ -0,0 +1,159 @@
+package repositoryies;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import play.Logger;
+import play.db.Database;
+import utils.LatencyHistogram;
+import utils.PrometheusText;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Records how long each repository operation waited for a thread and a connection,
+ * how long it ran and how it ended, and reports them with the state of the
+ * connection pool in the Prometheus text format.
+ */
+@Singleton
+public class DatabaseMetrics {
+
+    private static final Logger.ALogger logger = Logger.of(DatabaseMetrics.class);
+
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+    private final Database database;
+    private final DatabaseExecutionContext executionContext;
+    private final Bulkheads bulkheads;
+
+    /**
+     * Null until first read, and when the pool is not a HikariCP pool
+     */
+    private volatile HikariDataSource pool;
+
+    @Inject
+    public DatabaseMetrics(Database database, DatabaseExecutionContext executionContext, Bulkheads bulkheads) {
+        this.database = database;
+        this.executionContext = executionContext;
+        this.bulkheads = bulkheads;
+    }
+
+    /**
+     * Run an operation like {@link CompletableFuture#supplyAsync(Supplier, Executor)},
+     * recording it under its name
+     *
+     * @param operation Name of the operation, e.g. "CropRepository.pageByUser"
+     */
+    public <T> CompletableFuture<T> supplyAsync(String operation, Supplier<T> supplier, Executor executor) {
+        Operation stats = operations.computeIfAbsent(operation, name -> new Operation());
+        long submitted = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long started = System.nanoTime();
+                stats.wait.record(started - submitted);
+                boolean succeeded = false;
+                try {
+                    T result = supplier.get();
+                    succeeded = true;
+                    return result;
+                } finally {
+                    stats.execution.record(System.nanoTime() - started);
+                    (succeeded ? stats.succeeded : stats.failed).increment();
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            stats.rejected.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Number of operations of a name which ran to the end, successfully or not
+     */
+    public long getCompleted(String operation) {
+        Operation stats = operations.get(operation);
+        return stats == null ? 0 : stats.execution.getCount();
+    }
+
+    /**
+     * Write the metrics of the operations, the bulkheads, the executor and the connection pool
+     */
+    public void writeTo(PrometheusText text) {
+        Map<String, Operation> sorted = new TreeMap<>(operations);
+
+        text.metric("database_operation_wait_seconds", "histogram",
+            "Time from submitting a repository operation until it started running");
+        sorted.forEach((name, stats) -> stats.wait.writeTo(text, "database_operation_wait_seconds", "operation", name));
+
+        text.metric("database_operation_seconds", "histogram", "Running time of repository operations");
+        sorted.forEach((name, stats) -> stats.execution.writeTo(text, "database_operation_seconds", "operation", name));
+
+        text.metric("database_operations_total", "counter", "Repository operations by outcome");
+        sorted.forEach((name, stats) -> {
+            text.sample("database_operations_total", stats.succeeded.sum(), "operation", name, "outcome", "success");
+            text.sample("database_operations_total", stats.failed.sum(), "operation", name, "outcome", "failure");
+            text.sample("database_operations_total", stats.rejected.sum(), "operation", name, "outcome", "rejected");
+        });
+
+        text.metric("database_bulkhead_running", "gauge", "Operations running in a bulkhead");
+        bulkheads.all().forEach(bulkhead -> text.sample("database_bulkhead_running", bulkhead.getRunning(), "bulkhead", bulkhead.getName()));
+        text.metric("database_bulkhead_queued", "gauge", "Operations waiting in the queue of a bulkhead");
+        bulkheads.all().forEach(bulkhead -> text.sample("database_bulkhead_queued", bulkhead.getQueued(), "bulkhead", bulkhead.getName()));
+        text.metric("database_bulkhead_max_concurrent", "gauge", "Operations a bulkhead runs at once");
+        bulkheads.all().forEach(bulkhead -> text.sample("database_bulkhead_max_concurrent", bulkhead.getMaxConcurrent(), "bulkhead", bulkhead.getName()));
+        text.metric("database_bulkhead_rejected_total", "counter", "Operations rejected by a full bulkhead");
+        bulkheads.all().forEach(bulkhead -> text.sample("database_bulkhead_rejected_total", bulkhead.getRejected(), "bulkhead", bulkhead.getName()));
+
+        text.metric("database_executor_queued", "gauge", "Operations waiting for a thread or a connection of the database executor");
+        text.sample("database_executor_queued", executionContext.getQueued());
+        text.metric("database_executor_running", "gauge", "Operations running on the database executor");
+        text.sample("database_executor_running", executionContext.getRunning());
+
+        HikariDataSource dataSource = pool();
+        HikariPoolMXBean bean = dataSource == null ? null : dataSource.getHikariPoolMXBean();
+        if (bean != null) {
+            text.metric("database_pool_connections_active", "gauge", "Connections in use");
+            text.sample("database_pool_connections_active", bean.getActiveConnections());
+            text.metric("database_pool_connections_idle", "gauge", "Idle connections");
+            text.sample("database_pool_connections_idle", bean.getIdleConnections());
+            text.metric("database_pool_connections", "gauge", "Open connections");
+            text.sample("database_pool_connections", bean.getTotalConnections());
+            text.metric("database_pool_connections_max", "gauge", "Maximum number of connections");
+            text.sample("database_pool_connections_max", dataSource.getMaximumPoolSize());
+            text.metric("database_pool_threads_pending", "gauge", "Threads waiting for a connection");
+            text.sample("database_pool_threads_pending", bean.getThreadsAwaitingConnection());
+        }
+    }
+
+    private HikariDataSource pool() {
+        if (pool == null) {
+            DataSource dataSource = database.getDataSource();
+            try {
+                if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                    pool = dataSource.unwrap(HikariDataSource.class);
+                }
+            } catch (SQLException e) {
+                logger.warn("Could not read the connection pool for its metrics", e);
+            }
+        }
+        return pool;
+    }
+
+    private static final class Operation {
+        final LatencyHistogram wait = new LatencyHistogram();
+        final LatencyHistogram execution = new LatencyHistogram();
+        final LongAdder succeeded = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+    }
+}
@@ -2,9 +2,10 @@ package repositoryies;
 
 import io.ebean.DB;
 import io.ebean.Model;
-import io.ebean.PagedList;
+import io.ebean.Query;
 import io.ebean.Transaction;
 import models.Field;
+import models.SoilDiagnostic;
 
 import javax.inject.Inject;
 import java.util.Optional;
@@ -12,8 +13,8 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
 
-import static java.util.concurrent.CompletableFuture.supplyAsync;
 
 /**
  * A repository that executes database operations in a different
@@ -21,48 +22,79 @@ import static java.util.concurrent.CompletableFuture.supplyAsync;
  */
 public class FieldRepository {
 
-    private final DatabaseExecutionContext executionContext;
+    /**
+     * Properties the list can be sorted by with keyset pagination
+     */
+    private static final Map<String, Function<Field, Object>> SORT_KEYS = Map.of(
+        "name", Field::getName,
+        "northEastLatitude", Field::getNorthEastLatitude,
+        "northEastLongitude", Field::getNorthEastLongitude,
+        "southWestLatitude", Field::getSouthWestLatitude,
+        "southWestLongitude", Field::getSouthWestLongitude
+    );
+
+    /**
+     * Properties shown in the list, which are the only ones read for a list page
+     */
+    private static final String LIST_PROPERTIES = "name, northEastLatitude, northEastLongitude, southWestLatitude, southWestLongitude";
+
+    private final Bulkhead bulkhead;
+    private final PageCountCache counts;
+    private final InvalidationBus changes;
+    private final OptionCache optionCache;
+    private final IdAllocator ids;
+    private final DatabaseMetrics metrics;
 
     @Inject
-    public FieldRepository(DatabaseExecutionContext executionContext) {
-        this.executionContext = executionContext;
+    public FieldRepository(Bulkheads bulkheads, PageCountCache counts, InvalidationBus changes,
+                           OptionCache optionCache, IdAllocator ids, DatabaseMetrics metrics) {
+        this.bulkhead = bulkheads.interactive();
+        this.counts = counts;
+        this.changes = changes;
+        this.optionCache = optionCache;
+        this.ids = ids;
+        this.metrics = metrics;
     }
 
     /**
-     * Return a paged list of fields for a specific user
+     * Return a page of fields for a specific user, read by offset or, for deep pages,
+     * by cursor. See {@link Keyset}.
+     *
+     * @param cursor Cursor of the page from the previous page, empty to read by offset
      */
-    public CompletionStage<PagedList<Field>> pageByUser(int page, int pageSize, String sortBy, String order, String filter, Long userId) {
-        return supplyAsync(() ->
-                DB.find(Field.class)
-                    .fetch("user")
+    public CompletionStage<KeysetPage<Field>> pageByUser(int page, int pageSize, String sortBy, String order, String filter,
+                                                         String cursor, Long userId) {
+        return metrics.supplyAsync("FieldRepository.pageByUser", () -> {
+            Query<Field> query = DB.find(Field.class)
+                    .select(LIST_PROPERTIES)
                     .where()
                     .eq("user.id", userId)
-                    .ilike("name", "%" + filter + "%")
-                    .orderBy(sortBy + " " + order)
-                    .setFirstRow(page * pageSize)
-                    .setMaxRows(pageSize)
-                    .findPagedList(), executionContext);
+                    .ilike("name", TrigramIndexes.containsPattern(filter))
+                    .query()
+                    .setTimeout(bulkhead.getQueryTimeoutSeconds());
+            return Keyset.page(query, SORT_KEYS, counts, userId + ":" + filter, page, pageSize, sortBy, order, cursor);
+        }, bulkhead);
     }
 
     public CompletionStage<Optional<Field>> lookup(Long id) {
-        return supplyAsync(() -> DB.find(Field.class).setId(id).findOneOrEmpty(), executionContext);
+        return metrics.supplyAsync("FieldRepository.lookup", () -> DB.find(Field.class).setId(id).findOneOrEmpty(), bulkhead);
     }
 
     /**
      * Lookup a field by ID and ensure it belongs to the specified user
      */
     public CompletionStage<Optional<Field>> lookupByUser(Long id, Long userId) {
-        return supplyAsync(() -> 
+        return metrics.supplyAsync("FieldRepository.lookupByUser", () -> 
                 DB.find(Field.class)
                     .fetch("user")
                     .where()
                     .eq("id", id)
                     .eq("user.id", userId)
-                    .findOneOrEmpty(), executionContext);
+                    .findOneOrEmpty(), bulkhead);
     }
 
     public CompletionStage<Optional<Long>> update(Long id, Field newFieldData) {
-        return supplyAsync(() -> {
+        return metrics.supplyAsync("FieldRepository.update", () -> {
             Transaction txn = DB.beginTransaction();
             Optional<Long> value = Optional.empty();
             try {
@@ -76,14 +108,14 @@ public class FieldRepository {
                 txn.end();
             }
             return value;
-        }, executionContext);
+        }, bulkhead).whenComplete((result, error) -> changes.changed(Field.class, SoilDiagnostic.class));
     }
 
     /**
      * Update a field ensuring it belongs to the specified user
      */
     public CompletionStage<Optional<Long>> updateByUser(Long id, Field newFieldData, Long userId) {
-        return supplyAsync(() -> {
+        return metrics.supplyAsync("FieldRepository.updateByUser", () -> {
             Transaction txn = DB.beginTransaction();
             Optional<Long> value = Optional.empty();
             try {
@@ -102,11 +134,11 @@ public class FieldRepository {
                 txn.end();
             }
             return value;
-        }, executionContext);
+        }, bulkhead).whenComplete((result, error) -> changes.changed(Field.class, SoilDiagnostic.class));
     }
 
     public CompletionStage<Optional<Long>> delete(Long id) {
-        return supplyAsync(() -> {
+        return metrics.<Optional<Long>>supplyAsync("FieldRepository.delete", () -> {
             try {
                 Optional<Field> fieldOptional = DB.find(Field.class).setId(id).findOneOrEmpty();
                 fieldOptional.ifPresent(Model::delete);
@@ -114,14 +146,14 @@ public class FieldRepository {
             } catch (Exception e) {
                 return Optional.empty();
             }
-        }, executionContext);
+        }, bulkhead).whenComplete((result, error) -> changes.changed(Field.class, SoilDiagnostic.class));
     }
 
     /**
      * Delete a field ensuring it belongs to the specified user
      */
     public CompletionStage<Boolean> deleteByUser(Long id, Long userId) {
-        return supplyAsync(() -> {
+        return metrics.supplyAsync("FieldRepository.deleteByUser", () -> {
             try {
                 Optional<Field> fieldOptional = DB.find(Field.class)
                         .fetch("user")
@@ -134,32 +166,33 @@ public class FieldRepository {
             } catch (Exception e) {
                 return false;
             }
-        }, executionContext);
+        }, bulkhead).whenComplete((result, error) -> changes.changed(Field.class, SoilDiagnostic.class));
     }
 
     public CompletionStage<Long> insert(Field field) {
-        return supplyAsync(() -> {
-             field.setId(System.currentTimeMillis()); // not ideal, but it works
+        return metrics.supplyAsync("FieldRepository.insert", () -> {
+             field.setId(ids.nextId());
              DB.insert(field);
              return field.getId();
-        }, executionContext);
+        }, bulkhead).whenComplete((result, error) -> changes.changed(Field.class, SoilDiagnostic.class));
     }
 
     /**
-     * Get options for fields belonging to a specific user
+     * Get options for fields belonging to a specific user, cached until they change
      */
     public CompletionStage<Map<String, String>> optionsByUser(Long userId) {
-        return supplyAsync(() -> DB.find(Field.class)
+        return optionCache.options(Field.class, userId, () -> metrics.supplyAsync("FieldRepository.optionsByUser", () -> DB.find(Field.class)
+                .select("name")
                 .where()
                 .eq("user.id", userId)
                 .orderBy("name")
-                .findList(), executionContext)
+                .findList(), bulkhead)
                 .thenApply(list -> {
                     java.util.HashMap<String, String> options = new java.util.LinkedHashMap<String, String>();
                     for (Field f : list) {
                         options.put(f.getId().toString(), f.getName());
                     }
                     return options;
-                });
+                }));
     }
 }
\ No newline at end of file
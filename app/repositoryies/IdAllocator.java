@@ -0,0 +1,75 @@
+package repositoryies;
+
+import io.ebean.DB;
+import jakarta.persistence.PersistenceException;
+import org.postgresql.PGConnection;
+
+import javax.inject.Singleton;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Allocates the ids of new rows from the database sequence {@value #SEQUENCE}, which
+ * is shared by all tables. Every value of the sequence reserves a block of
+ * {@value #BLOCK_SIZE} ids, so that the sequence is only read once per block and ids
+ * never collide, neither between concurrent inserts nor between application nodes.
+ *
+ * Ids of a block that is not used up before the application stops are skipped.
+ */
+@Singleton
+public class IdAllocator {
+
+    static final String SEQUENCE = "entity_id_seq";
+
+    /**
+     * Ids per value of the sequence, which must be the increment of the sequence
+     */
+    static final int BLOCK_SIZE = 50;
+
+    /**
+     * Held while a new block is read, rather than a monitor, so that the virtual threads
+     * of {@code database.executor = "virtual-threads"} waiting for it do not pin their
+     * carrier threads
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Next id to hand out and end of the current block, guarded by {@link #lock}
+     */
+    private long next;
+    private long limit;
+
+    /**
+     * Return a new id, reading the next block from the sequence if necessary. Blocks
+     * on the database when a new block is needed, so it must be called on the
+     * {@link DatabaseExecutionContext}.
+     */
+    public long nextId() {
+        lock.lock();
+        try {
+            if (next >= limit) {
+                next = nextBlock();
+                limit = next + BLOCK_SIZE;
+            }
+            return next++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long nextBlock() {
+        try (Connection connection = DB.getDefault().dataSource().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(connection.isWrapperFor(PGConnection.class)
+                     ? "select nextval('" + SEQUENCE + "')"
+                     : "select next value for " + SEQUENCE)) {
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            throw new PersistenceException("Could not allocate ids from " + SEQUENCE, e);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package repositoryies;
+
+import com.typesafe.config.Config;
+import io.ebean.DB;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import play.Logger;
+import play.inject.ApplicationLifecycle;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+import static java.util.concurrent.CompletableFuture.runAsync;
+
+/**
+ * Tells the in-memory caches of every application node that rows have changed.
+ *
+ * Repositories report their writes here. Subscribers on the same node are told at
+ * once; on PostgreSQL the change is also sent with {@code NOTIFY} on the
+ * {@value #CHANNEL} channel, which every node listens to on a connection of its own,
+ * outside of the connection pool. No broker is needed besides the database itself.
+ *
+ * Notifications sent while a node is not connected are lost, so after the listener
+ * connection has been lost subscribers are told that anything may have changed. On
+ * other databases, e.g. H2 in the tests, changes are only seen by the same node.
+ */
+@Singleton
+public class InvalidationBus {
+
+    private static final Logger.ALogger logger = Logger.of(InvalidationBus.class);
+
+    static final String CHANNEL = "cache_invalidation";
+
+    /**
+     * Types that can be sent to other nodes
+     */
+    private static final String MODELS_PACKAGE = "models.";
+
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 30_000;
+
+    private final DatabaseExecutionContext executionContext;
+    private final String node = UUID.randomUUID().toString();
+    private final List<BiConsumer<Class<?>, Long>> subscribers = new CopyOnWriteArrayList<>();
+
+    private final String url;
+    private final Properties credentials = new Properties();
+    private final long pollMillis;
+    private final boolean notifying;
+
+    private volatile boolean running = true;
+    private volatile Connection listenerConnection;
+
+    @Inject
+    public InvalidationBus(DatabaseExecutionContext executionContext, Config config, ApplicationLifecycle lifecycle) {
+        this.executionContext = executionContext;
+        this.pollMillis = config.getDuration("cache.invalidation.pollInterval").toMillis();
+        this.url = postgresUrl(config);
+        this.notifying = url != null && config.getBoolean("cache.invalidation.notify");
+
+        if (notifying) {
+            Thread listener = new Thread(this::listen, "cache-invalidation-listener");
+            listener.setDaemon(true);
+            listener.start();
+            lifecycle.addStopHook(() -> {
+                running = false;
+                closeListenerConnection();
+                return CompletableFuture.completedFuture(null);
+            });
+        }
+    }
+
+    /**
+     * Be told about changes. The subscriber receives the changed type and the id of the
+     * changed row, or null for the id if any row of the type may have changed. A null
+     * type means that rows of any type may have changed.
+     *
+     * Subscribers are called on the thread that reported the change or on the listener
+     * thread, and must be quick.
+     */
+    public void subscribe(BiConsumer<Class<?>, Long> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * Report that any rows of the given types may have changed
+     */
+    public void changed(Class<?>... types) {
+        for (Class<?> type : types) {
+            changed(type, null);
+        }
+    }
+
+    /**
+     * Report that a row has changed
+     *
+     * @param id Id of the row, or null if any row of the type may have changed
+     */
+    public void changed(Class<?> type, Long id) {
+        deliver(type, id);
+        if (notifying) {
+            String payload = node + " " + type.getName() + " " + (id == null ? "*" : id);
+            runAsync(() -> notifyNodes(payload), executionContext);
+        }
+    }
+
+    private void deliver(Class<?> type, Long id) {
+        for (BiConsumer<Class<?>, Long> subscriber : subscribers) {
+            try {
+                subscriber.accept(type, id);
+            } catch (RuntimeException e) {
+                logger.error("Cache invalidation failed", e);
+            }
+        }
+    }
+
+    private void notifyNodes(String payload) {
+        try (Connection connection = DB.getDefault().dataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement("select pg_notify(?, ?)")) {
+            statement.setString(1, CHANNEL);
+            statement.setString(2, payload);
+            statement.execute();
+        } catch (SQLException e) {
+            // The other nodes notice at the latest when their entries expire
+            logger.warn("Could not notify other nodes of a change: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Receive the changes of the other nodes until the application stops, reconnecting
+     * whenever the connection is lost
+     */
+    private void listen() {
+        long reconnectDelay = 1_000;
+        boolean connectedBefore = false;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, credentials)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("listen " + CHANNEL);
+                }
+                listenerConnection = connection;
+                if (connectedBefore) {
+                    // Changes of other nodes may have been missed while disconnected
+                    deliver(null, null);
+                }
+                connectedBefore = true;
+                reconnectDelay = 1_000;
+                PGConnection pg = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pg.getNotifications((int) pollMillis);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            received(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                logger.warn("Cache invalidation listener disconnected, retrying in " + reconnectDelay + "ms: " + e.getMessage());
+            } finally {
+                listenerConnection = null;
+            }
+            try {
+                Thread.sleep(reconnectDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY_MILLIS);
+        }
+    }
+
+    private void received(String payload) {
+        String[] parts = payload.split(" ");
+        if (parts.length != 3 || parts[0].equals(node) || !parts[1].startsWith(MODELS_PACKAGE)) {
+            return;
+        }
+        try {
+            Class<?> type = Class.forName(parts[1], false, InvalidationBus.class.getClassLoader());
+            deliver(type, "*".equals(parts[2]) ? null : Long.valueOf(parts[2]));
+        } catch (ClassNotFoundException | NumberFormatException e) {
+            logger.warn("Ignoring invalid cache invalidation: " + payload);
+        }
+    }
+
+    private void closeListenerConnection() {
+        Connection connection = listenerConnection;
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.debug("Could not close the cache invalidation listener", e);
+            }
+        }
+    }
+
+    /**
+     * The JDBC URL of the default database if it is PostgreSQL, otherwise null. The
+     * credentials are taken from the configuration or, in the URL format of Heroku,
+     * from the URL.
+     */
+    private String postgresUrl(Config config) {
+        if (!config.hasPath("db.default.url")) {
+            return null;
+        }
+        String configured = config.getString("db.default.url");
+        if (config.hasPath("db.default.username")) {
+            credentials.setProperty("user", config.getString("db.default.username"));
+        }
+        if (config.hasPath("db.default.password")) {
+            credentials.setProperty("password", config.getString("db.default.password"));
+        }
+        if (configured.startsWith("jdbc:postgresql:")) {
+            return configured;
+        }
+        if (configured.startsWith("postgres://") || configured.startsWith("postgresql://")) {
+            URI uri = URI.create(configured);
+            String userInfo = uri.getUserInfo();
+            if (userInfo != null) {
+                String[] user = userInfo.split(":", 2);
+                credentials.setProperty("user", user[0]);
+                if (user.length > 1) {
+                    credentials.setProperty("password", user[1]);
+                }
+            }
+            return "jdbc:postgresql://" + uri.getHost() + (uri.getPort() > 0 ? ":" + uri.getPort() : "") + uri.getPath()
+                    + (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : "");
+        }
+        return null;
+    }
+}
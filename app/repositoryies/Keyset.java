@@ -0,0 +1,147 @@
+package repositoryies;
+
+import io.ebean.ExpressionList;
+import io.ebean.Query;
+import models.BaseModel;
+import utils.PageCursor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+
+/**
+ * Keyset pagination of repository queries. Rows are ordered by the sort property and
+ * then by id, so every row has a unique position. Ascending lists put null values
+ * last and descending lists first, which makes a descending list the exact reverse
+ * of the ascending one on every database.
+ *
+ * Shallow pages are read by offset, so they can be linked by number. Deeper pages are
+ * read with a condition on the sort key and id of the row next to the page, which the
+ * database answers by seeking in an index instead of reading and discarding all rows
+ * of the previous pages.
+ */
+final class Keyset {
+
+    private static final String ID = "id";
+
+    private Keyset() {
+    }
+
+    /**
+     * Read a page of a query. One row more than the page size is read to tell whether
+     * there is a next page, and the total count is taken from the count cache, so that a
+     * page usually costs a single query.
+     *
+     * @param query    Query with its fetches and filters, but without order or row limits
+     * @param sortKeys Sortable properties, and how to read their value from a bean. Other
+     *                 properties are sorted by id.
+     * @param counts   Cache of the total count
+     * @param countKey Everything besides the bean type the count depends on
+     * @param page     Index of the page, used for offset pages and to number cursor pages
+     * @param cursor   Cursor of the page, empty to read the page by offset
+     */
+    static <T extends BaseModel> KeysetPage<T> page(Query<T> query, Map<String, Function<T, Object>> sortKeys,
+                                                    PageCountCache counts, String countKey,
+                                                    int page, int pageSize, String sortBy, String order, String cursor) {
+        String sort = sortKeys.containsKey(sortBy) ? sortBy : ID;
+        Function<T, Object> sortKey = sortKeys.getOrDefault(sort, BaseModel::getId);
+        boolean descending = "desc".equalsIgnoreCase(order);
+        Optional<PageCursor> position = PageCursor.decode(cursor).filter(c -> c.matches(sort, descending));
+        Query<T> countQuery = query.copy();
+        IntSupplier counter = () -> counts.count(countQuery.getBeanType(), countKey, countQuery::findCount);
+
+        if (position.isEmpty()) {
+            List<T> rows = query
+                    .orderBy(orderBy(sort, descending))
+                    .setFirstRow(page * pageSize)
+                    .setMaxRows(pageSize + 1)
+                    .findList();
+            boolean hasNext = rows.size() > pageSize;
+            List<T> list = hasNext ? new ArrayList<>(rows.subList(0, pageSize)) : rows;
+            String next = hasNext && page + 1 >= PageCursor.MAX_OFFSET_PAGES
+                    ? cursor(sortKey, sort, descending, false, list.get(list.size() - 1))
+                    : null;
+            return new KeysetPage<>(list, page, pageSize, totalCount(counter, page, pageSize, list, hasNext), hasNext, null, next);
+        }
+
+        PageCursor from = position.get();
+        // A backward page is read in reverse order, starting at the cursor
+        boolean reverse = descending != from.isBackward();
+        after(query.where(), sort, from.getValue(), from.getId(), reverse);
+        List<T> rows = query
+                .orderBy(orderBy(sort, reverse))
+                .setMaxRows(pageSize + 1)
+                .findList();
+
+        boolean more = rows.size() > pageSize;
+        List<T> list = new ArrayList<>(more ? rows.subList(0, pageSize) : rows);
+        if (from.isBackward()) {
+            Collections.reverse(list);
+        }
+        if (list.isEmpty()) {
+            return new KeysetPage<>(list, page, pageSize, totalCount(counter, page, pageSize, list, false), false, null, null);
+        }
+        boolean hasPrev = !from.isBackward() || more;
+        boolean hasNext = from.isBackward() || more;
+        String prev = hasPrev && page - 1 >= PageCursor.MAX_OFFSET_PAGES
+                ? cursor(sortKey, sort, descending, true, list.get(0))
+                : null;
+        String next = hasNext ? cursor(sortKey, sort, descending, false, list.get(list.size() - 1)) : null;
+        return new KeysetPage<>(list, page, pageSize, totalCount(counter, page, pageSize, list, hasNext), hasNext, prev, next);
+    }
+
+    /**
+     * The cached count may be out of date, but never contradicts the page
+     */
+    private static int totalCount(IntSupplier counter, int page, int pageSize, List<?> list, boolean hasNext) {
+        int shown = page * pageSize + list.size();
+        return Math.max(counter.getAsInt(), hasNext ? shown + 1 : shown);
+    }
+
+    private static String orderBy(String sort, boolean descending) {
+        if (ID.equals(sort)) {
+            return descending ? "id desc" : "id asc";
+        }
+        return descending ? sort + " desc nulls first, id desc" : sort + " asc nulls last, id asc";
+    }
+
+    /**
+     * Restrict the query to the rows behind the given position in the given order
+     */
+    private static <T> void after(ExpressionList<T> where, String sort, Object value, long id, boolean descending) {
+        if (ID.equals(sort)) {
+            if (descending) {
+                where.lt(ID, id);
+            } else {
+                where.gt(ID, id);
+            }
+        } else if (value == null) {
+            if (descending) {
+                // Nulls come first, so every non-null row follows
+                where.or().isNotNull(sort).lt(ID, id).endOr();
+            } else {
+                where.isNull(sort).gt(ID, id);
+            }
+        } else if (descending) {
+            where.or()
+                    .lt(sort, value)
+                    .and().eq(sort, value).lt(ID, id).endAnd()
+                    .endOr();
+        } else {
+            where.or()
+                    .gt(sort, value)
+                    .and().eq(sort, value).gt(ID, id).endAnd()
+                    .isNull(sort)
+                    .endOr();
+        }
+    }
+
+    private static <T extends BaseModel> String cursor(Function<T, Object> sortKey, String sort, boolean descending,
+                                                       boolean backward, T row) {
+        return new PageCursor(sort, descending, backward, sortKey.apply(row), row.getId()).encode();
+    }
+}
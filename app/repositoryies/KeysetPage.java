@@ -0,0 +1,46 @@
+package repositoryies;
+
+import utils.InMemoryPagedList;
+
+import java.util.List;
+
+/**
+ * A page of a list that can be navigated by page number or by cursor. Shallow pages
+ * are linked by their number; where the adjacent page is deep, a cursor is provided
+ * that the list route passes back to the repository.
+ *
+ * @param <T> Type of the listed beans
+ */
+public class KeysetPage<T> extends InMemoryPagedList<T> {
+
+    private final boolean hasNext;
+    private final String prevCursor;
+    private final String nextCursor;
+
+    /**
+     * @param totalCount Number of beans over all pages, which may be slightly out of date
+     * @param hasNext    Whether there is a next page, regardless of the total count
+     * @param prevCursor Cursor of the previous page, or null to link it by number
+     * @param nextCursor Cursor of the next page, or null to link it by number
+     */
+    public KeysetPage(List<T> list, int pageIndex, int pageSize, int totalCount, boolean hasNext,
+                      String prevCursor, String nextCursor) {
+        super(list, pageIndex, pageSize, totalCount);
+        this.hasNext = hasNext;
+        this.prevCursor = prevCursor;
+        this.nextCursor = nextCursor;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    public String getPrevCursor() {
+        return prevCursor;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,149 @@
+package repositoryies;
+
+import com.typesafe.config.Config;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caches the id to name maps of the select boxes in the create and edit forms, which
+ * would otherwise be read from the database whenever a form is shown. Options are kept
+ * per user, or once for data shared by all users, and dropped when rows of their type
+ * change on any node, as reported through the {@link InvalidationBus}.
+ *
+ * The cached maps cannot be modified, so they can be handed to every request as they are.
+ */
+@Singleton
+public class OptionCache {
+
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    private final Map<Key, Entry> options = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented by every invalidation of a type, so that options which were read
+     * before a write are not cached after it
+     */
+    private final Map<Class<?>, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    @Inject
+    public OptionCache(Config config, InvalidationBus bus) {
+        this.ttlMillis = config.getDuration("options.cache.ttl").toMillis();
+        this.maxEntries = config.getInt("options.cache.maxEntries");
+        bus.subscribe((type, id) -> {
+            if (type == null) {
+                invalidateAll();
+            } else {
+                invalidate(type);
+            }
+        });
+    }
+
+    /**
+     * Return the cached options, reading them if necessary.
+     *
+     * @param type   Type of the beans offered as options
+     * @param userId Owner of the beans, or null for beans shared by all users
+     * @param loader Reads the options in the order they are offered
+     */
+    public CompletionStage<Map<String, String>> options(Class<?> type, Long userId,
+                                                        Supplier<CompletionStage<Map<String, String>>> loader) {
+        Key key = new Key(type, userId);
+        long now = System.currentTimeMillis();
+        Entry cached = options.get(key);
+        if (cached != null && cached.expiresAt > now) {
+            return CompletableFuture.completedFuture(cached.options);
+        }
+
+        long generation = generation(type).get();
+        return loader.get().thenApply(loaded -> {
+            Map<String, String> prebuilt = Collections.unmodifiableMap(new LinkedHashMap<>(loaded));
+            if (ttlMillis <= 0) {
+                return prebuilt;
+            }
+            if (options.size() >= maxEntries) {
+                long expired = System.currentTimeMillis();
+                options.values().removeIf(entry -> entry.expiresAt <= expired);
+                if (options.size() >= maxEntries) {
+                    options.clear();
+                }
+            }
+            options.put(key, new Entry(prebuilt, System.currentTimeMillis() + ttlMillis));
+            if (generation(type).get() != generation) {
+                // Written in the meantime, the options may already be out of date
+                options.remove(key);
+            }
+            return prebuilt;
+        });
+    }
+
+    /**
+     * Drop the options of the given types after their rows have changed
+     */
+    public void invalidate(Class<?>... types) {
+        for (Class<?> type : types) {
+            generation(type).incrementAndGet();
+            options.keySet().removeIf(key -> key.type == type);
+        }
+    }
+
+    /**
+     * Drop all options, e.g. after changes may have been missed
+     */
+    public void invalidateAll() {
+        for (AtomicLong generation : generations.values()) {
+            generation.incrementAndGet();
+        }
+        options.clear();
+    }
+
+    private AtomicLong generation(Class<?> type) {
+        return generations.computeIfAbsent(type, t -> new AtomicLong());
+    }
+
+    private static final class Key {
+
+        private final Class<?> type;
+        private final Long userId;
+
+        Key(Class<?> type, Long userId) {
+            this.type = type;
+            this.userId = userId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return type == other.type && Objects.equals(userId, other.userId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, userId);
+        }
+    }
+
+    private static final class Entry {
+
+        private final Map<String, String> options;
+        private final long expiresAt;
+
+        Entry(Map<String, String> options, long expiresAt) {
+            this.options = options;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package repositoryies;
+
+import com.typesafe.config.Config;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Caches the total row counts shown above the list pages. Counting a filtered list
+ * scans as many rows as reading it, so without the cache every list request would cost
+ * two scans. Counts are dropped when rows of the counted type change on any node, as
+ * reported through the {@link InvalidationBus}, and expire after a while in any case,
+ * because not every change goes through a repository of this application.
+ */
+@Singleton
+public class PageCountCache {
+
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    private final Map<Key, Entry> counts = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented by every invalidation of a type, so that a count which was started
+     * before a write is not cached after it
+     */
+    private final Map<Class<?>, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    public PageCountCache(Config config) {
+        this.ttlMillis = config.getDuration("pagination.countCache.ttl").toMillis();
+        this.maxEntries = config.getInt("pagination.countCache.maxEntries");
+    }
+
+    @Inject
+    public PageCountCache(Config config, InvalidationBus bus) {
+        this(config);
+        bus.subscribe((type, id) -> {
+            if (type == null) {
+                invalidateAll();
+            } else {
+                invalidate(type);
+            }
+        });
+    }
+
+    /**
+     * Return the cached count of a list, counting it if necessary.
+     *
+     * @param type    Type of the counted beans
+     * @param key     Everything else the count depends on, e.g. the user and the filter
+     * @param counter Counts the rows
+     */
+    public int count(Class<?> type, String key, IntSupplier counter) {
+        if (ttlMillis <= 0) {
+            return counter.getAsInt();
+        }
+        Key cacheKey = new Key(type, key);
+        long now = System.currentTimeMillis();
+        Entry cached = counts.get(cacheKey);
+        if (cached != null && cached.expiresAt > now) {
+            return cached.count;
+        }
+
+        long generation = generation(type).get();
+        int count = counter.getAsInt();
+        if (counts.size() >= maxEntries) {
+            counts.values().removeIf(entry -> entry.expiresAt <= now);
+            if (counts.size() >= maxEntries) {
+                counts.clear();
+            }
+        }
+        counts.put(cacheKey, new Entry(count, now + ttlMillis));
+        if (generation(type).get() != generation) {
+            // Written in the meantime, the count may already be out of date
+            counts.remove(cacheKey);
+        }
+        return count;
+    }
+
+    /**
+     * Drop the counts of the given types after their rows have changed
+     */
+    public void invalidate(Class<?>... types) {
+        for (Class<?> type : types) {
+            generation(type).incrementAndGet();
+            counts.keySet().removeIf(key -> key.type == type);
+        }
+    }
+
+    /**
+     * Drop all counts, e.g. after changes may have been missed
+     */
+    public void invalidateAll() {
+        for (AtomicLong generation : generations.values()) {
+            generation.incrementAndGet();
+        }
+        counts.clear();
+    }
+
+    private AtomicLong generation(Class<?> type) {
+        return generations.computeIfAbsent(type, t -> new AtomicLong());
+    }
+
+    private static final class Key {
+
+        private final Class<?> type;
+        private final String key;
+
+        Key(Class<?> type, String key) {
+            this.type = type;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return type == other.type && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, key);
+        }
+    }
+
+    private static final class Entry {
+
+        private final int count;
+        private final long expiresAt;
+
+        Entry(int count, long expiresAt) {
+            this.count = count;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
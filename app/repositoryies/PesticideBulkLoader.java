@@ -0,0 +1,214 @@
+package repositoryies;
+
+import models.PesticideRegistration;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Writes pesticide registrations straight to a table, bypassing Ebean bean persistence.
+ * On PostgreSQL the rows are streamed with a single {@code COPY ... FROM STDIN}; other
+ * databases (H2 in tests) fall back to batched JDBC inserts.
+ *
+ * Every row is stored with its row key and content hash, see {@link PesticideRowHasher}.
+ * Rows appended to a table that already holds rows, e.g. the active table, get row keys
+ * that follow the ones in the table, so that the keys stay unique for the next
+ * incremental import.
+ *
+ * The loader uses the connection of the caller's transaction and never commits.
+ */
+public abstract class PesticideBulkLoader implements AutoCloseable {
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    protected final LocalDateTime now = LocalDateTime.now();
+
+    final PesticideRowHasher hasher;
+
+    private long written;
+
+    /**
+     * Open a loader for the given table, using COPY when the connection is a PostgreSQL connection.
+     *
+     * @param connection Connection of the surrounding transaction
+     * @param table      Table receiving the rows
+     */
+    public static PesticideBulkLoader open(Connection connection, String table) throws SQLException {
+        // Read before a COPY is started, which takes over the connection
+        PesticideRowHasher hasher = new PesticideRowHasher();
+        countExistingKeys(connection, table, hasher);
+        if (connection.isWrapperFor(PGConnection.class)) {
+            return new CopyLoader(hasher, connection.unwrap(PGConnection.class), table);
+        }
+        return new BatchLoader(hasher, connection, table);
+    }
+
+    protected PesticideBulkLoader(PesticideRowHasher hasher) {
+        this.hasher = hasher;
+    }
+
+    private static void countExistingKeys(Connection connection, String table, PesticideRowHasher hasher) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.setFetchSize(10_000);
+            try (ResultSet rs = statement.executeQuery("select row_key from " + table + " where row_key is not null")) {
+                while (rs.next()) {
+                    hasher.countExisting(rs.getString(1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Write a batch of rows. The rows can be discarded once this method returns.
+     */
+    public void write(List<PesticideRegistration> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        writeRows(rows);
+        written += rows.size();
+    }
+
+    /**
+     * Complete the load. Rows written before are only visible in the table afterwards.
+     *
+     * @return Number of rows written
+     */
+    public long finish() throws SQLException {
+        complete();
+        return written;
+    }
+
+    protected abstract void writeRows(List<PesticideRegistration> rows) throws SQLException;
+
+    protected abstract void complete() throws SQLException;
+
+    @Override
+    public abstract void close() throws SQLException;
+
+    protected static String columnList() {
+        return "created_at, updated_at, " + String.join(", ", PesticideTables.DATA_COLUMNS) + ", row_key, content_hash";
+    }
+
+    /**
+     * Streams rows through a single COPY in CSV format
+     */
+    private static class CopyLoader extends PesticideBulkLoader {
+
+        private final CopyIn copyIn;
+        private final String timestamp;
+        private final StringBuilder buffer = new StringBuilder(64 * 1024);
+
+        CopyLoader(PesticideRowHasher hasher, PGConnection connection, String table) throws SQLException {
+            super(hasher);
+            this.copyIn = connection.getCopyAPI().copyIn(
+                "COPY " + table + " (" + columnList() + ") FROM STDIN WITH (FORMAT csv)");
+            this.timestamp = TIMESTAMP_FORMAT.format(now);
+        }
+
+        @Override
+        protected void writeRows(List<PesticideRegistration> rows) throws SQLException {
+            buffer.setLength(0);
+            for (PesticideRegistration row : rows) {
+                buffer.append(timestamp).append(',').append(timestamp);
+                for (Function<PesticideRegistration, String> getter : PesticideTables.DATA_GETTERS) {
+                    buffer.append(',');
+                    appendCsvValue(buffer, getter.apply(row));
+                }
+                buffer.append(',');
+                appendCsvValue(buffer, hasher.rowKey(row));
+                buffer.append(',');
+                appendCsvValue(buffer, hasher.contentHash(row));
+                buffer.append('\n');
+            }
+            byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+            copyIn.writeToCopy(bytes, 0, bytes.length);
+        }
+
+        @Override
+        protected void complete() throws SQLException {
+            copyIn.endCopy();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+
+        /**
+         * In COPY CSV format an unquoted empty value is NULL, so every non-null value is quoted
+         */
+        private static void appendCsvValue(StringBuilder buffer, String value) {
+            if (value == null) {
+                return;
+            }
+            buffer.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    buffer.append('"');
+                }
+                buffer.append(c);
+            }
+            buffer.append('"');
+        }
+    }
+
+    /**
+     * Inserts rows with JDBC batches for databases without COPY support
+     */
+    private static class BatchLoader extends PesticideBulkLoader {
+
+        private final PreparedStatement statement;
+
+        BatchLoader(PesticideRowHasher hasher, Connection connection, String table) throws SQLException {
+            super(hasher);
+            StringBuilder placeholders = new StringBuilder("?, ?, ?, ?");
+            for (int i = 0; i < PesticideTables.DATA_COLUMNS.size(); i++) {
+                placeholders.append(", ?");
+            }
+            this.statement = connection.prepareStatement(
+                "insert into " + table + " (" + columnList() + ") values (" + placeholders + ")");
+        }
+
+        @Override
+        protected void writeRows(List<PesticideRegistration> rows) throws SQLException {
+            Timestamp timestamp = Timestamp.valueOf(now);
+            for (PesticideRegistration row : rows) {
+                statement.setTimestamp(1, timestamp);
+                statement.setTimestamp(2, timestamp);
+                int index = 3;
+                for (Function<PesticideRegistration, String> getter : PesticideTables.DATA_GETTERS) {
+                    statement.setString(index++, getter.apply(row));
+                }
+                statement.setString(index++, hasher.rowKey(row));
+                statement.setString(index, hasher.contentHash(row));
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+
+        @Override
+        protected void complete() {
+            // Every batch has already been executed
+        }
+
+        @Override
+        public void close() throws SQLException {
+            statement.close();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package repositoryies;
+
+/**
+ * Changes applied to the active pesticide registrations by an incremental import
+ */
+public class PesticideDiff {
+
+    private final int loaded;
+    private final int inserted;
+    private final int updated;
+    private final int deleted;
+
+    public PesticideDiff(int loaded, int inserted, int updated, int deleted) {
+        this.loaded = loaded;
+        this.inserted = inserted;
+        this.updated = updated;
+        this.deleted = deleted;
+    }
+
+    /**
+     * Number of rows read from the imported files
+     */
+    public int getLoaded() {
+        return loaded;
+    }
+
+    public int getInserted() {
+        return inserted;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public int getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * Number of imported rows that were already stored with the same content
+     */
+    public int getUnchanged() {
+        return loaded - inserted - updated;
+    }
+
+    /**
+     * Number of rows written or removed
+     */
+    public int getChanged() {
+        return inserted + updated + deleted;
+    }
+
+    @Override
+    public String toString() {
+        return inserted + " inserted, " + updated + " updated, " + deleted + " deleted, " + getUnchanged() + " unchanged";
+    }
+}
@@ -2,14 +2,34 @@ package repositoryies;
 
 import io.ebean.DB;
 import io.ebean.PagedList;
+import io.ebean.Query;
+import io.ebean.Transaction;
+import jakarta.persistence.PersistenceException;
 import models.PesticideRegistration;
 
 import javax.inject.Inject;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.LongFunction;
+import java.util.stream.Collectors;
 
-import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 
 /**
  * A repository that executes pesticide registration database operations in a different
@@ -17,75 +37,494 @@ import static java.util.concurrent.CompletableFuture.supplyAsync;
  */
 public class PesticideRepository {
 
-    private final DatabaseExecutionContext executionContext;
+    private static final String TABLE = PesticideTables.ACTIVE;
+
+    /**
+     * States of a dataset version in the pesticide_dataset table
+     */
+    private static final String DATASET_LOADING = "LOADING";
+    private static final String DATASET_ACTIVE = "ACTIVE";
+    private static final String DATASET_RETIRED = "RETIRED";
+    private static final String DATASET_FAILED = "FAILED";
+    private static final String DATASET_DROPPED = "DROPPED";
+
+    /**
+     * Properties the list can be sorted by with keyset pagination
+     */
+    private static final Map<String, Function<PesticideRegistration, Object>> SORT_KEYS = Map.of(
+        "registrationNumber", PesticideRegistration::getRegistrationNumber,
+        "usage", PesticideRegistration::getUsage,
+        "pesticideType", PesticideRegistration::getPesticideType,
+        "pesticideName", PesticideRegistration::getPesticideName,
+        "cropName", PesticideRegistration::getCropName,
+        "sprayVolume", PesticideRegistration::getSprayVolume,
+        "usageTime", PesticideRegistration::getUsageTime,
+        "mainAgentUsageCount", PesticideRegistration::getMainAgentUsageCount,
+        "usageMethod", PesticideRegistration::getUsageMethod
+    );
+
+    private final Bulkhead bulkhead;
+    private final PesticideSearchIndex searchIndex;
+    private final PageCountCache counts;
+    private final InvalidationBus changes;
+    private final DatabaseMetrics metrics;
 
     @Inject
-    public PesticideRepository(DatabaseExecutionContext executionContext) {
-        this.executionContext = executionContext;
+    public PesticideRepository(Bulkheads bulkheads, PesticideSearchIndex searchIndex,
+                               PageCountCache counts, InvalidationBus changes, DatabaseMetrics metrics) {
+        this.bulkhead = bulkheads.admin();
+        this.searchIndex = searchIndex;
+        this.counts = counts;
+        this.changes = changes;
+        this.metrics = metrics;
     }
 
     public CompletionStage<Optional<PesticideRegistration>> findById(Long id) {
-        return supplyAsync(() -> DB.find(PesticideRegistration.class).setId(id).findOneOrEmpty(), executionContext);
-    }
-
-    public CompletionStage<PagedList<PesticideRegistration>> page(int page, int pageSize, String sortBy, String order, String filter) {
-        return supplyAsync(() -> {
-            var query = DB.find(PesticideRegistration.class);
-            
-            if (filter != null && !filter.isEmpty()) {
-                query = query.where()
-                    .or()
-                        .icontains("registrationNumber", filter)
-                        .icontains("pesticideName", filter)
-                        .icontains("cropName", filter)
-                    .endOr()
-                    .query();
-            }
-            
-            if (sortBy != null && !sortBy.isEmpty()) {
-                if ("desc".equals(order)) {
-                    query = query.orderBy(sortBy + " desc");
-                } else {
-                    query = query.orderBy(sortBy + " asc");
-                }
-            }
-            
-            return query.setFirstRow(page * pageSize).setMaxRows(pageSize).findPagedList();
-        }, executionContext);
+        return metrics.supplyAsync("PesticideRepository.findById", () -> DB.find(PesticideRegistration.class).setId(id).findOneOrEmpty(), bulkhead);
+    }
+
+    /**
+     * Return a page of registrations. The page is answered from the in-memory
+     * {@link PesticideSearchIndex} when it is ready, and from the database otherwise,
+     * reading deep pages by cursor. See {@link Keyset}. The search index reads any page
+     * in the same short time, so its pages never need a cursor.
+     *
+     * @param cursor Cursor of the page from the previous page, empty to read by offset
+     */
+    public CompletionStage<KeysetPage<PesticideRegistration>> page(int page, int pageSize, String sortBy, String order,
+                                                                   String filter, String cursor) {
+        Optional<PagedList<PesticideRegistration>> indexed = searchIndex.page(page, pageSize, sortBy, order, filter);
+        if (indexed.isPresent()) {
+            PagedList<PesticideRegistration> list = indexed.get();
+            return completedFuture(new KeysetPage<>(list.getList(), page, pageSize, list.getTotalCount(), list.hasNext(), null, null));
+        }
+        return metrics.supplyAsync("PesticideRepository.page", () -> Keyset.page(filtered(filter), SORT_KEYS, counts, String.valueOf(filter), page, pageSize, sortBy, order, cursor),
+                bulkhead);
+    }
+
+    private Query<PesticideRegistration> filtered(String filter) {
+        Query<PesticideRegistration> query = DB.find(PesticideRegistration.class)
+            .setTimeout(bulkhead.getQueryTimeoutSeconds());
+        if (filter != null && !filter.isEmpty()) {
+            String pattern = TrigramIndexes.containsPattern(filter);
+            query = query.where()
+                .or()
+                    .ilike("registrationNumber", pattern)
+                    .ilike("pesticideName", pattern)
+                    .ilike("cropName", pattern)
+                .endOr()
+                .query();
+        }
+        return query;
     }
 
     public CompletionStage<Long> insert(PesticideRegistration pesticide) {
-        return supplyAsync(() -> {
+        return metrics.supplyAsync("PesticideRepository.insert", () -> {
             pesticide.save();
+            changed();
             return pesticide.getId();
-        }, executionContext);
+        }, bulkhead);
     }
 
     public CompletionStage<Void> update(PesticideRegistration pesticide) {
-        return supplyAsync(() -> {
+        return metrics.supplyAsync("PesticideRepository.update", () -> {
             pesticide.update();
+            changed();
             return null;
-        }, executionContext);
+        }, bulkhead);
     }
 
     public CompletionStage<Void> delete(Long id) {
-        return supplyAsync(() -> {
+        return metrics.supplyAsync("PesticideRepository.delete", () -> {
             DB.find(PesticideRegistration.class).setId(id).delete();
+            changed();
             return null;
-        }, executionContext);
+        }, bulkhead);
     }
 
     public CompletionStage<Void> insertAll(List<PesticideRegistration> pesticides) {
-        return supplyAsync(() -> {
-            DB.saveAll(pesticides);
+        return metrics.supplyAsync("PesticideRepository.insertAll", () -> {
+            Transaction txn = DB.beginTransaction();
+            try (PesticideBulkLoader loader = PesticideBulkLoader.open(txn.connection(), TABLE)) {
+                loader.write(pesticides);
+                loader.finish();
+                txn.commit();
+                changed();
+            } catch (SQLException e) {
+                throw new PersistenceException("Failed to load pesticide registrations", e);
+            } finally {
+                txn.end();
+            }
             return null;
-        }, executionContext);
+        }, bulkhead);
+    }
+
+    /**
+     * Insert the rows produced by a source while the source is still being read.
+     * Rows are flushed to the database every {@code batchSize} rows inside a single
+     * transaction, so memory use is bounded by the batch size instead of the file size.
+     * The rows are written with {@link PesticideBulkLoader} rather than Ebean persistence.
+     *
+     * @param source    Source pushing the parsed rows
+     * @param batchSize Number of rows buffered before they are written
+     * @return Number of inserted rows
+     */
+    public CompletionStage<Integer> insertStreaming(PesticideRowSource source, int batchSize) {
+        return insertStreaming(source, batchSize, count -> {}, bulkhead);
+    }
+
+    /**
+     * Insert the rows produced by a source on the given executor, e.g. a dedicated
+     * import worker, so that a long import does not occupy the database dispatcher.
+     *
+     * @param source         Source pushing the parsed rows
+     * @param batchSize      Number of rows buffered before they are written
+     * @param onBatchWritten Called with the size of every written batch
+     * @param executor       Executor running the import
+     * @return Number of inserted rows
+     */
+    public CompletionStage<Integer> insertStreaming(PesticideRowSource source, int batchSize,
+                                                    IntConsumer onBatchWritten, Executor executor) {
+        return metrics.supplyAsync("PesticideRepository.insertStreaming", () -> {
+            Transaction txn = DB.beginTransaction();
+            try {
+                int inserted = load(txn.connection(), TABLE, source, batchSize, onBatchWritten);
+                txn.commit();
+                changed();
+                return inserted;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (SQLException e) {
+                throw new PersistenceException("Failed to load pesticide registrations", e);
+            } finally {
+                txn.end();
+            }
+        }, executor);
+    }
+
+    /**
+     * Load the rows produced by a source as a new dataset version and make it the
+     * active dataset. The rows are loaded and indexed in a staging table while readers
+     * keep using the active table. The staging table then replaces the active table by
+     * renaming both in one transaction, so readers see either the old or the new
+     * dataset but never an empty or partial one. The previous table is kept until
+     * {@link #dropRetiredDatasets(Executor)} is called.
+     *
+     * @param source         Source pushing the parsed rows
+     * @param batchSize      Number of rows buffered before they are written
+     * @param onBatchWritten Called with the size of every written batch
+     * @param executor       Executor running the import
+     * @return Number of rows in the new dataset
+     */
+    public CompletionStage<Integer> replaceStreaming(PesticideRowSource source, int batchSize,
+                                                     IntConsumer onBatchWritten, Executor executor) {
+        return metrics.supplyAsync("PesticideRepository.replaceStreaming", () -> {
+            long version = createDataset(PesticideTables::staging);
+            try {
+                return loadDataset(version, source, batchSize, onBatchWritten);
+            } catch (RuntimeException e) {
+                try {
+                    markDatasetFailed(version);
+                } catch (RuntimeException markFailure) {
+                    e.addSuppressed(markFailure);
+                }
+                throw e;
+            }
+        }, executor);
+    }
+
+    /**
+     * Compare the rows produced by a source with the active dataset and apply only the
+     * differences. The rows are loaded into a separate table first; rows are then
+     * matched by their row key, and a row is only rewritten when its content hash
+     * differs. Active rows missing from the source are deleted. All changes are applied
+     * in one transaction, so readers see either the old or the new dataset.
+     *
+     * @param source         Source pushing the parsed rows
+     * @param batchSize      Number of rows buffered before they are written
+     * @param onBatchWritten Called with the size of every loaded batch
+     * @param executor       Executor running the import
+     * @return The applied changes
+     */
+    public CompletionStage<PesticideDiff> applyIncremental(PesticideRowSource source, int batchSize,
+                                                           IntConsumer onBatchWritten, Executor executor) {
+        return metrics.supplyAsync("PesticideRepository.applyIncremental", () -> {
+            long version = createDataset(PesticideTables::incoming);
+            try {
+                return diffDataset(version, source, batchSize, onBatchWritten);
+            } catch (RuntimeException e) {
+                try {
+                    markDatasetFailed(version);
+                } catch (RuntimeException markFailure) {
+                    e.addSuppressed(markFailure);
+                }
+                throw e;
+            }
+        }, executor);
+    }
+
+    /**
+     * Drop the tables of replaced and failed dataset versions. Dropping a table costs
+     * the same regardless of its size, unlike deleting its rows.
+     *
+     * @return Number of dropped tables
+     */
+    public CompletionStage<Integer> dropRetiredDatasets(Executor executor) {
+        return metrics.supplyAsync("PesticideRepository.dropRetiredDatasets", () -> {
+            Transaction txn = DB.beginTransaction();
+            try {
+                Connection connection = txn.connection();
+                Map<Long, String> tables = new LinkedHashMap<>();
+                try (PreparedStatement select = connection.prepareStatement(
+                        "select id, table_name from pesticide_dataset where status in (?, ?) and table_name is not null")) {
+                    select.setString(1, DATASET_RETIRED);
+                    select.setString(2, DATASET_FAILED);
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            tables.put(rs.getLong(1), rs.getString(2));
+                        }
+                    }
+                }
+                for (Map.Entry<Long, String> table : tables.entrySet()) {
+                    execute(connection, "drop table if exists " + table.getValue());
+                    update(connection, "update pesticide_dataset set status = ?, table_name = null, updated_at = ? where id = ?",
+                            DATASET_DROPPED, now(), table.getKey());
+                }
+                txn.commit();
+                return tables.size();
+            } catch (SQLException e) {
+                throw new PersistenceException("Failed to drop retired pesticide datasets", e);
+            } finally {
+                txn.end();
+            }
+        }, executor);
+    }
+
+    /**
+     * Register a new dataset version in its own transaction, so the version stays
+     * recorded even if loading it fails.
+     *
+     * @param tableName Name of the table the version is loaded into
+     */
+    private long createDataset(LongFunction<String> tableName) {
+        Transaction txn = DB.beginTransaction();
+        try (PreparedStatement insert = txn.connection().prepareStatement(
+                "insert into pesticide_dataset (created_at, updated_at, status) values (?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            Timestamp now = now();
+            insert.setTimestamp(1, now);
+            insert.setTimestamp(2, now);
+            insert.setString(3, DATASET_LOADING);
+            insert.executeUpdate();
+            long version;
+            try (ResultSet keys = insert.getGeneratedKeys()) {
+                keys.next();
+                version = keys.getLong(1);
+            }
+            update(txn.connection(), "update pesticide_dataset set table_name = ? where id = ?",
+                    tableName.apply(version), version);
+            txn.commit();
+            return version;
+        } catch (SQLException e) {
+            throw new PersistenceException("Failed to create pesticide dataset", e);
+        } finally {
+            txn.end();
+        }
+    }
+
+    /**
+     * Create, fill and index the staging table of a dataset version and swap it with
+     * the active table, all in one transaction.
+     */
+    private int loadDataset(long version, PesticideRowSource source, int batchSize, IntConsumer onBatchWritten) {
+        String staging = PesticideTables.staging(version);
+        String retired = PesticideTables.retired(version);
+        Transaction txn = DB.beginTransaction();
+        try {
+            Connection connection = txn.connection();
+            execute(connection, PesticideTables.createTable(staging));
+            int inserted = load(connection, staging, source, batchSize, onBatchWritten);
+            for (String index : PesticideTables.createIndexes(staging)) {
+                execute(connection, index);
+            }
+            if (TrigramIndexes.isSupported(connection)) {
+                for (String index : TrigramIndexes.createIndexes(staging)) {
+                    execute(connection, index);
+                }
+            }
+
+            execute(connection, "alter table " + TABLE + " rename to " + retired);
+            execute(connection, "alter table " + staging + " rename to " + TABLE);
+
+            activateDataset(connection, version, inserted, retired);
+
+            txn.commit();
+            changed();
+            return inserted;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (SQLException e) {
+            throw new PersistenceException("Failed to load pesticide dataset " + version, e);
+        } finally {
+            txn.end();
+        }
+    }
+
+    /**
+     * Load the rows of an incremental import, apply the differences to the active
+     * table and drop the loaded rows again, all in one transaction.
+     */
+    private PesticideDiff diffDataset(long version, PesticideRowSource source, int batchSize, IntConsumer onBatchWritten) {
+        String incoming = PesticideTables.incoming(version);
+        String dataColumns = String.join(", ", PesticideTables.DATA_COLUMNS);
+        String incomingColumns = PesticideTables.DATA_COLUMNS.stream()
+                .map(column -> "s." + column)
+                .collect(Collectors.joining(", "));
+        Transaction txn = DB.beginTransaction();
+        try {
+            Connection connection = txn.connection();
+            execute(connection, PesticideTables.createTable(incoming));
+            int loaded = load(connection, incoming, source, batchSize, onBatchWritten);
+            for (String index : PesticideTables.createIndexes(incoming)) {
+                execute(connection, index);
+            }
+
+            int deleted = update(connection, "delete from " + TABLE + " t"
+                    + " where not exists (select 1 from " + incoming + " s where s.row_key = t.row_key)");
+            int updated = update(connection, "update " + TABLE + " t"
+                    + " set updated_at = ?, (" + dataColumns + ", content_hash) ="
+                    + " (select " + incomingColumns + ", s.content_hash from " + incoming + " s where s.row_key = t.row_key)"
+                    + " where exists (select 1 from " + incoming + " s where s.row_key = t.row_key and s.content_hash <> t.content_hash)",
+                    now());
+            int inserted = update(connection, "insert into " + TABLE
+                    + " (created_at, updated_at, " + dataColumns + ", row_key, content_hash)"
+                    + " select s.created_at, s.updated_at, " + incomingColumns + ", s.row_key, s.content_hash from " + incoming + " s"
+                    + " where not exists (select 1 from " + TABLE + " t where t.row_key = s.row_key)");
+            execute(connection, "drop table " + incoming);
+
+            activateDataset(connection, version, count(connection, TABLE), null);
+
+            txn.commit();
+            changed();
+            return new PesticideDiff(loaded, inserted, updated, deleted);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (SQLException e) {
+            throw new PersistenceException("Failed to apply pesticide dataset " + version, e);
+        } finally {
+            txn.end();
+        }
+    }
+
+    /**
+     * Record a dataset version as active and the previously active version as retired.
+     *
+     * @param previousTable Name the table of the previous version now has, or null if
+     *                      no table is left over
+     */
+    private static void activateDataset(Connection connection, long version, long rowCount, String previousTable) throws SQLException {
+        Timestamp now = now();
+        int previous = update(connection, "update pesticide_dataset set status = ?, table_name = ?, updated_at = ? where status = ?",
+                DATASET_RETIRED, previousTable, now, DATASET_ACTIVE);
+        if (previous == 0 && previousTable != null) {
+            // The table created by the evolutions has no dataset entry yet
+            update(connection, "insert into pesticide_dataset (created_at, updated_at, status, table_name) values (?, ?, ?, ?)",
+                    now, now, DATASET_RETIRED, previousTable);
+        }
+        update(connection, "update pesticide_dataset set status = ?, table_name = ?, row_count = ?, activated_at = ?, updated_at = ? where id = ?",
+                DATASET_ACTIVE, TABLE, rowCount, now, now, version);
+    }
+
+    private static long count(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select count(*) from " + table)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private void markDatasetFailed(long version) {
+        Transaction txn = DB.beginTransaction();
+        try {
+            update(txn.connection(), "update pesticide_dataset set status = ?, updated_at = ? where id = ?",
+                    DATASET_FAILED, now(), version);
+            txn.commit();
+        } catch (SQLException e) {
+            throw new PersistenceException("Failed to mark pesticide dataset " + version + " as failed", e);
+        } finally {
+            txn.end();
+        }
+    }
+
+    /**
+     * Drop everything derived from the registrations on every node after they have changed
+     */
+    private void changed() {
+        changes.changed(PesticideRegistration.class);
+    }
+
+    private static int update(Connection connection, String sql, Object... parameters) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            return statement.executeUpdate();
+        }
+    }
+
+    private static Timestamp now() {
+        return Timestamp.valueOf(LocalDateTime.now());
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    /**
+     * Stream the rows of a source into a table, flushing every {@code batchSize} rows.
+     *
+     * @return Number of written rows
+     */
+    private int load(Connection connection, String table, PesticideRowSource source, int batchSize,
+                     IntConsumer onBatchWritten) throws IOException, SQLException {
+        List<PesticideRegistration> batch = new ArrayList<>(batchSize);
+        try (PesticideBulkLoader loader = PesticideBulkLoader.open(connection, table)) {
+            source.forEachRow(pesticide -> {
+                batch.add(pesticide);
+                if (batch.size() >= batchSize) {
+                    onBatchWritten.accept(flush(batch, loader));
+                }
+            });
+            onBatchWritten.accept(flush(batch, loader));
+            return (int) loader.finish();
+        }
+    }
+
+    /**
+     * Write the buffered rows and release them for garbage collection.
+     */
+    private int flush(List<PesticideRegistration> batch, PesticideBulkLoader loader) {
+        try {
+            loader.write(batch);
+        } catch (SQLException e) {
+            throw new PersistenceException("Failed to load pesticide registrations", e);
+        }
+        int size = batch.size();
+        batch.clear();
+        return size;
     }
 
+    /**
+     * Remove every registration of the active dataset. The table is truncated rather
+     * than deleted row by row, which takes the same short time for any number of rows.
+     */
     public CompletionStage<Void> deleteAll() {
-        return supplyAsync(() -> {
-            DB.find(PesticideRegistration.class).delete();
+        return metrics.supplyAsync("PesticideRepository.deleteAll", () -> {
+            DB.sqlUpdate("truncate table " + TABLE).execute();
+            changed();
             return null;
-        }, executionContext);
+        }, bulkhead);
     }
 }
\ No newline at end of file
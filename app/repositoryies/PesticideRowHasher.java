@@ -0,0 +1,104 @@
+package repositoryies;
+
+import models.PesticideRegistration;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Computes the row key and content hash stored with every pesticide registration,
+ * which let an incremental import find the rows that were added, changed or removed.
+ *
+ * The CSV files have no unique key, so the row key is derived from the columns that
+ * identify an application of a pesticide, plus the number of earlier rows with the
+ * same columns, which keeps keys unique when the file repeats a combination. The
+ * content hash covers all 25 columns. Row keys depend on the order of the rows, so a
+ * hasher must see the rows of an import in file order and must not be shared between
+ * imports. Rows appended to a table that already holds rows continue the numbers of
+ * its keys, see {@link #countExisting}.
+ */
+class PesticideRowHasher {
+
+    /**
+     * Columns identifying a row, i.e. which pesticide is applied to which crop against what
+     */
+    private static final List<Function<PesticideRegistration, String>> KEY_GETTERS = List.of(
+        PesticideRegistration::getRegistrationNumber,
+        PesticideRegistration::getCropName,
+        PesticideRegistration::getApplicationLocation,
+        PesticideRegistration::getTargetPestDisease,
+        PesticideRegistration::getPurpose
+    );
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final MessageDigest digest;
+    private final ByteBuffer lengthPrefix = ByteBuffer.allocate(Integer.BYTES);
+
+    /**
+     * Number of rows seen so far per key, indexed by the first 8 bytes of the key digest
+     * to keep the map small for large files
+     */
+    private final Map<Long, Integer> occurrences = new HashMap<>();
+
+    PesticideRowHasher() {
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Count a key already stored in the table the rows are written to, so that a row with
+     * the same key columns gets the next number instead of a key that is taken
+     */
+    void countExisting(String rowKey) {
+        int separator = rowKey.lastIndexOf(':');
+        if (separator < 16) {
+            return;
+        }
+        long prefix = Long.parseUnsignedLong(rowKey.substring(0, 16), 16);
+        int occurrence = Integer.parseInt(rowKey.substring(separator + 1));
+        occurrences.merge(prefix, occurrence + 1, Math::max);
+    }
+
+    /**
+     * Key of the row. Each call counts as one occurrence of the row's key columns.
+     */
+    String rowKey(PesticideRegistration pesticide) {
+        byte[] hash = hash(KEY_GETTERS, pesticide);
+        int occurrence = occurrences.merge(ByteBuffer.wrap(hash).getLong(), 1, Integer::sum) - 1;
+        return HEX.formatHex(hash, 0, 16) + ":" + occurrence;
+    }
+
+    /**
+     * Hash over all columns of the row
+     */
+    String contentHash(PesticideRegistration pesticide) {
+        return HEX.formatHex(hash(PesticideTables.DATA_GETTERS, pesticide));
+    }
+
+    private byte[] hash(List<Function<PesticideRegistration, String>> getters, PesticideRegistration pesticide) {
+        digest.reset();
+        for (Function<PesticideRegistration, String> getter : getters) {
+            String value = getter.apply(pesticide);
+            // Length prefixes keep ("ab", "c") apart from ("a", "bc"), and null apart from ""
+            if (value == null) {
+                digest.update(lengthPrefix.clear().putInt(-1).array());
+            } else {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                digest.update(lengthPrefix.clear().putInt(bytes.length).array());
+                digest.update(bytes);
+            }
+        }
+        return digest.digest();
+    }
+}
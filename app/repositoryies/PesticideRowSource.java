@@ -0,0 +1,19 @@
+package repositoryies;
+
+import models.PesticideRegistration;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * A source of pesticide registrations that pushes rows to a consumer as they are read,
+ * e.g. while a ZIP archive is still being decoded.
+ */
+@FunctionalInterface
+public interface PesticideRowSource {
+
+    /**
+     * Read the source and pass every row to the sink.
+     */
+    void forEachRow(Consumer<PesticideRegistration> sink) throws IOException;
+}
@@ -0,0 +1,517 @@
+package repositoryies;
+
+import com.typesafe.config.Config;
+import io.ebean.DB;
+import io.ebean.PagedList;
+import io.ebean.Transaction;
+import jakarta.persistence.PersistenceException;
+import models.PesticideRegistration;
+import play.Logger;
+import utils.InMemoryPagedList;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.concurrent.CompletableFuture.runAsync;
+
+/**
+ * Read-optimized in-memory copy of the active pesticide registrations, answering the
+ * filter, sort and page queries of the admin list without touching the database.
+ *
+ * The filter matches registration number, pesticide name and crop name like the
+ * database query does, i.e. case-insensitive substring matching. Japanese text has no
+ * word boundaries, so the index is a character n-gram inverted index: every single
+ * character and every pair of adjacent characters maps to the rows containing it. A
+ * query intersects the lists of its character pairs and checks the few remaining
+ * candidates. Rows are kept pre-sorted for every sortable column, in the order the
+ * database sorts the values by the collation of the column rather than the order of
+ * Java strings, so that a list reads the same whether it is answered from the index or
+ * from the database.
+ *
+ * The index is built on first use and rebuilt whenever the data changes on any node,
+ * as reported through the {@link InvalidationBus}; until it is ready, queries are left
+ * to the database.
+ */
+@Singleton
+public class PesticideSearchIndex {
+
+    private static final Logger.ALogger logger = Logger.of(PesticideSearchIndex.class);
+
+    /**
+     * Time after a failed build before a list query starts the next one
+     */
+    private static final long RETRY_DELAY_MILLIS = 30_000;
+
+    /**
+     * Columns matched by the filter: registration number, pesticide name and crop name
+     */
+    private static final int[] SEARCHED_COLUMNS = {0, 3, 5};
+
+    /**
+     * Properties the list can be sorted by, with their index in {@link PesticideTables#DATA_COLUMNS}
+     */
+    private static final Map<String, Integer> SORTABLE_COLUMNS = Map.of(
+        "registrationNumber", 0,
+        "usage", 1,
+        "pesticideType", 2,
+        "pesticideName", 3,
+        "cropName", 5,
+        "sprayVolume", 10,
+        "usageTime", 11,
+        "mainAgentUsageCount", 12,
+        "usageMethod", 13
+    );
+
+    private final DatabaseExecutionContext executionContext;
+    private final boolean enabled;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * Incremented by every change of the data, so that a build which read the table
+     * before the change is not published. Guarded by this.
+     */
+    private long generation;
+    private final AtomicBoolean building = new AtomicBoolean();
+
+    /**
+     * Time before which list queries do not start a build again after a failed one
+     */
+    private volatile long retryAfterMillis;
+
+    @Inject
+    public PesticideSearchIndex(DatabaseExecutionContext executionContext, Config config, InvalidationBus bus) {
+        this.executionContext = executionContext;
+        this.enabled = config.getBoolean("pesticide.search.index.enabled");
+        bus.subscribe((type, id) -> {
+            if (type == null || type == PesticideRegistration.class) {
+                invalidate();
+            }
+        });
+    }
+
+    /**
+     * Answer a list query from the index.
+     *
+     * @return The page, or empty if the index is not ready yet or cannot sort by the property
+     */
+    public Optional<PagedList<PesticideRegistration>> page(int page, int pageSize, String sortBy, String order, String filter) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Snapshot current = snapshot;
+        if (current == null) {
+            if (System.currentTimeMillis() >= retryAfterMillis) {
+                build();
+            }
+            return Optional.empty();
+        }
+        String property = sortBy == null || sortBy.isEmpty() ? "registrationNumber" : sortBy;
+        if (!SORTABLE_COLUMNS.containsKey(property)) {
+            return Optional.empty();
+        }
+        return Optional.of(current.page(page, pageSize, property, "desc".equals(order), filter));
+    }
+
+    /**
+     * Discard the index after the data has changed. Queries go to the database until
+     * the index has been rebuilt in the background.
+     */
+    public void invalidate() {
+        synchronized (this) {
+            generation++;
+            snapshot = null;
+        }
+        if (enabled) {
+            build();
+        }
+    }
+
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    /**
+     * Build the index in the background unless a build is already running
+     */
+    private void build() {
+        if (!building.compareAndSet(false, true)) {
+            return;
+        }
+        runAsync(() -> {
+            long readGeneration;
+            synchronized (this) {
+                readGeneration = generation;
+            }
+            try {
+                long started = System.currentTimeMillis();
+                Snapshot built = load();
+                while (!publish(readGeneration, built)) {
+                    synchronized (this) {
+                        readGeneration = generation;
+                    }
+                    built = load();
+                }
+                logger.info("Pesticide search index built with " + built.size() + " rows in "
+                        + (System.currentTimeMillis() - started) + " ms");
+            } catch (RuntimeException e) {
+                // Not retried at once, so an unavailable database is not read in a loop
+                retryAfterMillis = System.currentTimeMillis() + RETRY_DELAY_MILLIS;
+                logger.error("Failed to build the pesticide search index", e);
+            } finally {
+                building.set(false);
+            }
+            // An invalidation while building could not start a build of its own
+            if (enabled && changedSince(readGeneration)) {
+                build();
+            }
+        }, executionContext);
+    }
+
+    private synchronized boolean changedSince(long readGeneration) {
+        return generation != readGeneration;
+    }
+
+    /**
+     * Make a built index visible unless the data has changed since it was read
+     */
+    private synchronized boolean publish(long buildGeneration, Snapshot built) {
+        if (buildGeneration != generation) {
+            return false;
+        }
+        snapshot = built;
+        return true;
+    }
+
+    private Snapshot load() {
+        Builder builder = new Builder();
+        Transaction txn = DB.beginTransaction();
+        try (PreparedStatement select = txn.connection().prepareStatement(
+                "select id, " + String.join(", ", PesticideTables.DATA_COLUMNS) + " from " + PesticideTables.ACTIVE)) {
+            select.setFetchSize(1000);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    String[] values = new String[PesticideTables.DATA_COLUMNS.size()];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = rs.getString(i + 2);
+                    }
+                    builder.add(rs.getLong(1), values);
+                }
+            }
+            for (int column : SORTABLE_COLUMNS.values()) {
+                builder.sortOrder(column, valueOrder(txn.connection(), PesticideTables.DATA_COLUMNS.get(column)));
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException("Failed to read pesticide registrations", e);
+        } finally {
+            txn.end();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Position of every value of a column in the order of the database
+     */
+    private static Map<String, Integer> valueOrder(Connection connection, String column) throws SQLException {
+        Map<String, Integer> positions = new HashMap<>();
+        try (PreparedStatement select = connection.prepareStatement("select distinct " + column + " from "
+                + PesticideTables.ACTIVE + " where " + column + " is not null order by " + column)) {
+            select.setFetchSize(1000);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    positions.put(rs.getString(1), positions.size());
+                }
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Key of a single character in the postings
+     */
+    private static long unigram(char c) {
+        return c;
+    }
+
+    /**
+     * Key of a pair of adjacent characters in the postings
+     */
+    private static long bigram(char first, char second) {
+        return (1L << 32) | ((long) first << 16) | second;
+    }
+
+    /**
+     * Lower cased text of the searched columns, separated by a character that cannot be
+     * part of a filter
+     */
+    private static String searchText(String[] values) {
+        StringBuilder text = new StringBuilder();
+        for (int column : SEARCHED_COLUMNS) {
+            if (text.length() > 0) {
+                text.append('\u0000');
+            }
+            if (values[column] != null) {
+                text.append(values[column].toLowerCase(Locale.ROOT));
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Immutable index over one state of the table
+     */
+    private static final class Snapshot {
+
+        private final long[] ids;
+        private final String[][] rows;
+        private final String[] searchTexts;
+        private final Map<Long, int[]> postings;
+
+        /**
+         * Per sortable property the row numbers in ascending order, and the position of
+         * every row in that order
+         */
+        private final Map<String, int[]> orders;
+        private final Map<String, int[]> ranks;
+
+        Snapshot(long[] ids, String[][] rows, String[] searchTexts, Map<Long, int[]> postings,
+                 Map<String, int[]> orders, Map<String, int[]> ranks) {
+            this.ids = ids;
+            this.rows = rows;
+            this.searchTexts = searchTexts;
+            this.postings = postings;
+            this.orders = orders;
+            this.ranks = ranks;
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        PagedList<PesticideRegistration> page(int page, int pageSize, String property, boolean descending, String filter) {
+            int[] order;
+            if (filter == null || filter.isEmpty()) {
+                order = orders.get(property);
+            } else {
+                order = sortByRank(matches(filter.toLowerCase(Locale.ROOT)), ranks.get(property));
+            }
+
+            int first = Math.max(page, 0) * pageSize;
+            int last = Math.min(first + pageSize, order.length);
+            List<PesticideRegistration> list = new ArrayList<>(Math.max(last - first, 0));
+            for (int i = first; i < last; i++) {
+                int row = descending ? order[order.length - 1 - i] : order[i];
+                list.add(toBean(row));
+            }
+            return new InMemoryPagedList<>(list, Math.max(page, 0), pageSize, order.length);
+        }
+
+        /**
+         * Rows whose searched columns contain the lower cased query
+         */
+        private int[] matches(String query) {
+            int[] candidates;
+            if (query.length() == 1) {
+                return postings.getOrDefault(unigram(query.charAt(0)), new int[0]);
+            }
+
+            List<int[]> lists = new ArrayList<>(query.length() - 1);
+            for (int i = 0; i < query.length() - 1; i++) {
+                int[] posting = postings.get(bigram(query.charAt(i), query.charAt(i + 1)));
+                if (posting == null) {
+                    return new int[0];
+                }
+                lists.add(posting);
+            }
+            lists.sort(Comparator.comparingInt(posting -> posting.length));
+            candidates = lists.get(0);
+            for (int i = 1; i < lists.size() && candidates.length > 0; i++) {
+                candidates = intersect(candidates, lists.get(i));
+            }
+
+            // Containing every pair of characters does not mean containing the query
+            if (query.length() == 2) {
+                return candidates;
+            }
+            int[] matches = new int[candidates.length];
+            int count = 0;
+            for (int row : candidates) {
+                if (searchTexts[row].contains(query)) {
+                    matches[count++] = row;
+                }
+            }
+            return Arrays.copyOf(matches, count);
+        }
+
+        private static int[] intersect(int[] a, int[] b) {
+            int[] result = new int[Math.min(a.length, b.length)];
+            int i = 0;
+            int j = 0;
+            int count = 0;
+            while (i < a.length && j < b.length) {
+                if (a[i] < b[j]) {
+                    i++;
+                } else if (a[i] > b[j]) {
+                    j++;
+                } else {
+                    result[count++] = a[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+
+        /**
+         * Sort row numbers by their position in the sort order of a property
+         */
+        private static int[] sortByRank(int[] rows, int[] rank) {
+            long[] keys = new long[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                keys[i] = ((long) rank[rows[i]] << 32) | rows[i];
+            }
+            Arrays.sort(keys);
+            int[] sorted = new int[rows.length];
+            for (int i = 0; i < keys.length; i++) {
+                sorted[i] = (int) keys[i];
+            }
+            return sorted;
+        }
+
+        private PesticideRegistration toBean(int row) {
+            PesticideRegistration pesticide = new PesticideRegistration();
+            pesticide.setId(ids[row]);
+            String[] values = rows[row];
+            for (int i = 0; i < values.length; i++) {
+                PesticideTables.DATA_SETTERS.get(i).accept(pesticide, values[i]);
+            }
+            return pesticide;
+        }
+    }
+
+    /**
+     * Collects the rows of the table and creates the postings and sort orders
+     */
+    private static final class Builder {
+
+        private final List<Long> ids = new ArrayList<>();
+        private final List<String[]> rows = new ArrayList<>();
+        private final List<String> searchTexts = new ArrayList<>();
+        private final Map<Long, IntList> postings = new HashMap<>();
+
+        /**
+         * Per sortable column the position of every value in the order of the database
+         */
+        private final Map<Integer, Map<String, Integer>> valueOrders = new HashMap<>();
+
+        /**
+         * Most values repeat across many rows, so equal values share one String
+         */
+        private final Map<String, String> values = new HashMap<>();
+
+        void add(long id, String[] row) {
+            int rowNumber = rows.size();
+            for (int i = 0; i < row.length; i++) {
+                if (row[i] != null) {
+                    row[i] = values.computeIfAbsent(row[i], value -> value);
+                }
+            }
+            String text = searchText(row);
+            ids.add(id);
+            rows.add(row);
+            searchTexts.add(text);
+
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '\u0000') {
+                    continue;
+                }
+                postings.computeIfAbsent(unigram(c), key -> new IntList()).add(rowNumber);
+                if (i + 1 < text.length() && text.charAt(i + 1) != '\u0000') {
+                    postings.computeIfAbsent(bigram(c, text.charAt(i + 1)), key -> new IntList()).add(rowNumber);
+                }
+            }
+        }
+
+        void sortOrder(int column, Map<String, Integer> positions) {
+            valueOrders.put(column, positions);
+        }
+
+        Snapshot build() {
+            int size = rows.size();
+            long[] idArray = new long[size];
+            for (int i = 0; i < size; i++) {
+                idArray[i] = ids.get(i);
+            }
+            String[][] rowArray = rows.toArray(new String[0][]);
+
+            Map<Long, int[]> postingArrays = new HashMap<>(postings.size() * 2);
+            postings.forEach((key, list) -> postingArrays.put(key, list.toArray()));
+
+            Map<String, int[]> orders = new HashMap<>();
+            Map<String, int[]> ranks = new HashMap<>();
+            SORTABLE_COLUMNS.forEach((property, column) -> {
+                // Ascending with nulls last like the database, ties broken by id. Values
+                // written after the order was read come before the nulls, until the
+                // index is rebuilt for the change.
+                Map<String, Integer> positions = valueOrders.getOrDefault(column, Map.of());
+                Integer[] order = new Integer[size];
+                for (int i = 0; i < size; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, Comparator
+                        .comparingInt((Integer row) -> rowArray[row][column] == null
+                                ? Integer.MAX_VALUE
+                                : positions.getOrDefault(rowArray[row][column], Integer.MAX_VALUE - 1))
+                        .thenComparingLong(row -> idArray[row]));
+                int[] orderArray = new int[size];
+                int[] rankArray = new int[size];
+                for (int i = 0; i < size; i++) {
+                    orderArray[i] = order[i];
+                    rankArray[order[i]] = i;
+                }
+                orders.put(property, orderArray);
+                ranks.put(property, rankArray);
+            });
+
+            return new Snapshot(idArray, rowArray, searchTexts.toArray(new String[0]), postingArrays, orders, ranks);
+        }
+    }
+
+    /**
+     * Growable list of ascending row numbers that ignores repeated additions of the
+     * last row
+     */
+    private static final class IntList {
+
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
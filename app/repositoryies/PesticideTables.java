@@ -0,0 +1,167 @@
+package repositoryies;
+
+import models.PesticideRegistration;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Columns and DDL of the physical tables backing pesticide registration datasets. Every dataset
+ * version is loaded into its own table, which gets the same columns as the
+ * pesticide_registration table created by the evolutions. Constraint and index names
+ * carry the table name, because they have to stay unique after the table is renamed.
+ */
+final class PesticideTables {
+
+    /**
+     * Name of the table holding the active dataset, mapped by {@link models.PesticideRegistration}
+     */
+    static final String ACTIVE = "pesticide_registration";
+
+    /**
+     * Columns holding the values of the CSV file
+     */
+    static final List<String> DATA_COLUMNS = List.of(
+        "registration_number", "usage", "pesticide_type", "pesticide_name", "abbreviation",
+        "crop_name", "application_location", "target_pest_disease", "purpose", "dilution_amount",
+        "spray_volume", "usage_time", "main_agent_usage_count", "usage_method", "fumigation_time",
+        "fumigation_temperature", "applicable_soil", "applicable_zone_name", "applicable_pesticide_name",
+        "mixture_count", "active_ingredient_1_total_usage", "active_ingredient_2_total_usage",
+        "active_ingredient_3_total_usage", "active_ingredient_4_total_usage", "active_ingredient_5_total_usage"
+    );
+
+    /**
+     * How to read the value of each of the {@link #DATA_COLUMNS} from a bean
+     */
+    static final List<Function<PesticideRegistration, String>> DATA_GETTERS = List.of(
+        PesticideRegistration::getRegistrationNumber,
+        PesticideRegistration::getUsage,
+        PesticideRegistration::getPesticideType,
+        PesticideRegistration::getPesticideName,
+        PesticideRegistration::getAbbreviation,
+        PesticideRegistration::getCropName,
+        PesticideRegistration::getApplicationLocation,
+        PesticideRegistration::getTargetPestDisease,
+        PesticideRegistration::getPurpose,
+        PesticideRegistration::getDilutionAmount,
+        PesticideRegistration::getSprayVolume,
+        PesticideRegistration::getUsageTime,
+        PesticideRegistration::getMainAgentUsageCount,
+        PesticideRegistration::getUsageMethod,
+        PesticideRegistration::getFumigationTime,
+        PesticideRegistration::getFumigationTemperature,
+        PesticideRegistration::getApplicableSoil,
+        PesticideRegistration::getApplicableZoneName,
+        PesticideRegistration::getApplicablePesticideName,
+        PesticideRegistration::getMixtureCount,
+        PesticideRegistration::getActiveIngredient1TotalUsage,
+        PesticideRegistration::getActiveIngredient2TotalUsage,
+        PesticideRegistration::getActiveIngredient3TotalUsage,
+        PesticideRegistration::getActiveIngredient4TotalUsage,
+        PesticideRegistration::getActiveIngredient5TotalUsage
+    );
+
+    /**
+     * How to set the value of each of the {@link #DATA_COLUMNS} on a bean
+     */
+    static final List<BiConsumer<PesticideRegistration, String>> DATA_SETTERS = List.of(
+        PesticideRegistration::setRegistrationNumber,
+        PesticideRegistration::setUsage,
+        PesticideRegistration::setPesticideType,
+        PesticideRegistration::setPesticideName,
+        PesticideRegistration::setAbbreviation,
+        PesticideRegistration::setCropName,
+        PesticideRegistration::setApplicationLocation,
+        PesticideRegistration::setTargetPestDisease,
+        PesticideRegistration::setPurpose,
+        PesticideRegistration::setDilutionAmount,
+        PesticideRegistration::setSprayVolume,
+        PesticideRegistration::setUsageTime,
+        PesticideRegistration::setMainAgentUsageCount,
+        PesticideRegistration::setUsageMethod,
+        PesticideRegistration::setFumigationTime,
+        PesticideRegistration::setFumigationTemperature,
+        PesticideRegistration::setApplicableSoil,
+        PesticideRegistration::setApplicableZoneName,
+        PesticideRegistration::setApplicablePesticideName,
+        PesticideRegistration::setMixtureCount,
+        PesticideRegistration::setActiveIngredient1TotalUsage,
+        PesticideRegistration::setActiveIngredient2TotalUsage,
+        PesticideRegistration::setActiveIngredient3TotalUsage,
+        PesticideRegistration::setActiveIngredient4TotalUsage,
+        PesticideRegistration::setActiveIngredient5TotalUsage
+    );
+
+    private PesticideTables() {
+    }
+
+    /**
+     * Name of the table a new dataset version is loaded into
+     */
+    static String staging(long version) {
+        return ACTIVE + "_v" + version;
+    }
+
+    /**
+     * Name given to the previously active table when a dataset version is activated
+     */
+    static String retired(long version) {
+        return ACTIVE + "_r" + version;
+    }
+
+    /**
+     * Name of the table the rows of an incremental import are loaded into before
+     * they are compared with the active table
+     */
+    static String incoming(long version) {
+        return ACTIVE + "_i" + version;
+    }
+
+    static String createTable(String table) {
+        return "create table " + table + " (\n"
+                + "  id bigint generated by default as identity not null,\n"
+                + "  created_at timestamp,\n"
+                + "  updated_at timestamp,\n"
+                + "  registration_number varchar(255),\n"
+                + "  usage varchar(255),\n"
+                + "  pesticide_type varchar(255),\n"
+                + "  pesticide_name varchar(255),\n"
+                + "  abbreviation varchar(255),\n"
+                + "  crop_name varchar(255),\n"
+                + "  application_location varchar(255),\n"
+                + "  target_pest_disease varchar(255),\n"
+                + "  purpose varchar(255),\n"
+                + "  dilution_amount varchar(255),\n"
+                + "  spray_volume varchar(255),\n"
+                + "  usage_time varchar(255),\n"
+                + "  main_agent_usage_count varchar(255),\n"
+                + "  usage_method varchar(255),\n"
+                + "  fumigation_time varchar(255),\n"
+                + "  fumigation_temperature varchar(255),\n"
+                + "  applicable_soil varchar(255),\n"
+                + "  applicable_zone_name varchar(255),\n"
+                + "  applicable_pesticide_name varchar(255),\n"
+                + "  mixture_count varchar(255),\n"
+                + "  active_ingredient_1_total_usage varchar(255),\n"
+                + "  active_ingredient_2_total_usage varchar(255),\n"
+                + "  active_ingredient_3_total_usage varchar(255),\n"
+                + "  active_ingredient_4_total_usage varchar(255),\n"
+                + "  active_ingredient_5_total_usage varchar(255),\n"
+                + "  row_key varchar(64),\n"
+                + "  content_hash varchar(64),\n"
+                + "  constraint pk_" + table + " primary key (id)\n"
+                + ")";
+    }
+
+    /**
+     * Indexes built after the rows have been loaded, which is much cheaper than
+     * maintaining them row by row during the load
+     */
+    static List<String> createIndexes(String table) {
+        return List.of(
+            "create index ix_" + table + "_registration_number on " + table + " (registration_number)",
+            "create index ix_" + table + "_row_key on " + table + " (row_key)"
+        );
+    }
+}
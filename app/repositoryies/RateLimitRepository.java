@@ -0,0 +1,113 @@
+package repositoryies;
+
+import io.ebean.DB;
+import io.ebean.DuplicateKeyException;
+import io.ebean.SqlRow;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the rate limiter shared by all application nodes through the database.
+ * Attempts are counted per key in fixed windows; the count over the last window of time
+ * is estimated from the current window and the part of the previous one it still covers.
+ */
+@Singleton
+public class RateLimitRepository {
+
+    private final Bulkhead bulkhead;
+    private final DatabaseMetrics metrics;
+
+    /**
+     * Window before which the counters were last deleted by this node
+     */
+    private final AtomicLong deletedBefore = new AtomicLong();
+
+    @Inject
+    public RateLimitRepository(Bulkheads bulkheads, DatabaseMetrics metrics) {
+        this.bulkhead = bulkheads.auth();
+        this.metrics = metrics;
+    }
+
+    /**
+     * Count an attempt of a key, if it had fewer than {@code limit} attempts in the last
+     * window. Refused attempts are not counted, like in {@link utils.SlidingWindowLimiter}.
+     *
+     * @return Whether the attempt is allowed
+     */
+    public CompletionStage<Boolean> hit(String key, int limit, long windowMillis) {
+        return metrics.supplyAsync("RateLimitRepository.hit", () -> {
+            long now = System.currentTimeMillis();
+            long window = now / windowMillis;
+            deleteExpired(window);
+
+            SqlRow row = DB.sqlQuery("select hits from rate_limit_counter where counter_key = :key and window_start = :previous")
+                .setParameter("key", key)
+                .setParameter("previous", window - 1)
+                .findOne();
+            int previous = row == null ? 0 : row.getInteger("hits");
+            double coveredOfPrevious = 1 - (double) (now % windowMillis) / windowMillis;
+            // Attempts the current window may hold, so that the estimate stays within the limit
+            int maxCurrent = (int) Math.floor(limit - previous * coveredOfPrevious);
+            return maxCurrent > 0 && increment(key, window, maxCurrent);
+        }, bulkhead);
+    }
+
+    /**
+     * Forget the attempts of a key
+     */
+    public CompletionStage<Void> reset(String key) {
+        return metrics.supplyAsync("RateLimitRepository.reset", () -> {
+            DB.sqlUpdate("delete from rate_limit_counter where counter_key = :key")
+                .setParameter("key", key)
+                .execute();
+            return null;
+        }, bulkhead);
+    }
+
+    /**
+     * Count an attempt in the current window unless it already holds {@code maxCurrent},
+     * in a single statement, so that concurrent attempts of all nodes cannot exceed it
+     *
+     * @return Whether the attempt was counted
+     */
+    private static boolean increment(String key, long window, int maxCurrent) {
+        if (update(key, window, maxCurrent) > 0) {
+            return true;
+        }
+        try {
+            DB.sqlUpdate("insert into rate_limit_counter (counter_key, window_start, hits) values (:key, :window, 1)")
+                .setParameter("key", key)
+                .setParameter("window", window)
+                .execute();
+            return true;
+        } catch (DuplicateKeyException e) {
+            // Inserted by another request meanwhile, or already full
+            return update(key, window, maxCurrent) > 0;
+        }
+    }
+
+    private static int update(String key, long window, int maxCurrent) {
+        return DB.sqlUpdate("update rate_limit_counter set hits = hits + 1"
+                + " where counter_key = :key and window_start = :window and hits < :max")
+            .setParameter("key", key)
+            .setParameter("window", window)
+            .setParameter("max", maxCurrent)
+            .execute();
+    }
+
+    /**
+     * Delete the counters older than the previous window, once per window
+     */
+    private void deleteExpired(long window) {
+        long before = window - 1;
+        long last = deletedBefore.get();
+        if (last < before && deletedBefore.compareAndSet(last, before)) {
+            DB.sqlUpdate("delete from rate_limit_counter where window_start < :before")
+                .setParameter("before", before)
+                .execute();
+        }
+    }
+}
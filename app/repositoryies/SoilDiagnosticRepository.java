@@ -2,15 +2,16 @@ package repositoryies;
 
 import io.ebean.DB;
 import io.ebean.Model;
-import io.ebean.PagedList;
+import io.ebean.Query;
 import io.ebean.Transaction;
 import models.SoilDiagnostic;
 
 import javax.inject.Inject;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
 
-import static java.util.concurrent.CompletableFuture.supplyAsync;
 
 /**
  * A repository that executes database operations in a different
@@ -18,50 +19,79 @@ import static java.util.concurrent.CompletableFuture.supplyAsync;
  */
 public class SoilDiagnosticRepository {
 
-    private final DatabaseExecutionContext executionContext;
+    /**
+     * Properties the list can be sorted by with keyset pagination
+     */
+    private static final Map<String, Function<SoilDiagnostic, Object>> SORT_KEYS = Map.of(
+        "diagnosticDate", SoilDiagnostic::getDiagnosticDate,
+        "field.name", diagnostic -> diagnostic.getField() == null ? null : diagnostic.getField().getName(),
+        "phH2O", SoilDiagnostic::getPhH2O,
+        "ec", SoilDiagnostic::getEc,
+        "cec", SoilDiagnostic::getCec
+    );
+
+    /**
+     * Properties shown in the list, which are the only ones read for a list page
+     */
+    private static final String LIST_PROPERTIES = "diagnosticDate, phH2O, ec, cec";
+
+    private final Bulkhead bulkhead;
+    private final PageCountCache counts;
+    private final InvalidationBus changes;
+    private final IdAllocator ids;
+    private final DatabaseMetrics metrics;
 
     @Inject
-    public SoilDiagnosticRepository(DatabaseExecutionContext executionContext) {
-        this.executionContext = executionContext;
+    public SoilDiagnosticRepository(Bulkheads bulkheads, PageCountCache counts, InvalidationBus changes,
+                                    IdAllocator ids, DatabaseMetrics metrics) {
+        this.bulkhead = bulkheads.interactive();
+        this.counts = counts;
+        this.changes = changes;
+        this.ids = ids;
+        this.metrics = metrics;
     }
 
     /**
-     * Return a paged list of soil diagnostics for a specific user
+     * Return a page of soil diagnostics for a specific user, read by offset or, for deep pages,
+     * by cursor. See {@link Keyset}.
+     *
+     * @param cursor Cursor of the page from the previous page, empty to read by offset
      */
-    public CompletionStage<PagedList<SoilDiagnostic>> pageByUser(int page, int pageSize, String sortBy, String order, String filter, Long userId) {
-        return supplyAsync(() ->
-                DB.find(SoilDiagnostic.class)
-                    .fetch("user")
-                    .fetch("field")
+    public CompletionStage<KeysetPage<SoilDiagnostic>> pageByUser(int page, int pageSize, String sortBy, String order, String filter,
+                                                                  String cursor, Long userId) {
+        return metrics.supplyAsync("SoilDiagnosticRepository.pageByUser", () -> {
+            Query<SoilDiagnostic> query = DB.find(SoilDiagnostic.class)
+                    .select(LIST_PROPERTIES)
+                    .fetch("field", "name")
                     .where()
                     .eq("user.id", userId)
-                    .ilike("field.name", "%" + filter + "%")
-                    .orderBy(sortBy + " " + order)
-                    .setFirstRow(page * pageSize)
-                    .setMaxRows(pageSize)
-                    .findPagedList(), executionContext);
+                    .ilike("field.name", TrigramIndexes.containsPattern(filter))
+                    .query()
+                    .setTimeout(bulkhead.getQueryTimeoutSeconds());
+            return Keyset.page(query, SORT_KEYS, counts, userId + ":" + filter, page, pageSize, sortBy, order, cursor);
+        }, bulkhead);
     }
 
     public CompletionStage<Optional<SoilDiagnostic>> lookup(Long id) {
-        return supplyAsync(() -> DB.find(SoilDiagnostic.class).setId(id).findOneOrEmpty(), executionContext);
+        return metrics.supplyAsync("SoilDiagnosticRepository.lookup", () -> DB.find(SoilDiagnostic.class).setId(id).findOneOrEmpty(), bulkhead);
     }
 
     /**
      * Lookup a soil diagnostic by ID and ensure it belongs to the specified user
      */
     public CompletionStage<Optional<SoilDiagnostic>> lookupByUser(Long id, Long userId) {
-        return supplyAsync(() -> 
+        return metrics.supplyAsync("SoilDiagnosticRepository.lookupByUser", () -> 
                 DB.find(SoilDiagnostic.class)
                     .fetch("user")
                     .fetch("field")
                     .where()
                     .eq("id", id)
                     .eq("user.id", userId)
-                    .findOneOrEmpty(), executionContext);
+                    .findOneOrEmpty(), bulkhead);
     }
 
     public CompletionStage<Optional<Long>> update(Long id, SoilDiagnostic newSoilDiagnosticData) {
-        return supplyAsync(() -> {
+        return metrics.supplyAsync("SoilDiagnosticRepository.update", () -> {
             Transaction txn = DB.beginTransaction();
             Optional<Long> value = Optional.empty();
             try {
@@ -75,14 +105,14 @@ public class SoilDiagnosticRepository {
                 txn.end();
             }
             return value;
-        }, executionContext);
+        }, bulkhead).whenComplete((result, error) -> changes.changed(SoilDiagnostic.class));
     }
 
     /**
      * Update a soil diagnostic ensuring it belongs to the specified user
      */
     public CompletionStage<Optional<Long>> updateByUser(Long id, SoilDiagnostic newSoilDiagnosticData, Long userId) {
-        return supplyAsync(() -> {
+        return metrics.supplyAsync("SoilDiagnosticRepository.updateByUser", () -> {
             Transaction txn = DB.beginTransaction();
             Optional<Long> value = Optional.empty();
             try {
@@ -102,11 +132,11 @@ public class SoilDiagnosticRepository {
                 txn.end();
             }
             return value;
-        }, executionContext);
+        }, bulkhead).whenComplete((result, error) -> changes.changed(SoilDiagnostic.class));
     }
 
     public CompletionStage<Optional<Long>> delete(Long id) {
-        return supplyAsync(() -> {
+        return metrics.<Optional<Long>>supplyAsync("SoilDiagnosticRepository.delete", () -> {
             try {
                 Optional<SoilDiagnostic> soilDiagnosticOptional = DB.find(SoilDiagnostic.class).setId(id).findOneOrEmpty();
                 soilDiagnosticOptional.ifPresent(Model::delete);
@@ -114,14 +144,14 @@ public class SoilDiagnosticRepository {
             } catch (Exception e) {
                 return Optional.empty();
             }
-        }, executionContext);
+        }, bulkhead).whenComplete((result, error) -> changes.changed(SoilDiagnostic.class));
     }
 
     /**
      * Delete a soil diagnostic ensuring it belongs to the specified user
      */
     public CompletionStage<Boolean> deleteByUser(Long id, Long userId) {
-        return supplyAsync(() -> {
+        return metrics.supplyAsync("SoilDiagnosticRepository.deleteByUser", () -> {
             try {
                 Optional<SoilDiagnostic> soilDiagnosticOptional = DB.find(SoilDiagnostic.class)
                         .fetch("user")
@@ -135,14 +165,14 @@ public class SoilDiagnosticRepository {
             } catch (Exception e) {
                 return false;
             }
-        }, executionContext);
+        }, bulkhead).whenComplete((result, error) -> changes.changed(SoilDiagnostic.class));
     }
 
     public CompletionStage<Long> insert(SoilDiagnostic soilDiagnostic) {
-        return supplyAsync(() -> {
-             soilDiagnostic.setId(System.currentTimeMillis()); // not ideal, but it works
+        return metrics.supplyAsync("SoilDiagnosticRepository.insert", () -> {
+             soilDiagnostic.setId(ids.nextId());
              DB.insert(soilDiagnostic);
              return soilDiagnostic.getId();
-        }, executionContext);
+        }, bulkhead).whenComplete((result, error) -> changes.changed(SoilDiagnostic.class));
     }
 }
\ No newline at end of file
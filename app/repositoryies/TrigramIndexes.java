@@ -0,0 +1,163 @@
+package repositoryies;
+
+import io.ebean.DB;
+import org.postgresql.PGConnection;
+import play.Logger;
+import play.api.db.evolutions.ApplicationEvolutions;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+
+/**
+ * GIN trigram indexes for the columns the list pages filter with {@code ilike '%filter%'}.
+ * A leading wildcard rules out btree indexes, while the pg_trgm extension can answer
+ * such patterns from an index of the three-character substrings of every value.
+ *
+ * The indexes only exist on PostgreSQL, so they cannot be part of the evolutions,
+ * which also run on H2. They are created once the evolutions have been applied,
+ * concurrently so that writes are not blocked while a large table is indexed. On
+ * other databases, or when the extension cannot be installed, nothing is created and
+ * the filters keep working with sequential scans.
+ *
+ * Multibyte characters are only indexed when the database locale classifies them as
+ * letters, e.g. with ja_JP.UTF-8 or C.UTF-8.
+ */
+@Singleton
+public class TrigramIndexes {
+
+    private static final Logger.ALogger logger = Logger.of(TrigramIndexes.class);
+
+    /**
+     * Filtered columns of every table
+     */
+    static final Map<String, List<String>> COLUMNS = Map.of(
+        "crop", List.of("name"),
+        "field", List.of("name"),
+        "work_history", List.of("content"),
+        PesticideTables.ACTIVE, List.of("registration_number", "pesticide_name", "crop_name")
+    );
+
+    private final CompletionStage<Integer> created;
+
+    /**
+     * @param evolutions Only injected so that the indexes are created after the evolutions ran
+     */
+    @Inject
+    public TrigramIndexes(ApplicationEvolutions evolutions, DatabaseExecutionContext executionContext) {
+        this.created = supplyAsync(this::createMissing, executionContext);
+    }
+
+    /**
+     * Completes with the number of indexes created at startup, 0 if trigram indexes
+     * are not supported by the database
+     */
+    public CompletionStage<Integer> created() {
+        return created;
+    }
+
+    /**
+     * Pattern for an {@code ilike} expression matching values that contain the filter.
+     * Wildcards typed into the filter keep their meaning, as they always had in the
+     * list filters.
+     */
+    public static String containsPattern(String filter) {
+        return "%" + (filter == null ? "" : filter) + "%";
+    }
+
+    /**
+     * Whether trigram indexes can be created on the database of the connection
+     */
+    static boolean isSupported(Connection connection) throws SQLException {
+        if (!connection.isWrapperFor(PGConnection.class)) {
+            return false;
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select 1 from pg_extension where extname = 'pg_trgm'")) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * Statements creating the trigram indexes of a new pesticide dataset table
+     */
+    static List<String> createIndexes(String table) {
+        List<String> statements = new ArrayList<>();
+        for (String column : COLUMNS.get(PesticideTables.ACTIVE)) {
+            statements.add("create index " + indexName(table, column) + " on " + table
+                    + " using gin (" + column + " gin_trgm_ops)");
+        }
+        return statements;
+    }
+
+    private static String indexName(String table, String column) {
+        return "ix_" + table + "_" + column + "_trgm";
+    }
+
+    private int createMissing() {
+        // Concurrent index builds cannot run inside a transaction
+        try (Connection connection = DB.getDefault().dataSource().getConnection()) {
+            connection.setAutoCommit(true);
+            if (!connection.isWrapperFor(PGConnection.class)) {
+                return 0;
+            }
+            try {
+                execute(connection, "create extension if not exists pg_trgm");
+            } catch (SQLException e) {
+                logger.warn("pg_trgm is not available, list filters will not use indexes: " + e.getMessage());
+                return 0;
+            }
+
+            int count = 0;
+            for (Map.Entry<String, List<String>> table : COLUMNS.entrySet()) {
+                for (String column : table.getValue()) {
+                    if (!hasValidIndex(connection, table.getKey(), column)) {
+                        String index = indexName(table.getKey(), column);
+                        logger.info("Creating trigram index " + index);
+                        // A failed concurrent build leaves an invalid index behind
+                        execute(connection, "drop index concurrently if exists " + index);
+                        execute(connection, "create index concurrently " + index + " on " + table.getKey()
+                                + " using gin (" + column + " gin_trgm_ops)");
+                        count++;
+                    }
+                }
+            }
+            return count;
+        } catch (SQLException e) {
+            logger.error("Failed to create trigram indexes", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Look the index up by its definition rather than its name, because the
+     * pesticide table is replaced together with its indexes on every import.
+     */
+    private static boolean hasValidIndex(Connection connection, String table, String column) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(
+                "select 1 from pg_index i join pg_class t on t.oid = i.indrelid"
+                        + " where t.relname = ? and i.indisvalid and pg_get_indexdef(i.indexrelid) like ?")) {
+            select.setString(1, table);
+            select.setString(2, "%USING gin (" + column + " gin_trgm_ops)%");
+            try (ResultSet rs = select.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package repositoryies;
+
+import com.typesafe.config.Config;
+import models.User;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps recently authenticated users in memory, so that resolving the user of a
+ * session does not need a database query on every request. The least recently used
+ * users are evicted beyond a maximum size. Users changed on any node are dropped as
+ * reported through the {@link InvalidationBus}, and entries expire after a while,
+ * because users may also be changed outside of {@link UserRepository}.
+ *
+ * Cached users are shared between requests and must not be modified.
+ */
+@Singleton
+public class UserCache {
+
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    /**
+     * Guarded by itself
+     */
+    private final LinkedHashMap<Long, Entry> users;
+
+    /**
+     * Incremented by every invalidation, so that a user which was read before a
+     * change is not cached after it
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Inject
+    public UserCache(Config config, InvalidationBus bus) {
+        this.ttlMillis = config.getDuration("auth.userCache.ttl").toMillis();
+        this.maxEntries = config.getInt("auth.userCache.maxEntries");
+        this.users = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        bus.subscribe((type, id) -> {
+            if (type == null || (type == User.class && id == null)) {
+                invalidateAll();
+            } else if (type == User.class) {
+                invalidate(id);
+            }
+        });
+    }
+
+    /**
+     * @return The cached user, or null if the user has to be read from the database
+     */
+    User get(Long id) {
+        Entry entry;
+        synchronized (users) {
+            entry = users.get(id);
+        }
+        if (entry == null || entry.expiresAt <= System.currentTimeMillis()) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.user;
+    }
+
+    /**
+     * Token to pass to {@link #put(User, long)} for a user about to be read from the database
+     */
+    long beforeRead() {
+        return invalidations.get();
+    }
+
+    /**
+     * Cache a user read from the database, unless a user was invalidated since
+     */
+    void put(User user, long token) {
+        if (ttlMillis <= 0) {
+            return;
+        }
+        synchronized (users) {
+            if (invalidations.get() == token) {
+                users.put(user.getId(), new Entry(user, System.currentTimeMillis() + ttlMillis));
+            }
+        }
+    }
+
+    /**
+     * Drop a user after it has been changed
+     */
+    public void invalidate(Long id) {
+        synchronized (users) {
+            invalidations.incrementAndGet();
+            users.remove(id);
+        }
+    }
+
+    /**
+     * Drop all users, e.g. after changes may have been missed
+     */
+    public void invalidateAll() {
+        synchronized (users) {
+            invalidations.incrementAndGet();
+            users.clear();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        synchronized (users) {
+            return users.size();
+        }
+    }
+
+    private static final class Entry {
+
+        private final User user;
+        private final long expiresAt;
+
+        Entry(User user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
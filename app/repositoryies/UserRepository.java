@@ -5,9 +5,9 @@ import models.User;
 
 import javax.inject.Inject;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 
-import static java.util.concurrent.CompletableFuture.supplyAsync;
 
 /**
  * A repository that executes user database operations in a different
@@ -15,48 +15,75 @@ import static java.util.concurrent.CompletableFuture.supplyAsync;
  */
 public class UserRepository {
 
-    private final DatabaseExecutionContext executionContext;
+    private final Bulkhead bulkhead;
+    private final UserCache cache;
+    private final InvalidationBus changes;
+    private final IdAllocator ids;
+    private final DatabaseMetrics metrics;
 
     @Inject
-    public UserRepository(DatabaseExecutionContext executionContext) {
-        this.executionContext = executionContext;
+    public UserRepository(Bulkheads bulkheads, UserCache cache, InvalidationBus changes,
+                          IdAllocator ids, DatabaseMetrics metrics) {
+        this.bulkhead = bulkheads.auth();
+        this.cache = cache;
+        this.changes = changes;
+        this.ids = ids;
+        this.metrics = metrics;
     }
 
     public CompletionStage<Optional<User>> findByUsername(String username) {
-        return supplyAsync(() -> DB.find(User.class).where().eq("username", username).findOneOrEmpty(), executionContext);
+        return metrics.supplyAsync("UserRepository.findByUsername", () -> DB.find(User.class).where().eq("username", username).findOneOrEmpty(), bulkhead);
     }
 
     public CompletionStage<Optional<User>> findByEmail(String email) {
-        return supplyAsync(() -> DB.find(User.class).where().eq("email", email).findOneOrEmpty(), executionContext);
+        return metrics.supplyAsync("UserRepository.findByEmail", () -> DB.find(User.class).where().eq("email", email).findOneOrEmpty(), bulkhead);
     }
 
     public CompletionStage<Optional<User>> findById(Long id) {
-        return supplyAsync(() -> DB.find(User.class).setId(id).findOneOrEmpty(), executionContext);
+        return metrics.supplyAsync("UserRepository.findById", () -> DB.find(User.class).setId(id).findOneOrEmpty(), bulkhead);
+    }
+
+    /**
+     * Find the user of a session, preferably in the {@link UserCache}. The returned user
+     * may be shared with other requests and must not be modified.
+     */
+    public CompletionStage<Optional<User>> findAuthenticated(Long id) {
+        User cached = cache.get(id);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(Optional.of(cached));
+        }
+        return metrics.supplyAsync("UserRepository.findAuthenticated", () -> {
+            long token = cache.beforeRead();
+            Optional<User> user = DB.find(User.class).setId(id).findOneOrEmpty();
+            user.ifPresent(u -> cache.put(u, token));
+            return user;
+        }, bulkhead);
     }
 
     public CompletionStage<Long> insert(User user) {
-        return supplyAsync(() -> {
+        return metrics.supplyAsync("UserRepository.insert", () -> {
+            user.setId(ids.nextId());
             user.save();
             return user.getId();
-        }, executionContext);
+        }, bulkhead);
     }
 
     public CompletionStage<Boolean> existsByUsername(String username) {
-        return supplyAsync(() -> DB.find(User.class).where().eq("username", username).exists(), executionContext);
+        return metrics.supplyAsync("UserRepository.existsByUsername", () -> DB.find(User.class).where().eq("username", username).exists(), bulkhead);
     }
 
     public CompletionStage<Boolean> existsByEmail(String email) {
-        return supplyAsync(() -> DB.find(User.class).where().eq("email", email).exists(), executionContext);
+        return metrics.supplyAsync("UserRepository.existsByEmail", () -> DB.find(User.class).where().eq("email", email).exists(), bulkhead);
     }
 
     public CompletionStage<Optional<User>> findByResetToken(String resetToken) {
-        return supplyAsync(() -> DB.find(User.class).where().eq("resetToken", resetToken).findOneOrEmpty(), executionContext);
+        return metrics.supplyAsync("UserRepository.findByResetToken", () -> DB.find(User.class).where().eq("resetToken", resetToken).findOneOrEmpty(), bulkhead);
     }
 
     public CompletionStage<Void> update(User user) {
-        return supplyAsync(() -> {
+        return metrics.<Void>supplyAsync("UserRepository.update", () -> {
             user.update();
             return null;
-        }, executionContext);
+        }, bulkhead).whenComplete((result, error) -> changes.changed(User.class, user.getId()));
     }
 }
\ No newline at end of file
@@ -1,15 +1,18 @@
 package repositoryies;
 
 import io.ebean.DB;
-import io.ebean.PagedList;
+import io.ebean.Query;
 import io.ebean.Transaction;
 import models.WorkHistory;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
 
-import static java.util.concurrent.CompletableFuture.supplyAsync;
 
 /**
  * A repository that executes work history database operations in a different
@@ -17,40 +20,75 @@ import static java.util.concurrent.CompletableFuture.supplyAsync;
  */
 public class WorkHistoryRepository {
 
-    private final DatabaseExecutionContext executionContext;
+    /**
+     * Properties the list can be sorted by with keyset pagination
+     */
+    private static final Map<String, Function<WorkHistory, Object>> SORT_KEYS = Map.of(
+        "date", WorkHistory::getDate,
+        "startTime", WorkHistory::getStartTime,
+        "endTime", WorkHistory::getEndTime,
+        "field.name", workHistory -> workHistory.getField() == null ? null : workHistory.getField().getName(),
+        "crop.name", workHistory -> workHistory.getCrop() == null ? null : workHistory.getCrop().getName(),
+        "content", WorkHistory::getContent
+    );
+
+    /**
+     * Number of inserts sent to the database at once by {@link #insertAll(List)}
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * Properties shown in the list, which are the only ones read for a list page
+     */
+    private static final String LIST_PROPERTIES = "date, startTime, endTime, content";
+
+    private final Bulkhead bulkhead;
+    private final PageCountCache counts;
+    private final InvalidationBus changes;
+    private final IdAllocator ids;
+    private final DatabaseMetrics metrics;
 
     @Inject
-    public WorkHistoryRepository(DatabaseExecutionContext executionContext) {
-        this.executionContext = executionContext;
+    public WorkHistoryRepository(Bulkheads bulkheads, PageCountCache counts, InvalidationBus changes,
+                                 IdAllocator ids, DatabaseMetrics metrics) {
+        this.bulkhead = bulkheads.interactive();
+        this.counts = counts;
+        this.changes = changes;
+        this.ids = ids;
+        this.metrics = metrics;
     }
 
     /**
-     * Return a paged list of work history for a specific user
+     * Return a page of work history for a specific user, read by offset or, for deep pages,
+     * by cursor. See {@link Keyset}.
+     *
+     * @param cursor Cursor of the page from the previous page, empty to read by offset
      */
-    public CompletionStage<PagedList<WorkHistory>> pageByUser(int page, int pageSize, String sortBy, String order, String filter, Long userId) {
-        return supplyAsync(() ->
-                DB.find(WorkHistory.class)
-                    .fetch("user")
-                    .fetch("field")
-                    .fetch("crop")
+    public CompletionStage<KeysetPage<WorkHistory>> pageByUser(int page, int pageSize, String sortBy, String order, String filter,
+                                                               String cursor, Long userId) {
+        return metrics.supplyAsync("WorkHistoryRepository.pageByUser", () -> {
+            Query<WorkHistory> query = DB.find(WorkHistory.class)
+                    .select(LIST_PROPERTIES)
+                    .fetch("field", "name")
+                    .fetch("crop", "name")
                     .where()
                     .eq("user.id", userId)
-                    .ilike("content", "%" + filter + "%")
-                    .orderBy(sortBy + " " + order)
-                    .setFirstRow(page * pageSize)
-                    .setMaxRows(pageSize)
-                    .findPagedList(), executionContext);
+                    .ilike("content", TrigramIndexes.containsPattern(filter))
+                    .query()
+                    .setTimeout(bulkhead.getQueryTimeoutSeconds());
+            return Keyset.page(query, SORT_KEYS, counts, userId + ":" + filter, page, pageSize, sortBy, order, cursor);
+        }, bulkhead);
     }
 
     public CompletionStage<Optional<WorkHistory>> lookup(Long id) {
-        return supplyAsync(() -> DB.find(WorkHistory.class).setId(id).findOneOrEmpty(), executionContext);
+        return metrics.supplyAsync("WorkHistoryRepository.lookup", () -> DB.find(WorkHistory.class).setId(id).findOneOrEmpty(), bulkhead);
     }
 
     /**
      * Lookup a work history by ID and ensure it belongs to the specified user
      */
     public CompletionStage<Optional<WorkHistory>> lookupByUser(Long id, Long userId) {
-        return supplyAsync(() -> 
+        return metrics.supplyAsync("WorkHistoryRepository.lookupByUser", () -> 
                 DB.find(WorkHistory.class)
                     .fetch("field")
                     .fetch("crop")
@@ -58,11 +96,11 @@ public class WorkHistoryRepository {
                     .where()
                     .eq("id", id)
                     .eq("user.id", userId)
-                    .findOneOrEmpty(), executionContext);
+                    .findOneOrEmpty(), bulkhead);
     }
 
     public CompletionStage<Optional<Long>> update(Long id, WorkHistory newWorkHistoryData) {
-        return supplyAsync(() -> {
+        return metrics.supplyAsync("WorkHistoryRepository.update", () -> {
             Transaction txn = DB.beginTransaction();
             Optional<Long> value = Optional.empty();
             try {
@@ -76,14 +114,14 @@ public class WorkHistoryRepository {
                 txn.end();
             }
             return value;
-        }, executionContext);
+        }, bulkhead).whenComplete((result, error) -> changes.changed(WorkHistory.class));
     }
 
     /**
      * Update a work history ensuring it belongs to the specified user
      */
     public CompletionStage<Optional<Long>> updateByUser(Long id, WorkHistory newWorkHistoryData, Long userId) {
-        return supplyAsync(() -> {
+        return metrics.supplyAsync("WorkHistoryRepository.updateByUser", () -> {
             Transaction txn = DB.beginTransaction();
             Optional<Long> value = Optional.empty();
             try {
@@ -102,25 +140,25 @@ public class WorkHistoryRepository {
                 txn.end();
             }
             return value;
-        }, executionContext);
+        }, bulkhead).whenComplete((result, error) -> changes.changed(WorkHistory.class));
     }
 
     public CompletionStage<Optional<Long>> delete(Long id) {
-        return supplyAsync(() -> {
+        return metrics.<Optional<Long>>supplyAsync("WorkHistoryRepository.delete", () -> {
             final Optional<WorkHistory> workHistoryOptional = DB.find(WorkHistory.class).setId(id).findOneOrEmpty();
             if (workHistoryOptional.isPresent()) {
                 workHistoryOptional.get().delete();
                 return Optional.of(id);
             }
             return Optional.empty();
-        }, executionContext);
+        }, bulkhead).whenComplete((result, error) -> changes.changed(WorkHistory.class));
     }
 
     /**
      * Delete a work history ensuring it belongs to the specified user
      */
     public CompletionStage<Boolean> deleteByUser(Long id, Long userId) {
-        return supplyAsync(() -> {
+        return metrics.supplyAsync("WorkHistoryRepository.deleteByUser", () -> {
             final Optional<WorkHistory> workHistoryOptional = DB.find(WorkHistory.class)
                     .fetch("user")
                     .where()
@@ -132,13 +170,41 @@ public class WorkHistoryRepository {
                 return true;
             }
             return false;
-        }, executionContext);
+        }, bulkhead).whenComplete((result, error) -> changes.changed(WorkHistory.class));
     }
 
     public CompletionStage<Long> insert(WorkHistory workHistory) {
-        return supplyAsync(() -> {
+        return metrics.supplyAsync("WorkHistoryRepository.insert", () -> {
+            workHistory.setId(ids.nextId());
             workHistory.save();
             return workHistory.getId();
-        }, executionContext);
+        }, bulkhead).whenComplete((result, error) -> changes.changed(WorkHistory.class));
+    }
+
+    /**
+     * Insert many work histories in one transaction, sending the inserts to the
+     * database in JDBC batches. Either all of them are inserted or none.
+     *
+     * @return Ids of the inserted work histories, in the given order
+     */
+    public CompletionStage<List<Long>> insertAll(List<WorkHistory> workHistories) {
+        return metrics.supplyAsync("WorkHistoryRepository.insertAll", () -> {
+            // Allocate before the transaction, which would otherwise hold a second connection
+            List<Long> insertedIds = new ArrayList<>();
+            for (WorkHistory workHistory : workHistories) {
+                workHistory.setId(ids.nextId());
+                insertedIds.add(workHistory.getId());
+            }
+            Transaction txn = DB.beginTransaction();
+            try {
+                txn.setBatchMode(true);
+                txn.setBatchSize(BATCH_SIZE);
+                DB.getDefault().insertAll(workHistories, txn);
+                txn.commit();
+            } finally {
+                txn.end();
+            }
+            return insertedIds;
+        }, bulkhead).whenComplete((result, error) -> changes.changed(WorkHistory.class));
     }
 }
\ No newline at end of file
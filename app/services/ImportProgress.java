@@ -0,0 +1,68 @@
+package services;
+
+/**
+ * Receives progress notifications while a pesticide registration file is imported.
+ */
+public interface ImportProgress {
+
+    /**
+     * Progress listener that ignores every notification
+     */
+    ImportProgress NONE = new ImportProgress() {
+    };
+
+    /**
+     * Called with the total number of compressed bytes read from the file so far
+     */
+    default void bytesRead(long totalBytes) {
+    }
+
+    /**
+     * Called for every row that was decoded and validated
+     */
+    default void rowParsed() {
+    }
+
+    /**
+     * Called for every line that could not be converted to a valid row
+     */
+    default void rowRejected() {
+    }
+
+    /**
+     * Called after a batch of rows has been written to the database
+     */
+    default void rowsInserted(int count) {
+    }
+
+    /**
+     * Listener that forwards every notification to this one, adding an offset to the
+     * number of bytes read. Used when several files are imported as one job.
+     *
+     * @param offset Number of bytes of the files read before
+     */
+    default ImportProgress withByteOffset(long offset) {
+        ImportProgress delegate = this;
+        return new ImportProgress() {
+            @Override
+            public void bytesRead(long totalBytes) {
+                delegate.bytesRead(offset + totalBytes);
+            }
+
+            @Override
+            public void rowParsed() {
+                delegate.rowParsed();
+            }
+
+            @Override
+            public void rowRejected() {
+                delegate.rowRejected();
+            }
+
+            @Override
+            public void rowsInserted(int count) {
+                delegate.rowsInserted(count);
+            }
+        };
+    }
+}
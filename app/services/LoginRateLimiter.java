@@ -0,0 +1,111 @@
+package services;
+
+import com.typesafe.config.Config;
+import play.mvc.Http;
+import repositoryies.RateLimitRepository;
+import utils.SlidingWindowLimiter;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Limits the logins and password reset requests per client address and per account
+ * over a sliding window of time, so that credential stuffing is refused before it
+ * reaches the database or bcrypt. The client address is the remote address of the
+ * request, which Play takes from X-Forwarded-For only as far as the proxies in
+ * {@code play.http.forwarded.trustedProxies} added it, so that clients cannot choose
+ * it. The attempts are counted in memory by default; with
+ * {@code auth.rateLimit.store = "database"} they are counted in the database instead,
+ * so that all application nodes share the limits.
+ */
+@Singleton
+public class LoginRateLimiter {
+
+    public enum Action {
+        LOGIN("login"),
+        FORGOT_PASSWORD("forgotPassword");
+
+        private final String key;
+
+        Action(String key) {
+            this.key = key;
+        }
+    }
+
+    private final boolean enabled;
+    private final boolean shared;
+    private final Duration window;
+    private final Config limits;
+    private final SlidingWindowLimiter attempts;
+    private final RateLimitRepository repository;
+
+    @Inject
+    public LoginRateLimiter(Config config, RateLimitRepository repository) {
+        this.enabled = config.getBoolean("auth.rateLimit.enabled");
+        this.shared = "database".equals(config.getString("auth.rateLimit.store"));
+        this.window = config.getDuration("auth.rateLimit.window");
+        this.limits = config.getConfig("auth.rateLimit");
+        this.attempts = new SlidingWindowLimiter(window.toNanos(), config.getInt("auth.rateLimit.stripes"), System::nanoTime);
+        this.repository = repository;
+    }
+
+    /**
+     * Count an attempt of an action from the client of a request for an account
+     *
+     * @param account Username or email the attempt is for
+     * @return Whether the attempt is allowed
+     */
+    public CompletionStage<Boolean> tryAcquire(Action action, Http.Request request, String account) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(true);
+        }
+        // Not ClientAddress, whose first X-Forwarded-For address is chosen by the client
+        String addressKey = action.key + ":address:" + request.remoteAddress();
+        String accountKey = accountKey(action, account);
+        int maxPerAddress = limits.getInt(action.key + ".maxPerAddress");
+        int maxPerAccount = limits.getInt(action.key + ".maxPerAccount");
+        if (shared) {
+            long windowMillis = window.toMillis();
+            return repository.hit(addressKey, maxPerAddress, windowMillis).thenCompose(allowed -> allowed
+                ? repository.hit(accountKey, maxPerAccount, windowMillis)
+                : CompletableFuture.completedFuture(false));
+        }
+        return CompletableFuture.completedFuture(
+            attempts.tryAcquire(addressKey, maxPerAddress) && attempts.tryAcquire(accountKey, maxPerAccount));
+    }
+
+    /**
+     * Forget the attempts for an account, e.g. after a successful login. The attempts
+     * of the client address still count.
+     */
+    public void reset(Action action, String account) {
+        if (!enabled) {
+            return;
+        }
+        if (shared) {
+            try {
+                repository.reset(accountKey(action, account));
+            } catch (RejectedExecutionException e) {
+                // The attempts expire with the window anyway
+            }
+        } else {
+            attempts.reset(accountKey(action, account));
+        }
+    }
+
+    /**
+     * Time after which a refused client may try again
+     */
+    public Duration getWindow() {
+        return window;
+    }
+
+    private static String accountKey(Action action, String account) {
+        return action.key + ":account:" + (account == null ? "" : account.trim().toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,204 @@
+package services;
+
+import com.typesafe.config.Config;
+import org.mindrot.jbcrypt.BCrypt;
+import play.Logger;
+import utils.LatencyHistogram;
+import utils.PrometheusText;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Hashes and checks passwords with bcrypt on the {@link PasswordHashingExecutionContext}.
+ * Only as many passwords as there are threads plus {@code auth.passwordHashing.maxQueued}
+ * are accepted at once; beyond that a {@link PasswordHashingRejectedException} is thrown
+ * at once, which is answered with 503, instead of queueing logins without limit.
+ *
+ * The bcrypt cost is {@code auth.passwordHashing.cost}, or with "auto" the highest cost
+ * whose hash takes no longer than {@code auth.passwordHashing.targetTime} on this machine,
+ * measured at startup. Every hash carries the cost it was made with, so hashes of an
+ * other cost keep working, and hashes of a lower cost are replaced at the next login, see
+ * {@link #needsRehash}. Hashes are never lowered, since nodes on other hardware may
+ * measure another cost; to keep the same cost on all nodes, configure it.
+ */
+@Singleton
+public class PasswordHasher {
+
+    private static final Logger.ALogger logger = Logger.of(PasswordHasher.class);
+
+    /**
+     * Hashed to measure the time of a hash
+     */
+    private static final String CALIBRATION_PASSWORD = "calibration-password";
+
+    /**
+     * Lowest and highest cost jBCrypt accepts
+     */
+    private static final int MIN_COST = 4;
+    private static final int MAX_COST = 30;
+
+    private final PasswordHashingExecutionContext executionContext;
+    private final Semaphore admitted;
+
+    /**
+     * Cost of new hashes, which changes once when the calibration finishes
+     */
+    private volatile int cost;
+
+    /**
+     * Whether the cost is final, i.e. configured or measured
+     */
+    private volatile boolean calibrated;
+
+    private final LatencyHistogram wait = new LatencyHistogram();
+    private final LatencyHistogram hashing = new LatencyHistogram();
+    private final LatencyHistogram checking = new LatencyHistogram();
+    private final LongAdder rejected = new LongAdder();
+
+    @Inject
+    public PasswordHasher(PasswordHashingExecutionContext executionContext, Config config) {
+        this.executionContext = executionContext;
+        this.admitted = new Semaphore(config.getInt("password-hashing.dispatcher.thread-pool-executor.fixed-pool-size")
+            + config.getInt("auth.passwordHashing.maxQueued"));
+        int minCost = Math.max(MIN_COST, config.getInt("auth.passwordHashing.minCost"));
+        int maxCost = Math.min(MAX_COST, config.getInt("auth.passwordHashing.maxCost"));
+        String configured = config.getString("auth.passwordHashing.cost");
+        if ("auto".equals(configured)) {
+            long targetNanos = config.getDuration("auth.passwordHashing.targetTime").toNanos();
+            this.cost = minCost;
+            // Measure on a hashing thread, so that the start of the application does not wait
+            CompletableFuture.runAsync(() -> {
+                cost = calibrate(targetNanos, minCost, maxCost);
+                calibrated = true;
+                logger.info("Hashing passwords with bcrypt cost " + cost);
+            }, executionContext);
+        } else {
+            this.cost = Math.max(MIN_COST, Math.min(MAX_COST, Integer.parseInt(configured)));
+            this.calibrated = true;
+        }
+    }
+
+    /**
+     * Measure the time of a hash at the lowest cost and return the highest cost whose
+     * hash should not take longer than the target. Each step of the cost doubles the time.
+     */
+    private static int calibrate(long targetNanos, int minCost, int maxCost) {
+        String salt = BCrypt.gensalt(minCost);
+        // The first hash also loads and compiles the code, so take the fastest of a few
+        long fastest = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long started = System.nanoTime();
+            BCrypt.hashpw(CALIBRATION_PASSWORD, salt);
+            fastest = Math.min(fastest, System.nanoTime() - started);
+        }
+        return costFor(fastest, targetNanos, minCost, maxCost);
+    }
+
+    /**
+     * The highest cost from {@code minCost} to {@code maxCost} whose hash should not take
+     * longer than the target, given the time of a hash at {@code minCost}
+     */
+    public static int costFor(long nanosAtMinCost, long targetNanos, int minCost, int maxCost) {
+        int cost = minCost;
+        long nanos = Math.max(1, nanosAtMinCost);
+        while (cost < maxCost && nanos * 2 <= targetNanos) {
+            nanos *= 2;
+            cost++;
+        }
+        return cost;
+    }
+
+    /**
+     * Hash a password for storing it
+     */
+    public CompletionStage<String> hash(String password) {
+        int cost = this.cost;
+        return submit(hashing, () -> BCrypt.hashpw(password, BCrypt.gensalt(cost)));
+    }
+
+    /**
+     * Check a password against a stored hash
+     */
+    public CompletionStage<Boolean> check(String password, String hash) {
+        return submit(checking, () -> BCrypt.checkpw(password, hash));
+    }
+
+    /**
+     * Whether a hash was made with a lower cost than new hashes and should be replaced
+     * by a new hash of the password, once the password was checked. Until the cost is
+     * measured no hash needs one, so that hashes are not replaced with the lowest cost.
+     */
+    public boolean needsRehash(String hash) {
+        return calibrated && costOf(hash) < cost;
+    }
+
+    /**
+     * Cost of new hashes
+     */
+    public int getCost() {
+        return cost;
+    }
+
+    /**
+     * Cost stored in a bcrypt hash like "$2a$10$...", -1 if it is no such hash
+     */
+    public static int costOf(String hash) {
+        int start = hash == null || !hash.startsWith("$") ? 0 : hash.indexOf('$', 1) + 1;
+        if (start <= 0 || hash.length() < start + 3 || hash.charAt(start + 2) != '$') {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(hash.substring(start, start + 2));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private <T> CompletionStage<T> submit(LatencyHistogram duration, Supplier<T> work) {
+        if (!admitted.tryAcquire()) {
+            rejected.increment();
+            throw new PasswordHashingRejectedException();
+        }
+        long submitted = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long started = System.nanoTime();
+                wait.record(started - submitted);
+                try {
+                    return work.get();
+                } finally {
+                    duration.record(System.nanoTime() - started);
+                    admitted.release();
+                }
+            }, executionContext);
+        } catch (RuntimeException e) {
+            admitted.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Number of passwords rejected since the start
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public void writeTo(PrometheusText text) {
+        text.metric("password_hashing_wait_seconds", "histogram", "Time passwords waited for a hashing thread");
+        wait.writeTo(text, "password_hashing_wait_seconds");
+        text.metric("password_hashing_seconds", "histogram", "Time taken to hash or check a password");
+        hashing.writeTo(text, "password_hashing_seconds", "operation", "hash");
+        checking.writeTo(text, "password_hashing_seconds", "operation", "check");
+        text.metric("password_hashing_cost", "gauge", "bcrypt cost of new hashes");
+        text.sample("password_hashing_cost", cost);
+        text.metric("password_hashing_rejected_total", "counter", "Passwords rejected because too many were waiting");
+        text.sample("password_hashing_rejected_total", rejected.sum());
+    }
+}
@@ -0,0 +1,20 @@
+package services;
+
+import org.apache.pekko.actor.ActorSystem;
+import play.libs.concurrent.CustomExecutionContext;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Custom execution context for bcrypt, so that a burst of logins takes at most
+ * its few threads of CPU from rendering pages.
+ */
+@Singleton
+public class PasswordHashingExecutionContext extends CustomExecutionContext {
+
+    @Inject
+    public PasswordHashingExecutionContext(ActorSystem actorSystem) {
+        super(actorSystem, "password-hashing.dispatcher");
+    }
+}
@@ -0,0 +1,15 @@
+package services;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Thrown when a password is not hashed or checked because too many are already waiting
+ */
+public class PasswordHashingRejectedException extends RejectedExecutionException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PasswordHashingRejectedException() {
+        super("Too many passwords waiting to be hashed");
+    }
+}
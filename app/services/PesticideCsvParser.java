@@ -0,0 +1,455 @@
+package services;
+
+import models.PesticideRegistration;
+import utils.CsvTokenizer;
+
+import javax.inject.Singleton;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Streaming parser for the pesticide registration CSV files distributed as ZIP archives.
+ * Rows are handed to the caller one at a time, so the dataset is never held in memory.
+ */
+@Singleton
+public class PesticideCsvParser {
+
+    public static final Charset CHARSET = Charset.forName("Shift_JIS");
+
+    /**
+     * Maximum length of a column in the pesticide_registration table
+     */
+    private static final int MAX_COLUMN_LENGTH = 255;
+
+    /**
+     * Columns with only a handful of distinct values (usage, pesticide type, application
+     * location and purpose), which are interned instead of allocated for every row
+     */
+    private static final int[] INTERNED_COLUMNS = {1, 2, 6, 8};
+
+    /**
+     * Parse every CSV entry of a ZIP archive and pass each valid row to the sink.
+     *
+     * @param zipPath Path of the uploaded ZIP file
+     * @param sink    Receives each decoded and validated row
+     * @return Number of rows passed to the sink
+     */
+    public int parseZip(Path zipPath, Consumer<PesticideRegistration> sink) throws IOException {
+        return parseZip(zipPath, sink, ImportProgress.NONE);
+    }
+
+    /**
+     * Parse every CSV entry of a ZIP archive and report the progress while reading.
+     *
+     * @param zipPath  Path of the uploaded ZIP file
+     * @param sink     Receives each decoded and validated row
+     * @param progress Notified about bytes read and parsed or rejected rows
+     * @return Number of rows passed to the sink
+     */
+    public int parseZip(Path zipPath, Consumer<PesticideRegistration> sink, ImportProgress progress) throws IOException {
+        int rows = 0;
+
+        try (ZipInputStream zis = new ZipInputStream(new CountingInputStream(new FileInputStream(zipPath.toFile()), progress), CHARSET)) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (!entry.isDirectory() && entry.getName().toLowerCase().endsWith(".csv")) {
+                    rows += parseCsv(zis, sink, progress);
+                }
+                zis.closeEntry();
+            }
+        }
+
+        return rows;
+    }
+
+    /**
+     * Parse the CSV entries of a ZIP archive concurrently, one task per entry on the
+     * given executor, with at most {@code parallelism} entries in progress at a time.
+     * Each task hands its rows over through a small bounded queue and the rows are
+     * passed to the sink on the calling thread in entry and line order, so the result
+     * is the same as with the sequential parser while the sink never needs to be
+     * thread safe.
+     *
+     * @param zipPath     Path of the uploaded ZIP file
+     * @param sink        Receives each decoded and validated row, on the calling thread
+     * @param progress    Notified about bytes read and parsed or rejected rows, from the parsing threads
+     * @param executor    Executor running the parsing tasks
+     * @param parallelism Maximum number of entries parsed at the same time. With 1 or less
+     *                    the archive is parsed sequentially on the calling thread
+     * @return Number of rows passed to the sink
+     */
+    public int parseZip(Path zipPath, Consumer<PesticideRegistration> sink, ImportProgress progress,
+                        Executor executor, int parallelism) throws IOException {
+        if (parallelism <= 1) {
+            return parseZip(zipPath, sink, progress);
+        }
+
+        try (ZipFile zip = new ZipFile(zipPath.toFile(), CHARSET)) {
+            AtomicLong compressedBytesRead = new AtomicLong();
+            List<EntryTask> tasks = zip.stream()
+                    .filter(entry -> !entry.isDirectory() && entry.getName().toLowerCase().endsWith(".csv"))
+                    .map(entry -> new EntryTask(zip, entry, progress, compressedBytesRead))
+                    .collect(Collectors.toList());
+
+            int rows = 0;
+            int started = 0;
+            try {
+                for (; started < Math.min(parallelism, tasks.size()); started++) {
+                    executor.execute(tasks.get(started));
+                }
+                for (EntryTask task : tasks) {
+                    rows += task.drainTo(sink);
+                    if (started < tasks.size()) {
+                        executor.execute(tasks.get(started++));
+                    }
+                }
+            } finally {
+                // Stop the remaining tasks before the archive is closed under them
+                for (EntryTask task : tasks) {
+                    task.cancel();
+                }
+                for (EntryTask task : tasks.subList(0, started)) {
+                    task.awaitDone();
+                }
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Parse a single CSV stream. The stream is not closed, so that the
+     * remaining entries of a ZIP archive can still be read afterwards.
+     */
+    public int parseCsv(InputStream in, Consumer<PesticideRegistration> sink) throws IOException {
+        return parseCsv(in, sink, ImportProgress.NONE);
+    }
+
+    private int parseCsv(InputStream in, Consumer<PesticideRegistration> sink, ImportProgress progress) throws IOException {
+        int rows = 0;
+        CsvTokenizer tokenizer = new CsvTokenizer(new InputStreamReader(in, CHARSET), INTERNED_COLUMNS);
+
+        // Skip header line
+        if (!tokenizer.next()) {
+            return 0;
+        }
+
+        while (tokenizer.next()) {
+            PesticideRegistration pesticide = toRegistration(tokenizer.getFields(), tokenizer.getFieldCount());
+            if (pesticide != null && isValid(pesticide)) {
+                progress.rowParsed();
+                sink.accept(pesticide);
+                rows++;
+            } else {
+                progress.rowRejected();
+            }
+        }
+
+        return rows;
+    }
+
+    /**
+     * Convert the columns of one CSV record to a pesticide registration.
+     *
+     * @param fields Decoded columns of the record, with quotes already removed
+     * @param count  Number of columns of the record
+     * @return The registration, or null if the record has fewer than 10 columns
+     */
+    static PesticideRegistration toRegistration(String[] fields, int count) {
+        if (count < 10) {
+            return null;
+        }
+
+        PesticideRegistration pesticide = new PesticideRegistration();
+        pesticide.setRegistrationNumber(fields[0]);
+        pesticide.setUsage(fields[1]);
+        pesticide.setPesticideType(fields[2]);
+        pesticide.setPesticideName(fields[3]);
+        pesticide.setAbbreviation(fields[4]);
+        pesticide.setCropName(fields[5]);
+        pesticide.setApplicationLocation(fields[6]);
+        pesticide.setTargetPestDisease(fields[7]);
+        pesticide.setPurpose(fields[8]);
+        pesticide.setDilutionAmount(fields[9]);
+
+        // Backward compatibility: files with only the original 10 fields stop here
+        if (count >= 25) {
+            pesticide.setSprayVolume(fields[10]);
+            pesticide.setUsageTime(fields[11]);
+            pesticide.setMainAgentUsageCount(fields[12]);
+            pesticide.setUsageMethod(fields[13]);
+            pesticide.setFumigationTime(fields[14]);
+            pesticide.setFumigationTemperature(fields[15]);
+            pesticide.setApplicableSoil(fields[16]);
+            pesticide.setApplicableZoneName(fields[17]);
+            pesticide.setApplicablePesticideName(fields[18]);
+            pesticide.setMixtureCount(fields[19]);
+            pesticide.setActiveIngredient1TotalUsage(fields[20]);
+            pesticide.setActiveIngredient2TotalUsage(fields[21]);
+            pesticide.setActiveIngredient3TotalUsage(fields[22]);
+            pesticide.setActiveIngredient4TotalUsage(fields[23]);
+            pesticide.setActiveIngredient5TotalUsage(fields[24]);
+        }
+
+        return pesticide;
+    }
+
+    /**
+     * Check that a row can be stored: the registration number is required and
+     * no column may exceed the column length of the table.
+     */
+    static boolean isValid(PesticideRegistration pesticide) {
+        if (pesticide.getRegistrationNumber() == null || pesticide.getRegistrationNumber().isEmpty()) {
+            return false;
+        }
+        return fits(pesticide.getRegistrationNumber())
+                && fits(pesticide.getUsage())
+                && fits(pesticide.getPesticideType())
+                && fits(pesticide.getPesticideName())
+                && fits(pesticide.getAbbreviation())
+                && fits(pesticide.getCropName())
+                && fits(pesticide.getApplicationLocation())
+                && fits(pesticide.getTargetPestDisease())
+                && fits(pesticide.getPurpose())
+                && fits(pesticide.getDilutionAmount())
+                && fits(pesticide.getSprayVolume())
+                && fits(pesticide.getUsageTime())
+                && fits(pesticide.getMainAgentUsageCount())
+                && fits(pesticide.getUsageMethod())
+                && fits(pesticide.getFumigationTime())
+                && fits(pesticide.getFumigationTemperature())
+                && fits(pesticide.getApplicableSoil())
+                && fits(pesticide.getApplicableZoneName())
+                && fits(pesticide.getApplicablePesticideName())
+                && fits(pesticide.getMixtureCount())
+                && fits(pesticide.getActiveIngredient1TotalUsage())
+                && fits(pesticide.getActiveIngredient2TotalUsage())
+                && fits(pesticide.getActiveIngredient3TotalUsage())
+                && fits(pesticide.getActiveIngredient4TotalUsage())
+                && fits(pesticide.getActiveIngredient5TotalUsage());
+    }
+
+    private static boolean fits(String value) {
+        return value == null || value.length() <= MAX_COLUMN_LENGTH;
+    }
+
+    /**
+     * Parses one entry of a ZIP archive and hands the rows to the consuming thread in
+     * chunks through a bounded queue, so that a fast parser cannot run far ahead of a
+     * slow sink.
+     */
+    private class EntryTask implements Runnable {
+
+        private static final int CHUNK_SIZE = 256;
+        private static final int QUEUED_CHUNKS = 16;
+
+        /**
+         * Marks the end of the entry, compared by identity
+         */
+        private final List<PesticideRegistration> end = new ArrayList<>(0);
+
+        private final ZipFile zip;
+        private final ZipEntry entry;
+        private final ImportProgress progress;
+        private final BlockingQueue<List<PesticideRegistration>> queue = new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private volatile boolean cancelled;
+        private volatile Exception failure;
+
+        EntryTask(ZipFile zip, ZipEntry entry, ImportProgress progress, AtomicLong compressedBytesRead) {
+            this.zip = zip;
+            this.entry = entry;
+            this.progress = new EntryProgress(progress, entry, compressedBytesRead);
+        }
+
+        @Override
+        public void run() {
+            try (InputStream in = new CountingInputStream(zip.getInputStream(entry), progress)) {
+                List<PesticideRegistration> chunk = new ArrayList<>(CHUNK_SIZE);
+                parseCsv(in, row -> {
+                    chunk.add(row);
+                    if (chunk.size() >= CHUNK_SIZE) {
+                        put(new ArrayList<>(chunk));
+                        chunk.clear();
+                    }
+                }, progress);
+                if (!chunk.isEmpty()) {
+                    put(chunk);
+                }
+            } catch (CancellationException e) {
+                return;
+            } catch (Exception e) {
+                failure = e;
+            } finally {
+                try {
+                    put(end);
+                } catch (CancellationException e) {
+                    // Nobody is waiting for the rows anymore
+                }
+                done.countDown();
+            }
+        }
+
+        /**
+         * Pass the rows of the entry to the sink as they become available.
+         *
+         * @return Number of rows passed to the sink
+         */
+        int drainTo(Consumer<PesticideRegistration> sink) throws IOException {
+            int rows = 0;
+            try {
+                while (true) {
+                    List<PesticideRegistration> chunk = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (chunk == null) {
+                        // The end marker is queued before the task is done, so it is missing only if the task was interrupted
+                        if (done.getCount() == 0 && queue.isEmpty()) {
+                            throw new InterruptedIOException("Parsing of " + entry.getName() + " stopped before the end of the entry");
+                        }
+                        continue;
+                    }
+                    if (chunk == end) {
+                        break;
+                    }
+                    for (PesticideRegistration row : chunk) {
+                        sink.accept(row);
+                    }
+                    rows += chunk.size();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading " + entry.getName());
+            }
+            if (failure != null) {
+                throw new IOException("Failed to read " + entry.getName() + ": " + failure.getMessage(), failure);
+            }
+            return rows;
+        }
+
+        void cancel() {
+            cancelled = true;
+            queue.clear();
+        }
+
+        void awaitDone() {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void put(List<PesticideRegistration> chunk) {
+            try {
+                while (!cancelled) {
+                    if (queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Converts the uncompressed bytes read from one entry to the share of compressed
+     * bytes they stand for, and adds them up over all entries of the archive
+     */
+    private static class EntryProgress implements ImportProgress {
+
+        private final ImportProgress delegate;
+        private final long compressedSize;
+        private final long size;
+        private final AtomicLong compressedBytesRead;
+        private long reported;
+
+        EntryProgress(ImportProgress delegate, ZipEntry entry, AtomicLong compressedBytesRead) {
+            this.delegate = delegate;
+            this.compressedSize = entry.getCompressedSize();
+            this.size = entry.getSize();
+            this.compressedBytesRead = compressedBytesRead;
+        }
+
+        @Override
+        public void bytesRead(long totalBytes) {
+            if (size <= 0 || compressedSize <= 0) {
+                return;
+            }
+            long compressed = compressedSize * Math.min(totalBytes, size) / size;
+            delegate.bytesRead(compressedBytesRead.addAndGet(compressed - reported));
+            reported = compressed;
+        }
+
+        @Override
+        public void rowParsed() {
+            delegate.rowParsed();
+        }
+
+        @Override
+        public void rowRejected() {
+            delegate.rowRejected();
+        }
+    }
+
+    /**
+     * Reports the number of bytes read from the underlying file
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private final ImportProgress progress;
+        private long count;
+
+        CountingInputStream(InputStream in, ImportProgress progress) {
+            super(in);
+            this.progress = progress;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                progress.bytesRead(++count);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+                progress.bytesRead(count);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            progress.bytesRead(count);
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package services;
+
+import org.apache.pekko.actor.ActorSystem;
+import play.libs.concurrent.CustomExecutionContext;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Custom execution context for background pesticide imports, so that a long
+ * running import occupies neither the rendering pool nor the database dispatcher.
+ */
+@Singleton
+public class PesticideImportExecutionContext extends CustomExecutionContext {
+
+    @Inject
+    public PesticideImportExecutionContext(ActorSystem actorSystem) {
+        super(actorSystem, "pesticide-import.dispatcher");
+    }
+}
@@ -0,0 +1,201 @@
+package services;
+
+import repositoryies.PesticideDiff;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * State of one background pesticide registration import. Counters are updated by the
+ * import worker and read by the status endpoint, so every field is thread safe.
+ */
+public class PesticideImportJob implements ImportProgress {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    /**
+     * How the imported rows are combined with the current registrations
+     */
+    public enum Mode {
+        /**
+         * Load the rows as a new dataset and switch to it once the import has completed
+         */
+        REPLACE,
+        /**
+         * Add the rows to the current dataset
+         */
+        APPEND,
+        /**
+         * Compare the rows with the current dataset and apply only the differences
+         */
+        INCREMENTAL
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final String fileName;
+    private final long fileSize;
+    private final Mode mode;
+    private final Instant createdAt = Instant.now();
+
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong parsed = new AtomicLong();
+    private final AtomicLong inserted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String errorMessage;
+    private volatile PesticideDiff diff;
+
+    public PesticideImportJob(String fileName, long fileSize, Mode mode) {
+        this.fileName = fileName;
+        this.fileSize = fileSize;
+        this.mode = mode;
+    }
+
+    @Override
+    public void bytesRead(long totalBytes) {
+        bytesRead.set(totalBytes);
+    }
+
+    @Override
+    public void rowParsed() {
+        parsed.incrementAndGet();
+    }
+
+    @Override
+    public void rowRejected() {
+        rejected.incrementAndGet();
+    }
+
+    @Override
+    public void rowsInserted(int count) {
+        inserted.addAndGet(count);
+    }
+
+    void markRunning() {
+        startedAt = Instant.now();
+        status = Status.RUNNING;
+    }
+
+    void markCompleted() {
+        bytesRead.set(fileSize);
+        finishedAt = Instant.now();
+        status = Status.COMPLETED;
+    }
+
+    void diffApplied(PesticideDiff diff) {
+        this.diff = diff;
+    }
+
+    void markFailed(String message) {
+        errorMessage = message;
+        finishedAt = Instant.now();
+        status = Status.FAILED;
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * Changes applied by an incremental import, or null until it has completed
+     */
+    public PesticideDiff getDiff() {
+        return diff;
+    }
+
+    public long getParsed() {
+        return parsed.get();
+    }
+
+    public long getInserted() {
+        return inserted.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Fraction of the file that has been read, between 0 and 1
+     */
+    public double getProgress() {
+        if (status == Status.COMPLETED) {
+            return 1.0;
+        }
+        if (fileSize <= 0) {
+            return 0.0;
+        }
+        return Math.min(1.0, (double) bytesRead.get() / fileSize);
+    }
+
+    /**
+     * Time spent running so far, or the total running time once finished
+     */
+    public Duration getElapsed() {
+        Instant start = startedAt;
+        if (start == null) {
+            return Duration.ZERO;
+        }
+        Instant end = finishedAt != null ? finishedAt : Instant.now();
+        return Duration.between(start, end);
+    }
+
+    /**
+     * Inserted rows per second
+     */
+    public double getRowsPerSecond() {
+        double seconds = getElapsed().toMillis() / 1000.0;
+        return seconds > 0 ? getInserted() / seconds : 0.0;
+    }
+
+    /**
+     * Estimated remaining time in seconds based on the fraction of the file read,
+     * or -1 while no estimate is possible
+     */
+    public long getEtaSeconds() {
+        if (isFinished()) {
+            return 0;
+        }
+        double progress = getProgress();
+        if (status != Status.RUNNING || progress <= 0.0) {
+            return -1;
+        }
+        double elapsedSeconds = getElapsed().toMillis() / 1000.0;
+        return Math.round(elapsedSeconds * (1.0 - progress) / progress);
+    }
+}
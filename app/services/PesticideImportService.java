@@ -0,0 +1,181 @@
+package services;
+
+import com.typesafe.config.Config;
+import play.Logger;
+import repositoryies.PesticideRepository;
+import repositoryies.PesticideRowSource;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs pesticide registration imports as background jobs. An upload only copies the
+ * file and returns a job; the import itself runs on a dedicated worker and its
+ * progress can be polled with {@link #findJob(String)}.
+ */
+@Singleton
+public class PesticideImportService {
+
+    private static final Logger.ALogger logger = Logger.of(PesticideImportService.class);
+
+    /**
+     * How long finished jobs stay available for polling
+     */
+    private static final Duration FINISHED_JOB_RETENTION = Duration.ofHours(1);
+
+    private final PesticideRepository pesticideRepository;
+    private final PesticideCsvParser pesticideCsvParser;
+    private final PesticideImportExecutionContext executionContext;
+    private final PesticideParseExecutionContext parseExecutionContext;
+    private final int batchSize;
+    private final int parseParallelism;
+    private final int maxPendingJobs;
+
+    private final Map<String, PesticideImportJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingJobs = new AtomicInteger();
+
+    @Inject
+    public PesticideImportService(PesticideRepository pesticideRepository,
+                                  PesticideCsvParser pesticideCsvParser,
+                                  PesticideImportExecutionContext executionContext,
+                                  PesticideParseExecutionContext parseExecutionContext,
+                                  Config config) {
+        this.pesticideRepository = pesticideRepository;
+        this.pesticideCsvParser = pesticideCsvParser;
+        this.executionContext = executionContext;
+        this.parseExecutionContext = parseExecutionContext;
+        this.batchSize = config.getInt("pesticide.import.batchSize");
+        this.parseParallelism = config.getInt("pesticide.import.parseParallelism");
+        this.maxPendingJobs = config.getInt("pesticide.import.maxPendingJobs");
+    }
+
+    /**
+     * Queue the import of uploaded ZIP files. The files are copied first, because the
+     * uploaded temporary files are removed once the request has completed. All files
+     * are imported as one job, so that a dataset split across several archives is
+     * replaced in one step.
+     *
+     * @param uploadedFiles Paths of the uploaded ZIP files
+     * @param fileName      Original file names, for display
+     * @param mode          Whether to replace the current dataset, append to it or apply the differences
+     * @return The queued job
+     * @throws RejectedExecutionException if too many imports are already queued or running
+     */
+    public PesticideImportJob submit(List<Path> uploadedFiles, String fileName, PesticideImportJob.Mode mode) throws IOException {
+        if (pendingJobs.incrementAndGet() > maxPendingJobs) {
+            pendingJobs.decrementAndGet();
+            throw new RejectedExecutionException("Too many pesticide imports are queued");
+        }
+
+        List<Path> jobFiles = new ArrayList<>();
+        long totalSize = 0;
+        try {
+            for (Path uploadedFile : uploadedFiles) {
+                Path jobFile = Files.createTempFile("pesticide-import-", ".zip");
+                jobFiles.add(jobFile);
+                Files.copy(uploadedFile, jobFile, StandardCopyOption.REPLACE_EXISTING);
+                totalSize += Files.size(jobFile);
+            }
+        } catch (IOException e) {
+            pendingJobs.decrementAndGet();
+            deleteFiles(jobFiles);
+            throw e;
+        }
+
+        PesticideImportJob job = new PesticideImportJob(fileName, totalSize, mode);
+        removeExpiredJobs();
+        jobs.put(job.getId(), job);
+
+        PesticideRowSource source = sink -> {
+            job.markRunning();
+            long offset = 0;
+            for (Path jobFile : jobFiles) {
+                pesticideCsvParser.parseZip(jobFile, sink, job.withByteOffset(offset), parseExecutionContext, parseParallelism);
+                offset += Files.size(jobFile);
+            }
+        };
+        CompletionStage<Integer> load;
+        switch (mode) {
+            case REPLACE:
+                load = pesticideRepository.replaceStreaming(source, batchSize, job::rowsInserted, executionContext);
+                break;
+            case INCREMENTAL:
+                load = pesticideRepository.applyIncremental(source, batchSize, job::rowsInserted, executionContext)
+                        .thenApply(diff -> {
+                            logger.info("Pesticide import " + job.getId() + " applied changes: " + diff);
+                            job.diffApplied(diff);
+                            return diff.getChanged();
+                        });
+                break;
+            default:
+                load = pesticideRepository.insertStreaming(source, batchSize, job::rowsInserted, executionContext);
+                break;
+        }
+
+        load.whenComplete((written, throwable) -> {
+            if (throwable != null) {
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                        ? throwable.getCause() : throwable;
+                logger.error("Pesticide import " + job.getId() + " failed", cause);
+                job.markFailed(cause.getMessage());
+            } else {
+                logger.info("Pesticide import " + job.getId() + " completed: " + written + " rows written");
+                job.markCompleted();
+            }
+            pendingJobs.decrementAndGet();
+            deleteFiles(jobFiles);
+            if (mode != PesticideImportJob.Mode.APPEND) {
+                dropRetiredDatasets();
+            }
+        });
+
+        return job;
+    }
+
+    public Optional<PesticideImportJob> findJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * Drop the tables of replaced or failed datasets in the background, on the import worker
+     */
+    private void dropRetiredDatasets() {
+        pesticideRepository.dropRetiredDatasets(executionContext).whenComplete((dropped, throwable) -> {
+            if (throwable != null) {
+                logger.warn("Failed to drop retired pesticide datasets", throwable);
+            } else if (dropped > 0) {
+                logger.info("Dropped " + dropped + " retired pesticide dataset tables");
+            }
+        });
+    }
+
+    private void deleteFiles(List<Path> files) {
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.warn("Failed to delete import file " + file, e);
+            }
+        }
+    }
+
+    private void removeExpiredJobs() {
+        Instant threshold = Instant.now().minus(FINISHED_JOB_RETENTION);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(threshold));
+    }
+}
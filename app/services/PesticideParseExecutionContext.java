@@ -0,0 +1,20 @@
+package services;
+
+import org.apache.pekko.actor.ActorSystem;
+import play.libs.concurrent.CustomExecutionContext;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Custom execution context for decoding the CSV entries of an uploaded pesticide
+ * archive in parallel, while the import worker writes the rows to the database.
+ */
+@Singleton
+public class PesticideParseExecutionContext extends CustomExecutionContext {
+
+    @Inject
+    public PesticideParseExecutionContext(ActorSystem actorSystem) {
+        super(actorSystem, "pesticide-parse.dispatcher");
+    }
+}
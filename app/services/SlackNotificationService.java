@@ -7,6 +7,7 @@ import models.User;
 import play.libs.ws.WSClient;
 import play.libs.ws.WSResponse;
 import play.mvc.Http;
+import utils.ClientAddress;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -122,7 +123,7 @@ public class SlackNotificationService {
             ObjectNode requestField = objectMapper.createObjectNode();
             requestField.put("title", "リクエスト情報");
             requestField.put("value", String.format("IP: %s\nUser-Agent: %s", 
-                getClientIpAddress(request), 
+                ClientAddress.of(request), 
                 request.header("User-Agent").orElse("Unknown")));
             requestField.put("short", true);
             
@@ -155,25 +156,4 @@ public class SlackNotificationService {
             return CompletableFuture.completedFuture(false);
         }
     }
-    
-    /**
-     * Extract client IP address from request
-     */
-    private String getClientIpAddress(Http.Request request) {
-        // Check for X-Forwarded-For header (common in load balancers)
-        String xForwardedFor = request.header("X-Forwarded-For").orElse(null);
-        if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
-            // X-Forwarded-For can contain multiple IPs, get the first one
-            return xForwardedFor.split(",")[0].trim();
-        }
-        
-        // Check for X-Real-IP header
-        String xRealIp = request.header("X-Real-IP").orElse(null);
-        if (xRealIp != null && !xRealIp.isEmpty()) {
-            return xRealIp;
-        }
-        
-        // Fall back to remote address
-        return request.remoteAddress();
-    }
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+package utils;
+
+import play.mvc.Http;
+
+/**
+ * The address of the client of a request behind a load balancer, for display. The
+ * headers it is read from are sent by the client, so it must not be used for limits;
+ * use {@link Http.Request#remoteAddress()} with trusted proxies there.
+ */
+public final class ClientAddress {
+
+    private ClientAddress() {
+    }
+
+    /**
+     * Extract client IP address from request
+     */
+    public static String of(Http.Request request) {
+        // Check for X-Forwarded-For header (common in load balancers)
+        String xForwardedFor = request.header("X-Forwarded-For").orElse(null);
+        if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
+            // X-Forwarded-For can contain multiple IPs, get the first one
+            return xForwardedFor.split(",")[0].trim();
+        }
+        
+        // Check for X-Real-IP header
+        String xRealIp = request.header("X-Real-IP").orElse(null);
+        if (xRealIp != null && !xRealIp.isEmpty()) {
+            return xRealIp;
+        }
+        
+        // Fall back to remote address
+        return request.remoteAddress();
+    }
+}
@@ -0,0 +1,254 @@
+package utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * RFC 4180 CSV tokenizer that reads records from a reader through a reusable char
+ * buffer. Quoted fields may contain commas, line breaks and doubled quotes. Unquoted
+ * fields are trimmed, and records may end with CRLF, LF or CR.
+ *
+ * Apart from the field values themselves nothing is allocated per record. Columns
+ * whose values repeat across many records can be interned, in which case a value
+ * seen before is returned without creating a new String at all.
+ *
+ * Instances are not thread safe.
+ */
+public class CsvTokenizer {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Longer field values are cut off, so that a missing closing quote cannot make a
+     * single field swallow the rest of the file
+     */
+    private static final int MAX_FIELD_LENGTH = 64 * 1024;
+
+    private static final int EOF = -1;
+
+    private final Reader reader;
+    private final boolean[] internedColumns;
+    private final Interner interner = new Interner();
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private char[] field = new char[256];
+    private int fieldLength;
+
+    private String[] fields = new String[32];
+    private int fieldCount;
+
+    /**
+     * @param reader          Reader supplying the CSV text
+     * @param internedColumns Indexes of the columns whose values are interned
+     */
+    public CsvTokenizer(Reader reader, int... internedColumns) {
+        this.reader = reader;
+        int size = Arrays.stream(internedColumns).max().orElse(-1) + 1;
+        this.internedColumns = new boolean[size];
+        for (int column : internedColumns) {
+            this.internedColumns[column] = true;
+        }
+    }
+
+    /**
+     * Read the next record.
+     *
+     * @return false at the end of the input
+     */
+    public boolean next() throws IOException {
+        fieldCount = 0;
+        if (peek() == EOF) {
+            return false;
+        }
+        int terminator;
+        do {
+            terminator = readField();
+            addField();
+        } while (terminator == ',');
+        return true;
+    }
+
+    /**
+     * Number of fields of the current record
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Fields of the current record. The array is reused for the next record and may
+     * be longer than {@link #getFieldCount()}.
+     */
+    public String[] getFields() {
+        return fields;
+    }
+
+    /**
+     * Read one field into the field buffer.
+     *
+     * @return The character ending the field: ',' or '\n', or {@link #EOF}
+     */
+    private int readField() throws IOException {
+        fieldLength = 0;
+        int c = read();
+        while (c == ' ' || c == '\t') {
+            c = read();
+        }
+
+        if (c == '"') {
+            while (true) {
+                c = read();
+                if (c == EOF) {
+                    break;
+                }
+                if (c == '"') {
+                    c = read();
+                    if (c != '"') {
+                        break;
+                    }
+                }
+                append(c);
+            }
+            // Anything between the closing quote and the delimiter is malformed and ignored
+            while (c != EOF && c != ',' && c != '\n' && c != '\r') {
+                c = read();
+            }
+        } else {
+            while (c != EOF && c != ',' && c != '\n' && c != '\r') {
+                append(c);
+                c = read();
+            }
+            while (fieldLength > 0 && field[fieldLength - 1] <= ' ') {
+                fieldLength--;
+            }
+        }
+
+        if (c == '\r') {
+            if (peek() == '\n') {
+                read();
+            }
+            c = '\n';
+        }
+        return c;
+    }
+
+    private void addField() {
+        if (fieldCount == fields.length) {
+            fields = Arrays.copyOf(fields, fields.length * 2);
+        }
+        String value;
+        if (fieldLength == 0) {
+            value = "";
+        } else if (fieldCount < internedColumns.length && internedColumns[fieldCount]) {
+            value = interner.intern(field, fieldLength);
+        } else {
+            value = new String(field, 0, fieldLength);
+        }
+        fields[fieldCount++] = value;
+    }
+
+    private void append(int c) {
+        if (fieldLength == field.length) {
+            if (fieldLength >= MAX_FIELD_LENGTH) {
+                return;
+            }
+            field = Arrays.copyOf(field, Math.min(field.length * 2, MAX_FIELD_LENGTH));
+        }
+        field[fieldLength++] = (char) c;
+    }
+
+    private int read() throws IOException {
+        if (position >= limit && !fill()) {
+            return EOF;
+        }
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException {
+        if (position >= limit && !fill()) {
+            return EOF;
+        }
+        return buffer[position];
+    }
+
+    private boolean fill() throws IOException {
+        int read = reader.read(buffer, 0, buffer.length);
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+
+    /**
+     * Open addressing table of Strings that can be looked up by a char range, so that
+     * a hit does not allocate. The table stops growing at a fixed number of values, in
+     * case a column turns out not to be repetitive after all.
+     */
+    private static class Interner {
+
+        private static final int MAX_VALUES = 8192;
+
+        private String[] table = new String[1024];
+        private int size;
+
+        String intern(char[] chars, int length) {
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + chars[i];
+            }
+            int mask = table.length - 1;
+            int index = spread(hash) & mask;
+            String candidate;
+            while ((candidate = table[index]) != null) {
+                if (matches(candidate, chars, length)) {
+                    return candidate;
+                }
+                index = (index + 1) & mask;
+            }
+
+            String value = new String(chars, 0, length);
+            if (size < MAX_VALUES) {
+                table[index] = value;
+                if (++size * 2 > table.length) {
+                    grow();
+                }
+            }
+            return value;
+        }
+
+        private void grow() {
+            String[] old = table;
+            table = new String[old.length * 2];
+            int mask = table.length - 1;
+            for (String value : old) {
+                if (value != null) {
+                    // String.hashCode uses the same formula as intern
+                    int index = spread(value.hashCode()) & mask;
+                    while (table[index] != null) {
+                        index = (index + 1) & mask;
+                    }
+                    table[index] = value;
+                }
+            }
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean matches(String value, char[] chars, int length) {
+            if (value.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (value.charAt(i) != chars[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
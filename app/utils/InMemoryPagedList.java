@@ -0,0 +1,91 @@
+package utils;
+
+import io.ebean.PagedList;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * A page of results that was computed without a database query, with the same
+ * navigation methods as the paged lists returned by Ebean, so list views can render
+ * either.
+ *
+ * @param <T> Type of the listed beans
+ */
+public class InMemoryPagedList<T> implements PagedList<T> {
+
+    private final List<T> list;
+    private final int pageIndex;
+    private final int pageSize;
+    private final int totalCount;
+
+    /**
+     * @param list       Beans of the page
+     * @param pageIndex  Index of the page, starting at 0
+     * @param pageSize   Maximum number of beans per page
+     * @param totalCount Number of beans over all pages
+     */
+    public InMemoryPagedList(List<T> list, int pageIndex, int pageSize, int totalCount) {
+        this.list = list;
+        this.pageIndex = pageIndex;
+        this.pageSize = pageSize;
+        this.totalCount = totalCount;
+    }
+
+    @Override
+    public void loadCount() {
+        // The total count is always known
+    }
+
+    @Override
+    public Future<Integer> getFutureCount() {
+        return CompletableFuture.completedFuture(totalCount);
+    }
+
+    @Override
+    public List<T> getList() {
+        return list;
+    }
+
+    @Override
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    @Override
+    public int getTotalPageCount() {
+        return pageSize > 0 ? (totalCount + pageSize - 1) / pageSize : 0;
+    }
+
+    @Override
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    @Override
+    public int getPageIndex() {
+        return pageIndex;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return (long) (pageIndex + 1) * pageSize < totalCount;
+    }
+
+    @Override
+    public boolean hasPrev() {
+        return pageIndex > 0;
+    }
+
+    @Override
+    public String getDisplayXtoYofZ(String to, String of) {
+        int first = pageIndex * pageSize + 1;
+        int last = pageIndex * pageSize + list.size();
+        if (last < first) {
+            first = 0;
+            last = 0;
+        }
+        return first + to + last + of + totalCount;
+    }
+}
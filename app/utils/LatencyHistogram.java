@@ -0,0 +1,65 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts durations into fixed buckets, for a Prometheus histogram. Recording is
+ * lock-free, so it can be done on every request.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Upper bounds of the buckets in seconds, from a millisecond to ten seconds
+     */
+    private static final double[] BOUNDS = {0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        double seconds = nanos / 1e9;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            if (seconds <= BOUNDS[i]) {
+                buckets[i].increment();
+                break;
+            }
+        }
+        count.increment();
+        sumNanos.add(nanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Write the samples of the histogram, after {@link PrometheusText#metric} was
+     * called with the type "histogram"
+     *
+     * @param labels Names and values of the labels, alternately
+     */
+    public void writeTo(PrometheusText text, String name, String... labels) {
+        String[] bucketLabels = Arrays.copyOf(labels, labels.length + 2);
+        bucketLabels[labels.length] = "le";
+        long cumulative = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            cumulative += buckets[i].sum();
+            bucketLabels[labels.length + 1] = Double.toString(BOUNDS[i]);
+            text.sample(name + "_bucket", cumulative, bucketLabels);
+        }
+        // Read once, so the +Inf bucket and the count agree
+        long total = count.sum();
+        bucketLabels[labels.length + 1] = "+Inf";
+        text.sample(name + "_bucket", Math.max(total, cumulative), bucketLabels);
+        text.sample(name + "_sum", sumNanos.sum() / 1e9, labels);
+        text.sample(name + "_count", Math.max(total, cumulative), labels);
+    }
+}
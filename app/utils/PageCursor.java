@@ -0,0 +1,161 @@
+package utils;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Optional;
+
+/**
+ * Position in a sorted list for keyset pagination: the sort key and id of the row
+ * next to the requested page. The page after a cursor starts behind that row, the
+ * page before a backward cursor ends in front of it. Instead of skipping the rows of
+ * all previous pages like an offset, the database seeks to the position with the
+ * index of the sort column.
+ *
+ * Cursors are passed through URLs as opaque strings. A cursor only applies to the
+ * sort it was created for.
+ */
+public final class PageCursor {
+
+    /**
+     * List pages up to this index are addressed by offset, deeper pages by cursor
+     */
+    public static final int MAX_OFFSET_PAGES = 5;
+
+    private static final String SEPARATOR = "\u001f";
+
+    private final String sortBy;
+    private final boolean descending;
+    private final boolean backward;
+    private final Object value;
+    private final long id;
+
+    /**
+     * @param sortBy     Property the list is sorted by
+     * @param descending Whether the list is sorted in descending order
+     * @param backward   Whether the cursor points to the page before the row
+     * @param value      Sort key of the row, may be null
+     * @param id         Id of the row
+     */
+    public PageCursor(String sortBy, boolean descending, boolean backward, Object value, long id) {
+        this.sortBy = sortBy;
+        this.descending = descending;
+        this.backward = backward;
+        this.value = value;
+        this.id = id;
+    }
+
+    public String getSortBy() {
+        return sortBy;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public boolean isBackward() {
+        return backward;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Whether the cursor was created for the given sort
+     */
+    public boolean matches(String sortBy, boolean descending) {
+        return this.sortBy.equals(sortBy) && this.descending == descending;
+    }
+
+    public String encode() {
+        String text = String.join(SEPARATOR, sortBy, descending ? "d" : "a", backward ? "b" : "f", encodeValue(value), Long.toString(id));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return The decoded cursor, or empty if the text is empty or not a valid cursor
+     */
+    public static Optional<PageCursor> decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            String text = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = text.split(SEPARATOR, -1);
+            if (parts.length != 5) {
+                return Optional.empty();
+            }
+            return Optional.of(new PageCursor(parts[0], "d".equals(parts[1]), "b".equals(parts[2]),
+                    decodeValue(parts[3]), Long.parseLong(parts[4])));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            // NumberFormatException is an IllegalArgumentException as well
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Sort keys are stored with a type tag, so that they are bound with the type of the
+     * sort column again
+     */
+    private static String encodeValue(Object value) {
+        if (value == null) {
+            return "n";
+        } else if (value instanceof String) {
+            return "s" + value;
+        } else if (value instanceof LocalDate) {
+            return "d" + value;
+        } else if (value instanceof LocalTime) {
+            return "t" + value;
+        } else if (value instanceof LocalDateTime) {
+            return "m" + value;
+        } else if (value instanceof Date) {
+            return "u" + ((Date) value).getTime();
+        } else if (value instanceof BigDecimal) {
+            return "b" + ((BigDecimal) value).toPlainString();
+        } else if (value instanceof Double) {
+            return "f" + value;
+        } else if (value instanceof Long || value instanceof Integer) {
+            return "l" + value;
+        }
+        throw new IllegalArgumentException("Unsupported sort key type " + value.getClass().getName());
+    }
+
+    private static Object decodeValue(String text) {
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Missing sort key");
+        }
+        String value = text.substring(1);
+        switch (text.charAt(0)) {
+            case 'n':
+                return null;
+            case 's':
+                return value;
+            case 'd':
+                return LocalDate.parse(value);
+            case 't':
+                return LocalTime.parse(value);
+            case 'm':
+                return LocalDateTime.parse(value);
+            case 'u':
+                return new Date(Long.parseLong(value));
+            case 'b':
+                return new BigDecimal(value);
+            case 'f':
+                return Double.valueOf(value);
+            case 'l':
+                return Long.valueOf(value);
+            default:
+                throw new IllegalArgumentException("Unknown sort key type " + text.charAt(0));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package utils;
+
+/**
+ * Writes metrics in the Prometheus text exposition format.
+ *
+ * @link https://prometheus.io/docs/instrumenting/exposition_formats/
+ */
+public final class PrometheusText {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final StringBuilder text = new StringBuilder();
+
+    /**
+     * Start a metric, before its samples
+     *
+     * @param type "counter", "gauge" or "histogram"
+     */
+    public PrometheusText metric(String name, String type, String help) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+    /**
+     * @param labels Names and values of the labels, alternately
+     */
+    public PrometheusText sample(String name, long value, String... labels) {
+        return sample(name, Long.toString(value), labels);
+    }
+
+    /**
+     * @param labels Names and values of the labels, alternately
+     */
+    public PrometheusText sample(String name, double value, String... labels) {
+        return sample(name, Double.isInfinite(value) ? (value > 0 ? "+Inf" : "-Inf") : Double.toString(value), labels);
+    }
+
+    private PrometheusText sample(String name, String value, String... labels) {
+        text.append(name);
+        if (labels.length > 0) {
+            text.append('{');
+            for (int i = 0; i + 1 < labels.length; i += 2) {
+                if (i > 0) {
+                    text.append(',');
+                }
+                text.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+            }
+            text.append('}');
+        }
+        text.append(' ').append(value).append('\n');
+        return this;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+}
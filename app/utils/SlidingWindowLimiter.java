@@ -0,0 +1,106 @@
+package utils;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Counts attempts per key over the last window of time, e.g. logins per client address,
+ * and refuses attempts beyond a limit. The times of the allowed attempts in the window
+ * are kept per key, so a key never holds more than its limit. The keys are spread over
+ * stripes with a lock each, so attempts of different keys rarely wait for each other.
+ */
+public final class SlidingWindowLimiter {
+
+    /**
+     * Keys of a stripe above which the keys without attempts in the window are first dropped
+     */
+    private static final int SWEEP_THRESHOLD = 256;
+
+    private final long windowNanos;
+    private final LongSupplier clock;
+    private final Stripe[] stripes;
+
+    /**
+     * @param clock Current time in nanoseconds, e.g. {@code System::nanoTime}
+     */
+    public SlidingWindowLimiter(long windowNanos, int stripes, LongSupplier clock) {
+        this.windowNanos = windowNanos;
+        this.clock = clock;
+        this.stripes = new Stripe[Math.max(1, stripes)];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Record an attempt of a key, if it had fewer than {@code limit} attempts in the window
+     *
+     * @return Whether the attempt is allowed
+     */
+    public boolean tryAcquire(String key, int limit) {
+        Stripe stripe = stripes[Math.floorMod(key.hashCode(), stripes.length)];
+        long now = clock.getAsLong();
+        synchronized (stripe) {
+            ArrayDeque<Long> attempts = stripe.attempts.computeIfAbsent(key, k -> new ArrayDeque<>());
+            expire(attempts, now);
+            if (attempts.size() >= limit) {
+                return false;
+            }
+            attempts.addLast(now);
+            if (stripe.attempts.size() > stripe.sweepAt) {
+                sweep(stripe, now);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Forget the attempts of a key, e.g. after a successful login
+     */
+    public void reset(String key) {
+        Stripe stripe = stripes[Math.floorMod(key.hashCode(), stripes.length)];
+        synchronized (stripe) {
+            stripe.attempts.remove(key);
+        }
+    }
+
+    private void expire(ArrayDeque<Long> attempts, long now) {
+        while (!attempts.isEmpty() && now - attempts.peekFirst() >= windowNanos) {
+            attempts.removeFirst();
+        }
+    }
+
+    private void sweep(Stripe stripe, long now) {
+        Iterator<ArrayDeque<Long>> iterator = stripe.attempts.values().iterator();
+        while (iterator.hasNext()) {
+            ArrayDeque<Long> attempts = iterator.next();
+            expire(attempts, now);
+            if (attempts.isEmpty()) {
+                iterator.remove();
+            }
+        }
+        // Sweep again once the keys doubled, so that many active keys are not swept on every attempt
+        stripe.sweepAt = Math.max(SWEEP_THRESHOLD, stripe.attempts.size() * 2);
+    }
+
+    /**
+     * Number of keys with attempts held in memory
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.attempts.size();
+            }
+        }
+        return size;
+    }
+
+    private static final class Stripe {
+        final Map<String, ArrayDeque<Long>> attempts = new HashMap<>();
+        int sweepAt = SWEEP_THRESHOLD;
+    }
+}
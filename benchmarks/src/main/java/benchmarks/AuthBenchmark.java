@@ -0,0 +1,61 @@
+package benchmarks;
+
+import models.User;
+import org.mindrot.jbcrypt.BCrypt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import services.PasswordStrengthService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of the password checks done by login, registration and password reset
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthBenchmark {
+
+    /**
+     * Default auth.passwordHashing.minCost
+     */
+    private static final int MIN_COST = 10;
+
+    /**
+     * A weak dictionary password, a typical user password and a long passphrase
+     */
+    @Param({"password1", "Tomato-2024!", "correct horse battery staple tomato field"})
+    public String password;
+
+    private final PasswordStrengthService passwordStrengthService = new PasswordStrengthService();
+
+    private User user;
+
+    @Setup
+    public void setUp() {
+        user = new User();
+        user.setPasswordHash(BCrypt.hashpw(password, BCrypt.gensalt(MIN_COST)));
+    }
+
+    @Benchmark
+    public boolean checkPassword() {
+        return user.checkPassword(password);
+    }
+
+    @Benchmark
+    public boolean isPasswordStrong() {
+        return passwordStrengthService.isPasswordStrong(password);
+    }
+}
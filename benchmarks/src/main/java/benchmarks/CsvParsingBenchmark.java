@@ -0,0 +1,124 @@
+package benchmarks;
+
+import models.PesticideRegistration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import services.PesticideCsvParser;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Rows per second of the pesticide CSV parser, compared with the former
+ * {@code String.split} based implementation. Run with {@code -prof gc} to see the
+ * bytes allocated per row in {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(CsvParsingBenchmark.ROWS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvParsingBenchmark {
+
+    static final int ROWS = 20_000;
+
+    private final PesticideCsvParser parser = new PesticideCsvParser();
+
+    private byte[] csv;
+
+    @Setup
+    public void setUp() {
+        csv = PesticideDataset.csv(ROWS, PesticideDataset.DEFAULT_SEED).getBytes(PesticideCsvParser.CHARSET);
+    }
+
+    @Benchmark
+    public int tokenizer(Blackhole blackhole) throws IOException {
+        return parser.parseCsv(new ByteArrayInputStream(csv), blackhole::consume);
+    }
+
+    @Benchmark
+    public int split(Blackhole blackhole) throws IOException {
+        return SplitParser.parseCsv(new ByteArrayInputStream(csv), blackhole::consume);
+    }
+
+    /**
+     * The line based parser used before the tokenizer, kept as a baseline. It does not
+     * handle quoted commas or line breaks.
+     */
+    static final class SplitParser {
+
+        static int parseCsv(InputStream in, Consumer<PesticideRegistration> sink) throws IOException {
+            int rows = 0;
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, PesticideCsvParser.CHARSET));
+            String line;
+            boolean isFirstLine = true;
+
+            while ((line = reader.readLine()) != null) {
+                if (isFirstLine) {
+                    isFirstLine = false;
+                    continue;
+                }
+                String[] fields = line.split(",", -1);
+                if (fields.length < 10) {
+                    continue;
+                }
+                PesticideRegistration pesticide = new PesticideRegistration();
+                pesticide.setRegistrationNumber(cleanField(fields[0]));
+                pesticide.setUsage(cleanField(fields[1]));
+                pesticide.setPesticideType(cleanField(fields[2]));
+                pesticide.setPesticideName(cleanField(fields[3]));
+                pesticide.setAbbreviation(cleanField(fields[4]));
+                pesticide.setCropName(cleanField(fields[5]));
+                pesticide.setApplicationLocation(cleanField(fields[6]));
+                pesticide.setTargetPestDisease(cleanField(fields[7]));
+                pesticide.setPurpose(cleanField(fields[8]));
+                pesticide.setDilutionAmount(cleanField(fields[9]));
+                if (fields.length >= 25) {
+                    pesticide.setSprayVolume(cleanField(fields[10]));
+                    pesticide.setUsageTime(cleanField(fields[11]));
+                    pesticide.setMainAgentUsageCount(cleanField(fields[12]));
+                    pesticide.setUsageMethod(cleanField(fields[13]));
+                    pesticide.setFumigationTime(cleanField(fields[14]));
+                    pesticide.setFumigationTemperature(cleanField(fields[15]));
+                    pesticide.setApplicableSoil(cleanField(fields[16]));
+                    pesticide.setApplicableZoneName(cleanField(fields[17]));
+                    pesticide.setApplicablePesticideName(cleanField(fields[18]));
+                    pesticide.setMixtureCount(cleanField(fields[19]));
+                    pesticide.setActiveIngredient1TotalUsage(cleanField(fields[20]));
+                    pesticide.setActiveIngredient2TotalUsage(cleanField(fields[21]));
+                    pesticide.setActiveIngredient3TotalUsage(cleanField(fields[22]));
+                    pesticide.setActiveIngredient4TotalUsage(cleanField(fields[23]));
+                    pesticide.setActiveIngredient5TotalUsage(cleanField(fields[24]));
+                }
+                sink.accept(pesticide);
+                rows++;
+            }
+            return rows;
+        }
+
+        private static String cleanField(String field) {
+            field = field.trim();
+            if (field.length() >= 2 && field.startsWith("\"") && field.endsWith("\"")) {
+                field = field.substring(1, field.length() - 1);
+            }
+            return field;
+        }
+    }
+}
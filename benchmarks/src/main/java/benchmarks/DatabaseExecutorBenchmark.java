@@ -0,0 +1,89 @@
+package benchmarks;
+
+import models.Crop;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import repositoryies.CompanyRepository;
+import repositoryies.CropRepository;
+import repositoryies.KeysetPage;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of list and edit form queries from many concurrent requests, with the
+ * repository operations running on database.dispatcher or on virtual threads. Virtual
+ * threads need Java 21; on older runtimes both modes measure the dispatcher.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class DatabaseExecutorBenchmark {
+
+    @Param({"dispatcher", "virtual-threads"})
+    public String executor;
+
+    @Param({"500"})
+    public int crops;
+
+    private DatabaseFixture fixture;
+    private CropRepository cropRepository;
+    private CompanyRepository companyRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = DatabaseFixture.start(0, crops, Map.of(
+            "database.executor", executor,
+            // Read the options from the database on every request
+            "options.cache.ttl", "0s"));
+        cropRepository = fixture.instanceOf(CropRepository.class);
+        companyRepository = fixture.instanceOf(CompanyRepository.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    /**
+     * A page of the crop list, like {@code CropController.list}
+     */
+    @Benchmark
+    public int listPage() {
+        int page = ThreadLocalRandom.current().nextInt(crops / 10);
+        KeysetPage<Crop> list = cropRepository
+            .pageByUser(page, 10, "name", "asc", "", "", fixture.getUserId())
+            .toCompletableFuture().join();
+        return list.getList().size();
+    }
+
+    /**
+     * The crop and the company options of the edit form, like {@code CropController.edit}
+     */
+    @Benchmark
+    public int editForm() {
+        long id = ThreadLocalRandom.current().nextLong(1, crops + 1);
+        CompletableFuture<Map<String, String>> companies = companyRepository.options().toCompletableFuture();
+        Optional<Crop> crop = cropRepository.lookupByUser(id, fixture.getUserId()).toCompletableFuture().join();
+        return companies.join().size() + (crop.isPresent() ? 1 : 0);
+    }
+}
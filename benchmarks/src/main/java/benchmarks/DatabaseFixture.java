@@ -0,0 +1,144 @@
+package benchmarks;
+
+import io.ebean.DB;
+import models.Crop;
+import models.PesticideRegistration;
+import models.User;
+import org.mindrot.jbcrypt.BCrypt;
+import play.Application;
+import play.inject.guice.GuiceApplicationBuilder;
+import repositoryies.PesticideRepository;
+import services.PesticideCsvParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Starts the application against a benchmark database and fills it with generated
+ * data. An in-memory H2 database is used by default; set {@code BENCHMARK_DB_URL},
+ * {@code BENCHMARK_DB_USERNAME} and {@code BENCHMARK_DB_PASSWORD} (or the system
+ * properties {@code benchmark.db.url} etc. of the forked JVM) to run against a local
+ * PostgreSQL instead, which is the database the query benchmarks are meant for.
+ * The PostgreSQL database must be empty, its schema is created by the evolutions.
+ */
+public final class DatabaseFixture implements AutoCloseable {
+
+    private static final String[] CROP_NAMES = {"トマト", "きゅうり", "なす", "いちご", "水稲", "キャベツ", "だいず", "小麦", "Apple", "Orange"};
+
+    private final Application app;
+    private final Long userId;
+
+    private DatabaseFixture(Application app, Long userId) {
+        this.app = app;
+        this.userId = userId;
+    }
+
+    /**
+     * Start the application and load the generated data.
+     *
+     * @param pesticides Number of pesticide registrations
+     * @param crops      Number of crops of the benchmark user
+     */
+    public static DatabaseFixture start(int pesticides, int crops) {
+        return start(pesticides, crops, Map.of());
+    }
+
+    /**
+     * Start the application with additional configuration and load the generated data.
+     *
+     * @param configuration Settings overriding the application configuration
+     */
+    public static DatabaseFixture start(int pesticides, int crops, Map<String, Object> configuration) {
+        String url = setting("benchmark.db.url", "jdbc:h2:mem:benchmarks;DB_CLOSE_DELAY=-1");
+        GuiceApplicationBuilder builder = new GuiceApplicationBuilder()
+            .configure("play.evolutions.db.default.enabled", "true")
+            .configure("play.evolutions.db.default.autoApply", "true")
+            .configure("db.default.url", url)
+            .configure("db.default.driver", url.startsWith("jdbc:h2:") ? "org.h2.Driver" : "org.postgresql.Driver")
+            .configure("db.default.logSql", "false")
+            .configure(configuration);
+        String username = setting("benchmark.db.username", null);
+        if (username != null) {
+            builder = builder
+                .configure("db.default.username", username)
+                .configure("db.default.password", setting("benchmark.db.password", ""));
+        }
+        Application app = builder.build();
+        play.api.Play.start(app.asScala());
+
+        DatabaseFixture fixture = new DatabaseFixture(app, createUser());
+        fixture.loadPesticides(pesticides);
+        fixture.loadCrops(crops);
+        return fixture;
+    }
+
+    public <T> T instanceOf(Class<T> type) {
+        return app.injector().instanceOf(type);
+    }
+
+    /**
+     * Id of the user owning the generated crops
+     */
+    public Long getUserId() {
+        return userId;
+    }
+
+    @Override
+    public void close() {
+        play.api.Play.stop(app.asScala());
+    }
+
+    /**
+     * Read a setting from a system property, or else from the environment variable of
+     * the same name in upper case with underscores, which also reaches forked JVMs
+     */
+    private static String setting(String name, String defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            value = System.getenv(name.toUpperCase().replace('.', '_'));
+        }
+        return value != null ? value : defaultValue;
+    }
+
+    private static Long createUser() {
+        User user = new User();
+        user.setUsername("benchmark");
+        user.setEmail("benchmark@example.com");
+        user.setPasswordHash(BCrypt.hashpw("benchmark-password", BCrypt.gensalt(4)));
+        DB.insert(user);
+        return user.getId();
+    }
+
+    private void loadPesticides(int rows) {
+        byte[] csv = PesticideDataset.csv(rows, PesticideDataset.DEFAULT_SEED).getBytes(PesticideCsvParser.CHARSET);
+        List<PesticideRegistration> registrations = new ArrayList<>(rows);
+        try {
+            new PesticideCsvParser().parseCsv(new ByteArrayInputStream(csv), registrations::add);
+            instanceOf(PesticideRepository.class).insertAll(registrations).toCompletableFuture().get();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Failed to load pesticide registrations", e);
+        }
+    }
+
+    private void loadCrops(int count) {
+        Random random = new Random(PesticideDataset.DEFAULT_SEED);
+        User user = DB.find(User.class, userId);
+        List<Crop> crops = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Crop crop = new Crop();
+            crop.setId((long) (i + 1));
+            crop.setName(CROP_NAMES[random.nextInt(CROP_NAMES.length)] + " " + i);
+            crop.setUser(user);
+            crops.add(crop);
+        }
+        DB.insertAll(crops);
+    }
+}
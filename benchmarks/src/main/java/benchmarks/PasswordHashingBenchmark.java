@@ -0,0 +1,59 @@
+package benchmarks;
+
+import org.mindrot.jbcrypt.BCrypt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of a bcrypt hash and check at each cost, to choose auth.passwordHashing.cost
+ * or targetTime for a machine. Each step of the cost doubles the time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 2)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class PasswordHashingBenchmark {
+
+    private static final String PASSWORD = "Tomato-2024!";
+
+    @Param({"10", "11", "12", "13", "14"})
+    public int cost;
+
+    private String salt;
+    private String hash;
+
+    @Setup
+    public void setUp() {
+        salt = BCrypt.gensalt(cost);
+        hash = BCrypt.hashpw(PASSWORD, salt);
+    }
+
+    /**
+     * Registration and password reset, like {@code PasswordHasher.hash}
+     */
+    @Benchmark
+    public String hash() {
+        return BCrypt.hashpw(PASSWORD, salt);
+    }
+
+    /**
+     * Login, like {@code PasswordHasher.check}
+     */
+    @Benchmark
+    public boolean check() {
+        return BCrypt.checkpw(PASSWORD, hash);
+    }
+}
@@ -0,0 +1,75 @@
+package benchmarks;
+
+import java.util.Random;
+
+/**
+ * Generates pesticide registration CSV files shaped like the MAFF download: 25
+ * columns, a few columns with only a handful of distinct values, and some quoted
+ * values containing commas. The same seed always produces the same file, so results
+ * of different runs and machines are comparable.
+ */
+public final class PesticideDataset {
+
+    public static final long DEFAULT_SEED = 20240401L;
+
+    public static final String HEADER = "登録番号,用途,農薬の種類,農薬の名称,略称,作物名,適用場所,適用病害虫雑草名,使用目的,"
+            + "希釈倍数使用量,散布液量,使用時期,本剤の使用回数,使用方法,くん蒸時間,くん蒸温度,適用土壌,適用地帯名,"
+            + "適用農薬名,混合数,有効成分①を含む農薬の総使用回数,有効成分②を含む農薬の総使用回数,"
+            + "有効成分③を含む農薬の総使用回数,有効成分④を含む農薬の総使用回数,有効成分⑤を含む農薬の総使用回数\n";
+
+    private static final String[] USAGES = {"殺虫剤", "殺菌剤", "除草剤", "殺虫殺菌剤", "植物成長調整剤"};
+    private static final String[] TYPES = {"乳剤", "水和剤", "粒剤", "液剤", "フロアブル", "粉剤"};
+    private static final String[] CROPS = {"きゅうり", "トマト", "なす", "いちご", "水稲", "キャベツ", "だいず", "小麦", "かんきつ", "りんご"};
+    private static final String[] LOCATIONS = {"", "", "", "温室", "施設"};
+    private static final String[] TARGETS = {"アブラムシ類", "うどんこ病", "灰色かび病", "ハダニ類", "一年生雑草", "疫病", "コナジラミ類"};
+    private static final String[] PURPOSES = {"", "", "", "着果促進", "倒伏軽減"};
+    private static final String[] DILUTIONS = {"1000倍", "2000倍", "1500倍", "3kg", "100～300ml"};
+    private static final String[] TIMINGS = {"収穫前日まで", "収穫7日前まで", "収穫14日前まで", "植付前"};
+    private static final String[] METHODS = {"散布", "株元散布", "土壌混和", "全面土壌散布"};
+
+    private PesticideDataset() {
+    }
+
+    /**
+     * Generate a CSV file with a header line and the given number of rows
+     */
+    public static String csv(int rows, long seed) {
+        Random random = new Random(seed);
+        StringBuilder csv = new StringBuilder(rows * 200);
+        csv.append(HEADER);
+        for (int i = 0; i < rows; i++) {
+            appendRow(csv, i, random);
+        }
+        return csv.toString();
+    }
+
+    private static void appendRow(StringBuilder csv, int index, Random random) {
+        int registration = 10000 + index / 20;
+        csv.append(registration).append(',')
+           .append(pick(USAGES, random)).append(',')
+           .append(pick(TYPES, random)).append(',');
+        // Some product names contain commas and are quoted in the published files
+        if (random.nextInt(10) == 0) {
+            csv.append("\"テスト剤").append(registration).append(",改\"");
+        } else {
+            csv.append("テスト剤").append(registration);
+        }
+        csv.append(',')
+           .append("テスト").append(registration % 500).append(',')
+           .append(pick(CROPS, random)).append(',')
+           .append(pick(LOCATIONS, random)).append(',')
+           .append(pick(TARGETS, random)).append(',')
+           .append(pick(PURPOSES, random)).append(',')
+           .append(pick(DILUTIONS, random)).append(',')
+           .append(100 + random.nextInt(200)).append("～300L/10a,")
+           .append(pick(TIMINGS, random)).append(',')
+           .append(1 + random.nextInt(4)).append("回以内,")
+           .append(pick(METHODS, random)).append(",,,,,,")
+           .append(random.nextInt(3)).append(',')
+           .append(1 + random.nextInt(4)).append("回以内,,,,\n");
+    }
+
+    private static String pick(String[] values, Random random) {
+        return values[random.nextInt(values.length)];
+    }
+}
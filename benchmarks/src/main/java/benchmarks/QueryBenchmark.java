@@ -0,0 +1,80 @@
+package benchmarks;
+
+import io.ebean.PagedList;
+import models.PesticideRegistration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import repositoryies.CropRepository;
+import repositoryies.PesticideRepository;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of list and option queries through the repositories, including the hop to
+ * the database dispatcher, against a {@link DatabaseFixture}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+
+    /**
+     * Admin filter input: none, a crop name, and part of a registration number
+     */
+    @Param({"", "トマト", "1234"})
+    public String filter;
+
+    @Param({"0", "500"})
+    public int page;
+
+    @Param({"100000"})
+    public int pesticides;
+
+    @Param({"500"})
+    public int crops;
+
+    private DatabaseFixture fixture;
+    private PesticideRepository pesticideRepository;
+    private CropRepository cropRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = DatabaseFixture.start(pesticides, crops);
+        pesticideRepository = fixture.instanceOf(PesticideRepository.class);
+        cropRepository = fixture.instanceOf(CropRepository.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public int pesticidePage() throws ExecutionException, InterruptedException {
+        PagedList<PesticideRegistration> list = pesticideRepository
+            .page(page, 10, "registrationNumber", "asc", filter, "")
+            .toCompletableFuture().get();
+        return list.getTotalCount() + list.getList().size();
+    }
+
+    @Benchmark
+    public Map<String, String> cropOptionsByUser() throws ExecutionException, InterruptedException {
+        return cropRepository.optionsByUser(fixture.getUserId()).toCompletableFuture().get();
+    }
+}
@@ -1,6 +1,3 @@
--- Created by Ebean DDL
--- To stop Ebean DDL generation, remove this comment (both lines) and start using Evolutions
-
 -- !Ups
 
 -- apply changes
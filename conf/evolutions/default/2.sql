@@ -0,0 +1,27 @@
+-- Versioned pesticide registration datasets
+
+-- !Ups
+
+create table pesticide_dataset (
+  id                            bigint generated by default as identity not null,
+  created_at                    timestamp,
+  updated_at                    timestamp,
+  status                        varchar(20) not null,
+  table_name                    varchar(255),
+  row_count                     bigint,
+  activated_at                  timestamp,
+  constraint pk_pesticide_dataset primary key (id)
+);
+
+create index ix_pesticide_dataset_status on pesticide_dataset (status);
+
+create index ix_pesticide_registration_registration_number on pesticide_registration (registration_number);
+
+
+-- !Downs
+
+drop index if exists ix_pesticide_registration_registration_number;
+
+drop index if exists ix_pesticide_dataset_status;
+
+drop table if exists pesticide_dataset cascade;
@@ -0,0 +1,16 @@
+-- Row keys and content hashes for incremental pesticide registration imports
+
+-- !Ups
+
+alter table pesticide_registration add column row_key varchar(64);
+alter table pesticide_registration add column content_hash varchar(64);
+
+create index ix_pesticide_registration_row_key on pesticide_registration (row_key);
+
+
+-- !Downs
+
+drop index if exists ix_pesticide_registration_row_key;
+
+alter table pesticide_registration drop column if exists content_hash;
+alter table pesticide_registration drop column if exists row_key;
@@ -0,0 +1,11 @@
+-- Sequence the ids of new rows are allocated from in blocks of 50
+
+-- !Ups
+
+-- Starts above the ids that were taken from the clock in milliseconds
+create sequence entity_id_seq start with 10000000000000 increment by 50;
+
+
+-- !Downs
+
+drop sequence if exists entity_id_seq;
@@ -0,0 +1,16 @@
+-- Attempts counted by the rate limiter of logins and password resets, when the
+-- counters are shared by all application nodes
+
+-- !Ups
+
+create table rate_limit_counter (
+  counter_key                   varchar(255) not null,
+  window_start                  bigint not null,
+  hits                          integer not null,
+  constraint pk_rate_limit_counter primary key (counter_key, window_start)
+);
+
+
+-- !Downs
+
+drop table if exists rate_limit_counter;
@@ -0,0 +1,88 @@
+/**
+ * Polls the status of a background pesticide import and updates the progress card
+ * on the upload page until the import has finished.
+ */
+(function() {
+    'use strict';
+
+    const POLL_INTERVAL_MS = 2000;
+
+    const statusLabels = {
+        'QUEUED': '待機中',
+        'RUNNING': '実行中',
+        'COMPLETED': '完了',
+        'FAILED': '失敗'
+    };
+
+    const card = document.getElementById('import-progress');
+    if (!card) {
+        return;
+    }
+    const statusUrl = card.getAttribute('data-status-url');
+
+    function setText(id, value) {
+        const element = document.getElementById(id);
+        if (element) {
+            element.textContent = value;
+        }
+    }
+
+    function formatEta(seconds) {
+        if (seconds < 0) {
+            return '-';
+        }
+        const minutes = Math.floor(seconds / 60);
+        return minutes > 0 ? minutes + '分' + (seconds % 60) + '秒' : seconds + '秒';
+    }
+
+    function render(job) {
+        const percent = Math.round(job.progress * 100);
+        const bar = document.getElementById('import-progress-bar');
+        if (bar) {
+            bar.style.width = percent + '%';
+            bar.setAttribute('aria-valuenow', percent);
+            bar.textContent = percent + '%';
+        }
+        setText('import-status', statusLabels[job.status] || job.status);
+        setText('import-parsed', job.parsed.toLocaleString());
+        setText('import-inserted', job.inserted.toLocaleString());
+        setText('import-rejected', job.rejected.toLocaleString());
+        setText('import-throughput', Math.round(job.rowsPerSecond).toLocaleString());
+        setText('import-eta', formatEta(job.etaSeconds));
+
+        if (job.diff) {
+            setText('import-diff-inserted', job.diff.inserted.toLocaleString());
+            setText('import-diff-updated', job.diff.updated.toLocaleString());
+            setText('import-diff-deleted', job.diff.deleted.toLocaleString());
+            setText('import-diff-unchanged', job.diff.unchanged.toLocaleString());
+            document.getElementById('import-diff').classList.remove('d-none');
+        }
+
+        if (job.error) {
+            const error = document.getElementById('import-error');
+            error.textContent = job.error;
+            error.classList.remove('d-none');
+        }
+    }
+
+    function poll() {
+        fetch(statusUrl, { headers: { 'Accept': 'application/json' } })
+            .then(function(response) {
+                if (!response.ok) {
+                    throw new Error('Status ' + response.status);
+                }
+                return response.json();
+            })
+            .then(function(job) {
+                render(job);
+                if (job.status !== 'COMPLETED' && job.status !== 'FAILED') {
+                    setTimeout(poll, POLL_INTERVAL_MS);
+                }
+            })
+            .catch(function() {
+                setTimeout(poll, POLL_INTERVAL_MS * 2);
+            });
+    }
+
+    poll();
+})();
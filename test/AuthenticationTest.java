@@ -27,7 +27,7 @@ public class AuthenticationTest extends WithApplication {
 
     @Test
     public void redirectToLoginWhenAccessingCropsWithoutAuth() {
-        Result result = route(app, controllers.routes.CropController.list(0, "name", "asc", ""));
+        Result result = route(app, controllers.routes.CropController.list(0, "name", "asc", "", ""));
         
         assertThat(result.status()).isEqualTo(SEE_OTHER);
         assertThat(result.redirectLocation().get()).contains("/login");
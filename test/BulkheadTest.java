@@ -0,0 +1,183 @@
+import models.User;
+import org.apache.pekko.actor.ActorSystem;
+import org.junit.After;
+import org.junit.Test;
+import play.Application;
+import play.inject.ApplicationLifecycle;
+import play.inject.guice.GuiceApplicationBuilder;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.test.WithApplication;
+import repositoryies.Bulkhead;
+import repositoryies.BulkheadFullException;
+import repositoryies.Bulkheads;
+import repositoryies.DatabaseExecutionContext;
+import repositoryies.UserRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+import static play.test.Helpers.*;
+
+/**
+ * Test for keeping the workloads of the database apart
+ */
+public class BulkheadTest extends WithApplication {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Override
+    protected Application provideApplication() {
+        return new GuiceApplicationBuilder()
+            .configure("play.evolutions.db.default.enabled", "true")
+            .configure("play.evolutions.db.default.autoApply", "true")
+            .configure("play.filters.hosts.allowed.0", "localhost:19001")
+            .configure("db.default.driver", "org.h2.Driver")
+            .configure("db.default.url", "jdbc:h2:mem:bulkhead-test")
+            .configure("database.bulkheads.interactive.maxConcurrent", 2)
+            .configure("database.bulkheads.interactive.maxQueued", 1)
+            .configure("database.bulkheads.admin.maxConcurrent", 1)
+            .configure("database.bulkheads.admin.maxQueued", 0)
+            .build();
+    }
+
+    @After
+    public void releaseOperations() {
+        release.countDown();
+    }
+
+    /**
+     * Submit operations which wait until the end of the test
+     */
+    private List<CompletableFuture<Void>> block(Bulkhead bulkhead, int operations) {
+        List<CompletableFuture<Void>> blocked = new ArrayList<>();
+        for (int i = 0; i < operations; i++) {
+            blocked.add(CompletableFuture.runAsync(() -> {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, bulkhead));
+        }
+        return blocked;
+    }
+
+    @Test
+    public void testQueuesAndThenRejectsOperations() {
+        Bulkhead bulkhead = app.injector().instanceOf(Bulkheads.class).interactive();
+        List<CompletableFuture<Void>> blocked = block(bulkhead, 3);
+
+        try {
+            CompletableFuture.runAsync(() -> {}, bulkhead);
+            fail("A fourth operation should be rejected");
+        } catch (BulkheadFullException e) {
+            // expected
+        }
+        assertEquals(2, bulkhead.getRunning());
+        assertEquals(1, bulkhead.getQueued());
+        assertEquals(1, bulkhead.getRejected());
+
+        release.countDown();
+        CompletableFuture.allOf(blocked.toArray(new CompletableFuture<?>[0])).join();
+        CompletableFuture.runAsync(() -> {}, bulkhead).join();
+    }
+
+    /**
+     * Database executor which rejects the next operation after running an action, e.g. while shutting down
+     */
+    private static class RejectingExecutionContext extends DatabaseExecutionContext {
+
+        private final AtomicReference<Runnable> beforeRejection = new AtomicReference<>();
+
+        RejectingExecutionContext(Application app) {
+            super(app.injector().instanceOf(ActorSystem.class), app.config(),
+                app.injector().instanceOf(ApplicationLifecycle.class));
+        }
+
+        void rejectNext(Runnable action) {
+            beforeRejection.set(action);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            Runnable action = beforeRejection.getAndSet(null);
+            if (action == null) {
+                super.execute(command);
+                return;
+            }
+            action.run();
+            throw new RejectedExecutionException("Rejected by the test");
+        }
+    }
+
+    @Test
+    public void testRejectionByTheExecutorFreesTheSlot() {
+        RejectingExecutionContext executionContext = new RejectingExecutionContext(app);
+        Bulkhead bulkhead = new Bulkheads(executionContext, app.config()).admin();
+        executionContext.rejectNext(() -> {});
+
+        try {
+            CompletableFuture.runAsync(() -> {}, bulkhead);
+            fail("The operation should be rejected by the executor");
+        } catch (RejectedExecutionException e) {
+            assertFalse(e instanceof BulkheadFullException);
+        }
+        assertEquals(0, bulkhead.getRunning());
+
+        CompletableFuture.runAsync(() -> {}, bulkhead).join();
+    }
+
+    @Test
+    public void testRejectionByTheExecutorHandsOnQueuedOperations() {
+        RejectingExecutionContext executionContext = new RejectingExecutionContext(app);
+        Bulkhead bulkhead = new Bulkheads(executionContext, app.config()).interactive();
+        block(bulkhead, 1);
+        // Queued while the rejected operation holds the second slot
+        List<CompletableFuture<Void>> queued = new ArrayList<>();
+        executionContext.rejectNext(() -> queued.add(CompletableFuture.runAsync(() -> {}, bulkhead)));
+
+        try {
+            CompletableFuture.runAsync(() -> {}, bulkhead);
+            fail("The operation should be rejected by the executor");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertEquals(1, queued.size());
+
+        queued.get(0).orTimeout(10, SECONDS).join();
+        await().atMost(10, SECONDS).until(() -> bulkhead.getRunning() == 1 && bulkhead.getQueued() == 0);
+    }
+
+    @Test
+    public void testLoginsAreNotBlockedByAdminWork() {
+        block(app.injector().instanceOf(Bulkheads.class).admin(), 1);
+        UserFixture.user("bulkhead", "bulkhead@example.com", "Bulkhead-Password-123").save();
+
+        UserRepository users = app.injector().instanceOf(UserRepository.class);
+
+        assertTrue(users.findByUsername("bulkhead").toCompletableFuture().join().isPresent());
+    }
+
+    @Test
+    public void testRejectedRequestsAreServiceUnavailable() {
+        User user = UserFixture.user("bulkhead", "bulkhead@example.com", "Bulkhead-Password-123");
+        user.save();
+        block(app.injector().instanceOf(Bulkheads.class).interactive(), 3);
+
+        Result result = route(app, fakeRequest(GET, "/crops")
+            .host("localhost:19001")
+            .session("userId", user.getId().toString()));
+
+        assertEquals(SERVICE_UNAVAILABLE, result.status());
+        assertTrue(result.header(Http.HeaderNames.RETRY_AFTER).isPresent());
+    }
+}
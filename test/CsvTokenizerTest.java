@@ -0,0 +1,75 @@
+import org.junit.Test;
+import utils.CsvTokenizer;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the RFC 4180 CSV tokenizer
+ */
+public class CsvTokenizerTest {
+
+    private static List<List<String>> tokenize(String csv, int... internedColumns) throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(new StringReader(csv), internedColumns);
+        List<List<String>> records = new ArrayList<>();
+        while (tokenizer.next()) {
+            records.add(new ArrayList<>(Arrays.asList(tokenizer.getFields()).subList(0, tokenizer.getFieldCount())));
+        }
+        return records;
+    }
+
+    @Test
+    public void testSplitsRecordsAndFields() throws IOException {
+        List<List<String>> records = tokenize("a,b,c\n1,,3\r\n x , y\rlast");
+
+        assertEquals(4, records.size());
+        assertEquals(List.of("a", "b", "c"), records.get(0));
+        assertEquals("Empty fields should be empty strings", List.of("1", "", "3"), records.get(1));
+        assertEquals("Unquoted fields should be trimmed", List.of("x", "y"), records.get(2));
+        assertEquals("A record without line break at the end should be read", List.of("last"), records.get(3));
+    }
+
+    @Test
+    public void testQuotedFields() throws IOException {
+        List<List<String>> records = tokenize("\"12345\",\"殺虫剤,殺菌剤\",\"1行目\n2行目\",\"\"\"引用\"\"\", \"  spaces  \" \n");
+
+        assertEquals(1, records.size());
+        assertEquals(List.of("12345", "殺虫剤,殺菌剤", "1行目\n2行目", "\"引用\"", "  spaces  "), records.get(0));
+    }
+
+    @Test
+    public void testFieldsSpanningBufferRefills() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        String longValue = "長".repeat(100_000);
+        for (int i = 0; i < 20_000; i++) {
+            csv.append(i).append(",\"").append(i % 7).append(",x\"\n");
+        }
+        csv.append("\"").append(longValue).append("\",end\n");
+
+        List<List<String>> records = tokenize(csv.toString());
+
+        assertEquals(20_001, records.size());
+        assertEquals(List.of("19999", (19999 % 7) + ",x"), records.get(19_999));
+        assertEquals("Overlong fields should be cut off", 64 * 1024, records.get(20_000).get(0).length());
+        assertEquals("end", records.get(20_000).get(1));
+    }
+
+    @Test
+    public void testInternedColumnsReuseValues() throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(new StringReader("1,殺虫剤\n2,殺虫剤\n"), 1);
+
+        assertTrue(tokenizer.next());
+        String first = tokenizer.getFields()[1];
+        String firstId = tokenizer.getFields()[0];
+        assertTrue(tokenizer.next());
+
+        assertSame("Repeated values of interned columns should be the same instance", first, tokenizer.getFields()[1]);
+        assertEquals("1", firstId);
+        assertFalse(tokenizer.next());
+    }
+}
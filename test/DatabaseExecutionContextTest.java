@@ -0,0 +1,68 @@
+import org.junit.Test;
+import play.Application;
+import play.inject.guice.GuiceApplicationBuilder;
+import play.test.WithApplication;
+import repositoryies.CropRepository;
+import repositoryies.DatabaseExecutionContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Test for running repository operations on virtual threads, which needs Java 21
+ */
+public class DatabaseExecutionContextTest extends WithApplication {
+
+    @Override
+    protected Application provideApplication() {
+        return new GuiceApplicationBuilder()
+            .configure("play.evolutions.db.default.enabled", "true")
+            .configure("play.evolutions.db.default.autoApply", "true")
+            .configure("play.filters.hosts.allowed.0", "localhost:19001")
+            .configure("db.default.driver", "org.h2.Driver")
+            .configure("db.default.url", "jdbc:h2:mem:database-execution-context-test")
+            .configure("database.executor", "virtual-threads")
+            .configure("database.virtualThreads.maxConcurrency", 2)
+            .build();
+    }
+
+    @Test
+    public void testLimitsConcurrentOperations() {
+        DatabaseExecutionContext executionContext = app.injector().instanceOf(DatabaseExecutionContext.class);
+        assumeTrue("Virtual threads are not available", executionContext.isVirtual());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<CompletableFuture<Void>> operations = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            operations.add(CompletableFuture.runAsync(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+            }, executionContext));
+        }
+        CompletableFuture.allOf(operations.toArray(new CompletableFuture<?>[0])).join();
+
+        assertTrue("At most two operations should have run at once, not " + maxRunning.get(), maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void testRepositoriesUseTheSameExecutionContext() {
+        DatabaseExecutionContext executionContext = app.injector().instanceOf(DatabaseExecutionContext.class);
+        assumeTrue("Virtual threads are not available", executionContext.isVirtual());
+
+        CropRepository repository = app.injector().instanceOf(CropRepository.class);
+
+        assertTrue(repository.optionsByUser(1L).toCompletableFuture().join().isEmpty());
+        assertSame("The connection limit must be shared", executionContext, app.injector().instanceOf(DatabaseExecutionContext.class));
+    }
+}
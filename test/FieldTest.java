@@ -6,6 +6,7 @@ import play.Application;
 import play.inject.guice.GuiceApplicationBuilder;
 import play.test.WithApplication;
 import repositoryies.FieldRepository;
+import repositoryies.KeysetPage;
 
 import java.util.Optional;
 import java.util.concurrent.CompletionStage;
@@ -33,7 +34,7 @@ public class FieldTest extends WithApplication {
         final FieldRepository fieldRepository = app.injector().instanceOf(FieldRepository.class);
         
         // Test that the repository can be injected and basic operations work
-        CompletionStage<PagedList<Field>> stage = fieldRepository.pageByUser(0, 10, "name", "ASC", "", 999L);
+        CompletionStage<KeysetPage<Field>> stage = fieldRepository.pageByUser(0, 10, "name", "ASC", "", "", 999L);
 
         await().atMost(1, SECONDS).until(() -> {
             try {
@@ -48,7 +49,7 @@ public class FieldTest extends WithApplication {
     @Test
     public void paginationEmpty() {
         final FieldRepository fieldRepository = app.injector().instanceOf(FieldRepository.class);
-        CompletionStage<PagedList<Field>> stage = fieldRepository.pageByUser(0, 10, "name", "ASC", "", 999L);
+        CompletionStage<KeysetPage<Field>> stage = fieldRepository.pageByUser(0, 10, "name", "ASC", "", "", 999L);
 
         // Test that pagination works for non-existent user
         await().atMost(1, SECONDS).until(() -> {
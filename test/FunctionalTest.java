@@ -39,7 +39,7 @@ public class FunctionalTest extends WithApplication {
 
     @Test
     public void listCropsOnTheFirstPage() {
-        Result result = route(app, controllers.routes.CropController.list(0, "name", "asc", ""));
+        Result result = route(app, controllers.routes.CropController.list(0, "name", "asc", "", ""));
 
         assertThat(result.status()).isEqualTo(OK);
         assertThat(contentAsString(result)).contains("574 crops found");
@@ -47,7 +47,7 @@ public class FunctionalTest extends WithApplication {
 
     @Test
     public void filterCropByName() {
-        Result result = route(app, controllers.routes.CropController.list(0, "name", "asc", "Apple"));
+        Result result = route(app, controllers.routes.CropController.list(0, "name", "asc", "Apple", ""));
 
         assertThat(result.status()).isEqualTo(OK);
         assertThat(contentAsString(result)).contains("13 crops found");
@@ -81,7 +81,7 @@ public class FunctionalTest extends WithApplication {
         assertThat(result.redirectLocation().get()).isEqualTo("/crops");
         assertThat(result.flash().get("success").get()).isEqualTo("Crop FooBar has been created");
 
-        result = route(app, controllers.routes.CropController.list(0, "name", "asc", "FooBar"));
+        result = route(app, controllers.routes.CropController.list(0, "name", "asc", "FooBar", ""));
         assertThat(result.status()).isEqualTo(OK);
         assertThat(contentAsString(result)).contains("One crop found");
     }
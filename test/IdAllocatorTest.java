@@ -0,0 +1,82 @@
+import models.Crop;
+import org.junit.Test;
+import play.Application;
+import play.inject.guice.GuiceApplicationBuilder;
+import play.test.WithApplication;
+import repositoryies.CropRepository;
+import repositoryies.IdAllocator;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the allocation of the ids of new rows
+ */
+public class IdAllocatorTest extends WithApplication {
+
+    @Override
+    protected Application provideApplication() {
+        return new GuiceApplicationBuilder()
+            .configure("play.evolutions.db.default.enabled", "true")
+            .configure("play.evolutions.db.default.autoApply", "true")
+            .configure("play.filters.hosts.allowed.0", "localhost:19001")
+            .configure("db.default.driver", "org.h2.Driver")
+            .configure("db.default.url", "jdbc:h2:mem:id-allocator-test")
+            .build();
+    }
+
+    @Test
+    public void testAllocatesUniqueIdsConcurrently() throws Exception {
+        IdAllocator allocator = app.injector().instanceOf(IdAllocator.class);
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<Long>> ids = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                ids.add(CompletableFuture.supplyAsync(allocator::nextId, threads));
+            }
+            Set<Long> unique = new HashSet<>();
+            for (CompletableFuture<Long> id : ids) {
+                assertTrue("Ids must not repeat", unique.add(id.get()));
+            }
+            assertTrue("Ids should be above the ones taken from the clock", unique.stream().allMatch(id -> id >= 10_000_000_000_000L));
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSeparateAllocatorsUseSeparateBlocks() {
+        // Allocators of other application nodes read their own blocks
+        IdAllocator first = new IdAllocator();
+        IdAllocator second = new IdAllocator();
+
+        long a = first.nextId();
+        long b = second.nextId();
+
+        assertEquals(a + 1, first.nextId());
+        assertEquals("The blocks should not overlap", 50, Math.abs(b - a));
+    }
+
+    @Test
+    public void testConcurrentInsertsDoNotCollide() {
+        CropRepository repository = app.injector().instanceOf(CropRepository.class);
+        List<CompletableFuture<Long>> inserts = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Crop crop = new Crop();
+            crop.setName("作物" + i);
+            inserts.add(repository.insert(crop).toCompletableFuture());
+        }
+
+        Set<Long> ids = inserts.stream().map(CompletableFuture::join).collect(Collectors.toSet());
+
+        assertEquals(20, ids.size());
+    }
+}
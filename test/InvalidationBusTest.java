@@ -0,0 +1,95 @@
+import com.typesafe.config.Config;
+import models.Crop;
+import models.User;
+import org.junit.Test;
+import play.Application;
+import play.inject.ApplicationLifecycle;
+import play.inject.guice.GuiceApplicationBuilder;
+import play.test.WithApplication;
+import repositoryies.CropRepository;
+import repositoryies.DatabaseExecutionContext;
+import repositoryies.InvalidationBus;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Test for the invalidation of the caches of all nodes. Notifications between nodes
+ * need PostgreSQL, which is used when TEST_POSTGRES_URL is set, e.g.
+ * TEST_POSTGRES_URL=jdbc:postgresql://localhost:5432/diary_test.
+ */
+public class InvalidationBusTest extends WithApplication {
+
+    private static final String POSTGRES_URL = System.getenv("TEST_POSTGRES_URL");
+
+    @Override
+    protected Application provideApplication() {
+        GuiceApplicationBuilder builder = new GuiceApplicationBuilder()
+            .configure("play.evolutions.db.default.enabled", "true")
+            .configure("play.evolutions.db.default.autoApply", "true")
+            .configure("play.filters.hosts.allowed.0", "localhost:19001")
+            .configure("pesticide.search.index.enabled", "false");
+        if (POSTGRES_URL != null) {
+            return builder
+                .configure("db.default.driver", "org.postgresql.Driver")
+                .configure("db.default.url", POSTGRES_URL)
+                .configure("db.default.username", System.getenv().getOrDefault("TEST_POSTGRES_USER", "postgres"))
+                .configure("db.default.password", System.getenv().getOrDefault("TEST_POSTGRES_PASSWORD", ""))
+                .build();
+        }
+        return builder
+            .configure("db.default.driver", "org.h2.Driver")
+            .configure("db.default.url", "jdbc:h2:mem:invalidation-bus-test")
+            .build();
+    }
+
+    private static final class Change {
+
+        private final Class<?> type;
+        private final Long id;
+
+        Change(Class<?> type, Long id) {
+            this.type = type;
+            this.id = id;
+        }
+    }
+
+    @Test
+    public void testRepositoryWritesAreReportedOnTheSameNode() {
+        List<Change> changes = new CopyOnWriteArrayList<>();
+        app.injector().instanceOf(InvalidationBus.class).subscribe((type, id) -> changes.add(new Change(type, id)));
+
+        Crop crop = new Crop();
+        crop.setName("トマト");
+        app.injector().instanceOf(CropRepository.class).insert(crop).toCompletableFuture().join();
+
+        assertEquals(1, changes.size());
+        assertSame(Crop.class, changes.get(0).type);
+        assertNull(changes.get(0).id);
+    }
+
+    @Test
+    public void testChangesReachOtherNodes() {
+        assumeTrue(POSTGRES_URL != null);
+        // A second bus in the same application stands in for another node
+        InvalidationBus otherNode = new InvalidationBus(
+            app.injector().instanceOf(DatabaseExecutionContext.class),
+            app.injector().instanceOf(Config.class),
+            app.injector().instanceOf(ApplicationLifecycle.class));
+        List<Change> received = new CopyOnWriteArrayList<>();
+        otherNode.subscribe((type, id) -> received.add(new Change(type, id)));
+
+        await().atMost(5, SECONDS).until(() -> {
+            app.injector().instanceOf(InvalidationBus.class).changed(User.class, 42L);
+            return !received.isEmpty();
+        });
+
+        assertSame(User.class, received.get(0).type);
+        assertEquals(Long.valueOf(42), received.get(0).id);
+    }
+}
@@ -0,0 +1,167 @@
+import io.ebean.DB;
+import models.Field;
+import models.User;
+import org.junit.Test;
+import play.Application;
+import play.inject.guice.GuiceApplicationBuilder;
+import play.test.WithApplication;
+import repositoryies.FieldRepository;
+import repositoryies.KeysetPage;
+import utils.PageCursor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for keyset pagination of the list pages
+ */
+public class KeysetPaginationTest extends WithApplication {
+
+    private static final int PAGE_SIZE = 10;
+
+    @Override
+    protected Application provideApplication() {
+        return new GuiceApplicationBuilder()
+            .configure("play.evolutions.db.default.enabled", "true")
+            .configure("play.evolutions.db.default.autoApply", "true")
+            .configure("play.filters.hosts.allowed.0", "localhost:19001")
+            .configure("db.default.driver", "org.h2.Driver")
+            .configure("db.default.url", "jdbc:h2:mem:keyset-pagination-test")
+            .build();
+    }
+
+    /**
+     * Insert fields whose names repeat and whose latitudes are partly null
+     */
+    private List<Field> createFields(int count) {
+        User user = UserFixture.user("keyset", "keyset@example.com", "Keyset-Password-123");
+        user.save();
+        List<Field> fields = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Field field = new Field();
+            field.setId(1000L + i);
+            field.setName("圃場" + (i % 7));
+            field.setNorthEastLatitude(i % 5 == 0 ? null : 35.0 + (i % 11));
+            field.setUser(user);
+            DB.insert(field);
+            fields.add(field);
+        }
+        return fields;
+    }
+
+    private KeysetPage<Field> page(int page, String sortBy, String order, String cursor) {
+        FieldRepository repository = app.injector().instanceOf(FieldRepository.class);
+        Long userId = DB.find(User.class).where().eq("username", "keyset").findOne().getId();
+        return repository.pageByUser(page, PAGE_SIZE, sortBy, order, "", cursor, userId).toCompletableFuture().join();
+    }
+
+    private static List<Long> ids(List<Field> fields) {
+        return fields.stream().map(Field::getId).collect(Collectors.toList());
+    }
+
+    /**
+     * Walk forward through the whole list and back again, following cursors once the
+     * pages get deep
+     */
+    private void assertWalk(String sortBy, String order, List<Long> expected) {
+        List<List<Long>> pages = new ArrayList<>();
+        int index = 0;
+        String cursor = "";
+        while (true) {
+            KeysetPage<Field> page = page(index, sortBy, order, cursor);
+            pages.add(ids(page.getList()));
+            if (index + 1 < PageCursor.MAX_OFFSET_PAGES) {
+                assertNull("Shallow pages should be linked by number", page.getNextCursor());
+            }
+            if (!page.hasNext()) {
+                break;
+            }
+            cursor = page.getNextCursor() == null ? "" : page.getNextCursor();
+            index++;
+        }
+        assertEquals(expected, pages.stream().flatMap(List::stream).collect(Collectors.toList()));
+        assertTrue("The walk should have reached cursor pages", pages.size() > PageCursor.MAX_OFFSET_PAGES);
+
+        KeysetPage<Field> last = page(index, sortBy, order, cursor);
+        cursor = last.getPrevCursor();
+        for (index = index - 1; cursor != null; index--) {
+            KeysetPage<Field> page = page(index, sortBy, order, cursor);
+            assertEquals("Page " + index + " should be the same read backward", pages.get(index), ids(page.getList()));
+            cursor = page.getPrevCursor();
+        }
+        assertEquals("Shallow pages should be linked by number", PageCursor.MAX_OFFSET_PAGES - 1, index);
+    }
+
+    @Test
+    public void testWalksPagesByCursor() {
+        List<Field> fields = createFields(73);
+
+        List<Long> byName = ids(fields.stream()
+            .sorted(Comparator.comparing(Field::getName).thenComparing(Field::getId))
+            .collect(Collectors.toList()));
+        assertWalk("name", "asc", byName);
+
+        List<Long> byNameDescending = new ArrayList<>(byName);
+        java.util.Collections.reverse(byNameDescending);
+        assertWalk("name", "desc", byNameDescending);
+    }
+
+    @Test
+    public void testSortsNullsLast() {
+        List<Field> fields = createFields(73);
+
+        List<Long> byLatitude = ids(fields.stream()
+            .sorted(Comparator.comparing(Field::getNorthEastLatitude, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(Field::getId))
+            .collect(Collectors.toList()));
+        assertWalk("northEastLatitude", "asc", byLatitude);
+
+        List<Long> byLatitudeDescending = new ArrayList<>(byLatitude);
+        java.util.Collections.reverse(byLatitudeDescending);
+        assertWalk("northEastLatitude", "desc", byLatitudeDescending);
+    }
+
+    @Test
+    public void testIgnoresCursorsOfOtherSorts() {
+        createFields(73);
+        String cursor = new PageCursor("name", false, false, "圃場3", 1003L).encode();
+
+        KeysetPage<Field> page = page(0, "name", "desc", cursor);
+
+        assertEquals("A cursor of another sort should read the page by number", "圃場6", page.getList().get(0).getName());
+    }
+
+    @Test
+    public void testReadsOnlyTheListedProperties() {
+        createFields(3);
+
+        Field field = page(0, "name", "asc", "").getList().get(0);
+
+        Set<String> loaded = DB.beanState(field).loadedProps();
+        assertNotNull("The field should only be partially loaded", loaded);
+        assertTrue(loaded.contains("name"));
+        assertFalse("The owner is not shown in the list", loaded.contains("user"));
+    }
+
+    @Test
+    public void testCursorRoundTrip() {
+        for (Object value : new Object[] {null, "圃場,1", LocalDate.of(2024, 4, 1), new Date(1700000000000L), new BigDecimal("6.50"), 35.5}) {
+            PageCursor decoded = PageCursor.decode(new PageCursor("sort", true, true, value, 42L).encode()).orElseThrow();
+            assertEquals(value, decoded.getValue());
+            assertEquals(42L, decoded.getId());
+            assertTrue(decoded.matches("sort", true));
+            assertTrue(decoded.isBackward());
+        }
+        assertEquals(Optional.empty(), PageCursor.decode("not a cursor"));
+        assertEquals(Optional.empty(), PageCursor.decode(""));
+    }
+}
@@ -0,0 +1,143 @@
+import io.ebean.DB;
+import org.junit.Test;
+import play.Application;
+import play.inject.guice.GuiceApplicationBuilder;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.test.WithApplication;
+import repositoryies.DatabaseMetrics;
+import repositoryies.RateLimitRepository;
+import utils.SlidingWindowLimiter;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static play.api.test.CSRFTokenHelper.addCSRFToken;
+import static play.test.Helpers.*;
+
+/**
+ * Test for limiting the logins and password reset requests
+ */
+public class LoginRateLimiterTest extends WithApplication {
+
+    @Override
+    protected Application provideApplication() {
+        return new GuiceApplicationBuilder()
+            .configure("play.evolutions.db.default.enabled", "true")
+            .configure("play.evolutions.db.default.autoApply", "true")
+            .configure("play.filters.hosts.allowed.0", "localhost:19001")
+            .configure("db.default.driver", "org.h2.Driver")
+            .configure("db.default.url", "jdbc:h2:mem:login-rate-limiter-test")
+            .configure("auth.passwordHashing.cost", "4")
+            .configure("auth.rateLimit.login.maxPerAddress", 3)
+            .configure("auth.rateLimit.login.maxPerAccount", 2)
+            .configure("auth.rateLimit.forgotPassword.maxPerAddress", 1)
+            .build();
+    }
+
+    private Result login(String address, String username, String password) {
+        return route(app, addCSRFToken(fakeRequest(POST, "/login")
+            .host("localhost:19001")
+            .remoteAddress(address)
+            .bodyForm(Map.of("username", username, "password", password))));
+    }
+
+    private Result forgotPassword(String email) {
+        return route(app, addCSRFToken(fakeRequest(POST, "/forgot-password")
+            .host("localhost:19001")
+            .bodyForm(Map.of("email", email))));
+    }
+
+    @Test
+    public void testRefusesAccountsBeforeReadingTheUser() {
+        UserFixture.user("victim", "victim@example.com", "Victim-Password-123").save();
+
+        assertEquals(BAD_REQUEST, login("203.0.113.1", "victim", "wrong").status());
+        assertEquals(BAD_REQUEST, login("203.0.113.2", "victim", "wrong").status());
+        Result refused = login("203.0.113.3", "Victim", "Victim-Password-123");
+
+        assertEquals(TOO_MANY_REQUESTS, refused.status());
+        assertTrue(refused.header(Http.HeaderNames.RETRY_AFTER).isPresent());
+        assertEquals("The refused login should not read the user",
+            2, app.injector().instanceOf(DatabaseMetrics.class).getCompleted("UserRepository.findByUsername"));
+    }
+
+    @Test
+    public void testRefusesAddresses() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(BAD_REQUEST, login("203.0.113.1", "user" + i, "wrong").status());
+        }
+
+        assertEquals(TOO_MANY_REQUESTS, login("203.0.113.1", "user3", "wrong").status());
+        assertEquals("Other addresses may still log in", BAD_REQUEST, login("203.0.113.2", "user3", "wrong").status());
+    }
+
+    @Test
+    public void testIgnoresForwardedAddressesOfTheClient() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(BAD_REQUEST, route(app, addCSRFToken(fakeRequest(POST, "/login")
+                .host("localhost:19001")
+                .remoteAddress("203.0.113.1")
+                .header("X-Forwarded-For", "198.51.100." + i)
+                .bodyForm(Map.of("username", "user" + i, "password", "wrong")))).status());
+        }
+
+        assertEquals(TOO_MANY_REQUESTS, login("203.0.113.1", "user3", "wrong").status());
+    }
+
+    @Test
+    public void testSuccessfulLoginsResetTheAccount() {
+        UserFixture.user("member", "member@example.com", "Member-Password-123").save();
+
+        assertEquals(BAD_REQUEST, login("203.0.113.1", "member", "wrong").status());
+        assertEquals(SEE_OTHER, login("203.0.113.2", "member", "Member-Password-123").status());
+
+        assertEquals(BAD_REQUEST, login("203.0.113.3", "member", "wrong").status());
+        assertEquals(SEE_OTHER, login("203.0.113.4", "member", "Member-Password-123").status());
+    }
+
+    @Test
+    public void testRefusesPasswordResetRequests() {
+        assertEquals(SEE_OTHER, forgotPassword("nobody@example.com").status());
+        assertEquals(TOO_MANY_REQUESTS, forgotPassword("someone@example.com").status());
+    }
+
+    @Test
+    public void testSlidingWindow() {
+        AtomicLong now = new AtomicLong();
+        SlidingWindowLimiter limiter = new SlidingWindowLimiter(TimeUnit.SECONDS.toNanos(10), 4, now::get);
+
+        assertTrue(limiter.tryAcquire("key", 2));
+        now.set(TimeUnit.SECONDS.toNanos(5));
+        assertTrue(limiter.tryAcquire("key", 2));
+        assertFalse(limiter.tryAcquire("key", 2));
+
+        // The first attempt left the window, the second not yet
+        now.set(TimeUnit.SECONDS.toNanos(10));
+        assertTrue(limiter.tryAcquire("key", 2));
+        assertFalse(limiter.tryAcquire("key", 2));
+
+        limiter.reset("key");
+        assertTrue(limiter.tryAcquire("key", 2));
+    }
+
+    @Test
+    public void testSharedCounters() {
+        RateLimitRepository repository = app.injector().instanceOf(RateLimitRepository.class);
+        long window = TimeUnit.MINUTES.toMillis(10);
+
+        assertTrue(repository.hit("login:account:shared", 2, window).toCompletableFuture().join());
+        assertTrue(repository.hit("login:account:shared", 2, window).toCompletableFuture().join());
+        assertFalse(repository.hit("login:account:shared", 2, window).toCompletableFuture().join());
+        assertFalse(repository.hit("login:account:shared", 2, window).toCompletableFuture().join());
+        assertEquals("Refused attempts should not be counted", 2, DB.sqlQuery(
+                "select sum(hits) as hits from rate_limit_counter where counter_key = 'login:account:shared'")
+            .findOne().getInteger("hits").intValue());
+        assertTrue(repository.hit("login:account:other", 2, window).toCompletableFuture().join());
+
+        repository.reset("login:account:shared").toCompletableFuture().join();
+        assertTrue(repository.hit("login:account:shared", 2, window).toCompletableFuture().join());
+    }
+}
@@ -0,0 +1,81 @@
+import com.typesafe.config.ConfigFactory;
+import controllers.MetricsController;
+import org.junit.Test;
+import play.Application;
+import play.inject.guice.GuiceApplicationBuilder;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.test.WithApplication;
+import repositoryies.CropRepository;
+import repositoryies.DatabaseMetrics;
+import repositoryies.UserCache;
+import services.PasswordHasher;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static play.test.Helpers.*;
+
+/**
+ * Test for the metrics endpoint
+ */
+public class MetricsTest extends WithApplication {
+
+    @Override
+    protected Application provideApplication() {
+        return new GuiceApplicationBuilder()
+            .configure("play.evolutions.db.default.enabled", "true")
+            .configure("play.evolutions.db.default.autoApply", "true")
+            .configure("play.filters.hosts.allowed.0", "localhost:19001")
+            .configure("db.default.driver", "org.h2.Driver")
+            .configure("db.default.url", "jdbc:h2:mem:metrics-test")
+            .configure("metrics.token", "scraper-token")
+            .build();
+    }
+
+    private Result metrics(String authorization) {
+        Http.RequestBuilder request = fakeRequest(GET, "/metrics").host("localhost:19001");
+        if (authorization != null) {
+            request.header(Http.HeaderNames.AUTHORIZATION, authorization);
+        }
+        return route(app, request);
+    }
+
+    @Test
+    public void testRecordsRepositoryOperations() {
+        CropRepository repository = app.injector().instanceOf(CropRepository.class);
+        repository.lookup(1L).toCompletableFuture().join();
+
+        assertEquals(1, app.injector().instanceOf(DatabaseMetrics.class).getCompleted("CropRepository.lookup"));
+
+        Result result = metrics("Bearer scraper-token");
+
+        assertEquals(OK, result.status());
+        assertTrue(result.contentType().orElse("").startsWith("text/plain"));
+        String text = contentAsString(result);
+        assertTrue(text.contains("database_operations_total{operation=\"CropRepository.lookup\",outcome=\"success\"} 1\n"));
+        assertTrue(text.contains("database_operation_seconds_count{operation=\"CropRepository.lookup\"} 1\n"));
+        assertTrue(text.contains("database_bulkhead_running{bulkhead=\"interactive\"}"));
+        assertTrue(text.contains("database_executor_queued "));
+        assertTrue(text.contains("auth_user_cache_hits_total "));
+    }
+
+    @Test
+    public void testRequiresTheToken() {
+        assertEquals(UNAUTHORIZED, metrics(null).status());
+        assertEquals(UNAUTHORIZED, metrics("Bearer wrong").status());
+    }
+
+    @Test
+    public void testIsNotServedWithoutAToken() {
+        MetricsController controller = new MetricsController(
+            app.injector().instanceOf(DatabaseMetrics.class),
+            app.injector().instanceOf(UserCache.class),
+            app.injector().instanceOf(PasswordHasher.class),
+            ConfigFactory.parseMap(Map.of("metrics.token", "")));
+
+        assertEquals(NOT_FOUND, controller.metrics(fakeRequest(GET, "/metrics").build()).status());
+        assertEquals(NOT_FOUND, controller.metrics(fakeRequest(GET, "/metrics")
+            .header(Http.HeaderNames.AUTHORIZATION, "Bearer ").build()).status());
+    }
+}
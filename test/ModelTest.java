@@ -1,10 +1,12 @@
 import io.ebean.PagedList;
 import models.Crop;
+import models.User;
 import org.junit.Test;
 import play.Application;
 import play.inject.guice.GuiceApplicationBuilder;
 import play.test.WithApplication;
 import repositoryies.CropRepository;
+import repositoryies.KeysetPage;
 
 import java.util.Date;
 import java.util.Optional;
@@ -46,14 +48,23 @@ public class ModelTest extends WithApplication {
     @Test
     public void pagination() {
         final CropRepository cropRepository = app.injector().instanceOf(CropRepository.class);
-        CompletionStage<PagedList<Crop>> stage = cropRepository.page(1, 20, "name", "ASC", "");
+        User user = UserFixture.user("pagination", "pagination@example.com", "Password-123");
+        user.save();
+        for (int i = 0; i < 45; i++) {
+            Crop crop = new Crop();
+            crop.setName(String.format("Crop %02d", i));
+            crop.setUser(user);
+            crop.save();
+        }
+        CompletionStage<KeysetPage<Crop>> stage = cropRepository.pageByUser(1, 20, "name", "asc", "", "", user.getId());
 
         // Test the completed result
         await().atMost(1, SECONDS).until(() -> {
             PagedList<Crop> crops = stage.toCompletableFuture().get();
-            return crops.getTotalCount() == 574 &&
-                crops.getTotalPageCount() == 29 &&
-                crops.getList().size() == 20;
+            return crops.getTotalCount() == 45 &&
+                crops.getTotalPageCount() == 3 &&
+                crops.getList().size() == 20 &&
+                crops.getList().get(0).getName().equals("Crop 20");
         });
     }
     
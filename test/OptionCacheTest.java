@@ -0,0 +1,75 @@
+import io.ebean.DB;
+import models.Field;
+import models.User;
+import org.junit.Test;
+import play.Application;
+import play.inject.guice.GuiceApplicationBuilder;
+import play.test.WithApplication;
+import repositoryies.FieldRepository;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the cache of the form options
+ */
+public class OptionCacheTest extends WithApplication {
+
+    @Override
+    protected Application provideApplication() {
+        return new GuiceApplicationBuilder()
+            .configure("play.evolutions.db.default.enabled", "true")
+            .configure("play.evolutions.db.default.autoApply", "true")
+            .configure("play.filters.hosts.allowed.0", "localhost:19001")
+            .configure("db.default.driver", "org.h2.Driver")
+            .configure("db.default.url", "jdbc:h2:mem:option-cache-test")
+            .build();
+    }
+
+    private static Field field(long id, String name, User user) {
+        Field field = new Field();
+        field.setId(id);
+        field.setName(name);
+        field.setUser(user);
+        return field;
+    }
+
+    private Map<String, String> options(Long userId) {
+        FieldRepository repository = app.injector().instanceOf(FieldRepository.class);
+        return repository.optionsByUser(userId).toCompletableFuture().join();
+    }
+
+    @Test
+    public void testKeepsOptionsUntilTheyChange() {
+        User user = UserFixture.user("options", "options@example.com", "Options-Password-123");
+        user.save();
+        DB.insert(field(1L, "北圃場", user));
+        assertEquals(List.of("北圃場"), List.copyOf(options(user.getId()).values()));
+
+        DB.insert(field(2L, "東圃場", user));
+        assertEquals("Rows not written by the repository are only seen after the options expire",
+            List.of("北圃場"), List.copyOf(options(user.getId()).values()));
+
+        app.injector().instanceOf(FieldRepository.class).insert(field(0L, "南圃場", user)).toCompletableFuture().join();
+        assertEquals(List.of("北圃場", "南圃場", "東圃場"), List.copyOf(options(user.getId()).values()));
+    }
+
+    @Test
+    public void testKeepsOptionsPerUser() {
+        User first = UserFixture.user("first", "first@example.com", "First-Password-123");
+        first.save();
+        User second = UserFixture.user("second", "second@example.com", "Second-Password-123");
+        second.save();
+        DB.insert(field(1L, "北圃場", first));
+
+        assertEquals(1, options(first.getId()).size());
+        assertTrue(options(second.getId()).isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testOptionsCannotBeModified() {
+        options(-1L).put("1", "圃場");
+    }
+}
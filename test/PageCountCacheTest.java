@@ -0,0 +1,73 @@
+import com.typesafe.config.ConfigFactory;
+import models.Crop;
+import models.Field;
+import org.junit.Test;
+import repositoryies.PageCountCache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the cache of list page counts
+ */
+public class PageCountCacheTest {
+
+    private static PageCountCache cache(String ttl) {
+        return new PageCountCache(ConfigFactory.parseString(
+            "pagination.countCache.ttl = " + ttl + "\npagination.countCache.maxEntries = 2"));
+    }
+
+    @Test
+    public void testCachesCountsUntilInvalidated() {
+        PageCountCache cache = cache("1h");
+        AtomicInteger queries = new AtomicInteger();
+
+        assertEquals(3, cache.count(Field.class, "1:", () -> queries.incrementAndGet() + 2));
+        assertEquals(3, cache.count(Field.class, "1:", () -> queries.incrementAndGet() + 2));
+        assertEquals("The count should have been cached", 1, queries.get());
+
+        cache.invalidate(Crop.class);
+        assertEquals(3, cache.count(Field.class, "1:", () -> queries.incrementAndGet() + 2));
+        assertEquals("Changes of other types should keep the count", 1, queries.get());
+
+        cache.invalidate(Field.class);
+        assertEquals(4, cache.count(Field.class, "1:", () -> queries.incrementAndGet() + 2));
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    public void testDoesNotCacheCountsOverlappingAWrite() {
+        PageCountCache cache = cache("1h");
+
+        assertEquals(5, cache.count(Field.class, "1:", () -> {
+            cache.invalidate(Field.class);
+            return 5;
+        }));
+        assertEquals("A count taken during a write may be out of date", 6, cache.count(Field.class, "1:", () -> 6));
+    }
+
+    @Test
+    public void testCountsEveryTimeWithoutTtl() {
+        PageCountCache cache = cache("0s");
+        AtomicInteger queries = new AtomicInteger();
+
+        cache.count(Field.class, "1:", queries::incrementAndGet);
+        cache.count(Field.class, "1:", queries::incrementAndGet);
+
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    public void testBoundsTheNumberOfEntries() {
+        PageCountCache cache = cache("1h");
+        AtomicInteger queries = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            cache.count(Field.class, i + ":", queries::incrementAndGet);
+        }
+        cache.count(Field.class, "0:", queries::incrementAndGet);
+
+        assertEquals("Counts should have been dropped at the limit", 4, queries.get());
+    }
+}
@@ -0,0 +1,123 @@
+import io.ebean.DB;
+import models.User;
+import org.junit.Test;
+import org.mindrot.jbcrypt.BCrypt;
+import play.Application;
+import play.inject.guice.GuiceApplicationBuilder;
+import play.mvc.Result;
+import play.test.WithApplication;
+import services.PasswordHasher;
+import services.PasswordHashingRejectedException;
+
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+
+import static org.junit.Assert.*;
+import static play.api.test.CSRFTokenHelper.addCSRFToken;
+import static play.test.Helpers.*;
+
+/**
+ * Test for hashing passwords on their own bounded pool
+ */
+public class PasswordHasherTest extends WithApplication {
+
+    @Override
+    protected Application provideApplication() {
+        return new GuiceApplicationBuilder()
+            .configure("play.evolutions.db.default.enabled", "true")
+            .configure("play.evolutions.db.default.autoApply", "true")
+            .configure("play.filters.hosts.allowed.0", "localhost:19001")
+            .configure("db.default.driver", "org.h2.Driver")
+            .configure("db.default.url", "jdbc:h2:mem:password-hasher-test")
+            .configure("password-hashing.dispatcher.thread-pool-executor.fixed-pool-size", 1)
+            .configure("auth.passwordHashing.maxQueued", 0)
+            .configure("auth.passwordHashing.cost", "5")
+            .build();
+    }
+
+    @Test
+    public void testHashesAndChecksPasswords() {
+        PasswordHasher hasher = app.injector().instanceOf(PasswordHasher.class);
+
+        String hash = hasher.hash("Hasher-Password-123").toCompletableFuture().join();
+
+        assertTrue(hasher.check("Hasher-Password-123", hash).toCompletableFuture().join());
+        assertFalse(hasher.check("wrong", hash).toCompletableFuture().join());
+    }
+
+    @Test
+    public void testRejectsPasswordsBeyondTheQueue() {
+        PasswordHasher hasher = app.injector().instanceOf(PasswordHasher.class);
+        CompletionStage<String> running = hasher.hash("Hasher-Password-123");
+
+        try {
+            // Even at the lowest cost bcrypt takes far longer than submitting the second password
+            hasher.hash("Hasher-Password-456");
+            fail("The second password should be rejected");
+        } catch (PasswordHashingRejectedException e) {
+            // expected
+        }
+        assertEquals(1, hasher.getRejected());
+
+        running.toCompletableFuture().join();
+        assertNotNull(hasher.hash("Hasher-Password-456").toCompletableFuture().join());
+    }
+
+    @Test
+    public void testLogsInWithTheHashedPassword() {
+        UserFixture.user("hasher", "hasher@example.com", "Hasher-Password-123").save();
+
+        Result result = route(app, addCSRFToken(fakeRequest(POST, "/login")
+            .host("localhost:19001")
+            .bodyForm(Map.of("username", "hasher", "password", "Hasher-Password-123"))));
+
+        assertEquals(SEE_OTHER, result.status());
+        assertTrue(result.session().get("userId").isPresent());
+    }
+
+    @Test
+    public void testRehashesPasswordsOfALowerCostAtLogin() {
+        PasswordHasher hasher = app.injector().instanceOf(PasswordHasher.class);
+        User user = UserFixture.user("rehash", "rehash@example.com", "Hasher-Password-123");
+        user.save();
+        assertTrue(hasher.needsRehash(user.getPassword()));
+
+        Result result = route(app, addCSRFToken(fakeRequest(POST, "/login")
+            .host("localhost:19001")
+            .bodyForm(Map.of("username", "rehash", "password", "Hasher-Password-123"))));
+
+        assertEquals(SEE_OTHER, result.status());
+        await().atMost(5, TimeUnit.SECONDS).until(() ->
+            PasswordHasher.costOf(DB.find(User.class, user.getId()).getPassword()) == 5);
+        assertTrue(DB.find(User.class, user.getId()).checkPassword("Hasher-Password-123"));
+    }
+
+    @Test
+    public void testKeepsPasswordsOfAHigherCost() {
+        PasswordHasher hasher = app.injector().instanceOf(PasswordHasher.class);
+
+        assertFalse(hasher.needsRehash(BCrypt.hashpw("Hasher-Password-123", BCrypt.gensalt(6))));
+        assertFalse(hasher.needsRehash(BCrypt.hashpw("Hasher-Password-123", BCrypt.gensalt(5))));
+    }
+
+    @Test
+    public void testReadsTheCostOfHashes() {
+        assertEquals(10, PasswordHasher.costOf("$2a$10$abcdefghijklmnopqrstuu"));
+        assertEquals(12, PasswordHasher.costOf("$2$12$abcdefghijklmnopqrstuu"));
+        assertEquals(-1, PasswordHasher.costOf("plain"));
+        assertEquals(-1, PasswordHasher.costOf(null));
+    }
+
+    @Test
+    public void testCalibratesTheHighestCostWithinTheTarget() {
+        long millisecond = TimeUnit.MILLISECONDS.toNanos(1);
+
+        assertEquals(10, PasswordHasher.costFor(60 * millisecond, 100 * millisecond, 10, 16));
+        assertEquals(12, PasswordHasher.costFor(60 * millisecond, 250 * millisecond, 10, 16));
+        assertEquals(16, PasswordHasher.costFor(millisecond, 1000 * millisecond, 10, 16));
+        assertEquals(10, PasswordHasher.costFor(500 * millisecond, 250 * millisecond, 10, 16));
+    }
+}
@@ -0,0 +1,135 @@
+import models.PesticideRegistration;
+import org.junit.Test;
+import services.ImportProgress;
+import services.PesticideCsvParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the streaming pesticide CSV parser
+ */
+public class PesticideCsvParserTest {
+
+    private static final String HEADER = "登録番号,用途,農薬の種類,農薬の名称,略称,作物名,適用場所,適用病害虫雑草名,使用目的,希釈倍数使用量\n";
+
+    private final PesticideCsvParser parser = new PesticideCsvParser();
+
+    @Test
+    public void testParseCsvPassesEachRowToSink() throws IOException {
+        String csv = HEADER
+                + "\"12345\",殺虫剤,乳剤,テスト乳剤,テスト,きゅうり,,アブラムシ類,,1000倍\n"
+                + "too,short\n"
+                + ",殺虫剤,乳剤,登録番号なし,,きゅうり,,アブラムシ類,,1000倍\n";
+
+        List<PesticideRegistration> rows = new ArrayList<>();
+        int count = parser.parseCsv(new ByteArrayInputStream(csv.getBytes(PesticideCsvParser.CHARSET)), rows::add);
+
+        assertEquals("Only the valid row should be parsed", 1, count);
+        assertEquals(1, rows.size());
+        assertEquals("Quotes should be removed", "12345", rows.get(0).getRegistrationNumber());
+        assertEquals("きゅうり", rows.get(0).getCropName());
+        assertNull("Columns of the 10 column format should be left empty", rows.get(0).getSprayVolume());
+    }
+
+    @Test
+    public void testParseZipReadsEveryCsvEntry() throws IOException {
+        Path zip = Files.createTempFile("pesticide", ".zip");
+        try {
+            try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zip), PesticideCsvParser.CHARSET)) {
+                writeEntry(zos, "登録適用部一.csv", HEADER + "1,殺虫剤,乳剤,A乳剤,A,なす,,ハダニ類,,2000倍\n");
+                writeEntry(zos, "readme.txt", "not a csv");
+                writeEntry(zos, "登録適用部二.csv", HEADER + "2,殺菌剤,水和剤,B水和剤,B,トマト,,疫病,,1000倍\n"
+                        + "3,殺菌剤,水和剤,C水和剤,C,トマト,,灰色かび病,,1500倍\n");
+            }
+
+            List<PesticideRegistration> rows = new ArrayList<>();
+            int count = parser.parseZip(zip, rows::add);
+
+            assertEquals("Rows of all CSV entries should be parsed", 3, count);
+            assertEquals("3", rows.get(2).getRegistrationNumber());
+        } finally {
+            Files.deleteIfExists(zip);
+        }
+    }
+
+    @Test
+    public void testParallelParseKeepsEntryAndLineOrder() throws IOException {
+        Path zip = Files.createTempFile("pesticide", ".zip");
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zip), PesticideCsvParser.CHARSET)) {
+                for (int entry = 0; entry < 5; entry++) {
+                    StringBuilder csv = new StringBuilder(HEADER);
+                    for (int line = 0; line < 1000; line++) {
+                        csv.append(entry).append('-').append(line).append(",殺虫剤,乳剤,A乳剤,A,なす,,ハダニ類,,2000倍\n");
+                    }
+                    writeEntry(zos, "part" + entry + ".csv", csv.toString());
+                }
+            }
+
+            List<PesticideRegistration> sequential = new ArrayList<>();
+            parser.parseZip(zip, sequential::add);
+            List<PesticideRegistration> parallel = new ArrayList<>();
+            int count = parser.parseZip(zip, parallel::add, ImportProgress.NONE, executor, 3);
+
+            assertEquals(5000, count);
+            assertEquals(sequential.size(), parallel.size());
+            for (int i = 0; i < sequential.size(); i++) {
+                assertEquals(sequential.get(i).getRegistrationNumber(), parallel.get(i).getRegistrationNumber());
+            }
+        } finally {
+            executor.shutdownNow();
+            Files.deleteIfExists(zip);
+        }
+    }
+
+    @Test
+    public void testParallelParseStopsWhenSinkFails() throws IOException, InterruptedException {
+        Path zip = Files.createTempFile("pesticide", ".zip");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zip), PesticideCsvParser.CHARSET)) {
+                for (int entry = 0; entry < 3; entry++) {
+                    StringBuilder csv = new StringBuilder(HEADER);
+                    for (int line = 0; line < 10000; line++) {
+                        csv.append(entry).append('-').append(line).append(",殺虫剤,乳剤,A乳剤,A,なす,,ハダニ類,,2000倍\n");
+                    }
+                    writeEntry(zos, "part" + entry + ".csv", csv.toString());
+                }
+            }
+
+            try {
+                parser.parseZip(zip, row -> {
+                    throw new IllegalStateException("sink failed");
+                }, ImportProgress.NONE, executor, 2);
+                fail("The failure of the sink should be propagated");
+            } catch (IllegalStateException e) {
+                assertEquals("sink failed", e.getMessage());
+            }
+
+            executor.shutdown();
+            assertTrue("Parsing tasks should stop once the sink has failed", executor.awaitTermination(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+            Files.deleteIfExists(zip);
+        }
+    }
+
+    private void writeEntry(ZipOutputStream zos, String name, String content) throws IOException {
+        zos.putNextEntry(new ZipEntry(name));
+        zos.write(content.getBytes(PesticideCsvParser.CHARSET));
+        zos.closeEntry();
+    }
+}
@@ -0,0 +1,226 @@
+import io.ebean.DB;
+import models.PesticideRegistration;
+import org.junit.Test;
+import play.Application;
+import play.inject.guice.GuiceApplicationBuilder;
+import play.test.WithApplication;
+import repositoryies.PesticideDiff;
+import repositoryies.PesticideRepository;
+import services.PesticideCsvParser;
+import services.PesticideImportJob;
+import services.PesticideImportService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+
+/**
+ * Test for background pesticide import jobs
+ */
+public class PesticideImportTest extends WithApplication {
+
+    @Override
+    protected Application provideApplication() {
+        return new GuiceApplicationBuilder()
+            .configure("play.evolutions.db.default.enabled", "true")
+            .configure("play.evolutions.db.default.autoApply", "true")
+            .configure("play.filters.hosts.allowed.0", "localhost:19001")
+            .configure("db.default.driver", "org.h2.Driver")
+            .configure("db.default.url", "jdbc:h2:mem:pesticide-import-test")
+            .configure("pesticide.import.batchSize", "2")
+            .build();
+    }
+
+    @Test
+    public void testImportJobReportsProgress() throws IOException {
+        final PesticideImportService importService = app.injector().instanceOf(PesticideImportService.class);
+
+        Path zip = createZip("登録適用部一.csv", 1, 5);
+        try {
+            PesticideImportJob job = importService.submit(List.of(zip), "登録適用部一.zip", PesticideImportJob.Mode.APPEND);
+            assertTrue("Job should be available for polling", importService.findJob(job.getId()).isPresent());
+
+            await().atMost(10, SECONDS).until(job::isFinished);
+
+            assertEquals(PesticideImportJob.Status.COMPLETED, job.getStatus());
+            assertEquals(5, job.getParsed());
+            assertEquals(5, job.getInserted());
+            assertEquals(1, job.getRejected());
+            assertEquals(1.0, job.getProgress(), 0.0);
+        } finally {
+            Files.deleteIfExists(zip);
+        }
+    }
+
+    @Test
+    public void testReplaceSwapsDatasetAndDropsPreviousTable() throws Exception {
+        final PesticideImportService importService = app.injector().instanceOf(PesticideImportService.class);
+
+        Path first = createZip("登録適用部一.csv", 1, 3);
+        Path second = createZip("登録適用部二.csv", 11, 4);
+        try {
+            PesticideImportJob job = importService.submit(List.of(first), "登録適用部一.zip", PesticideImportJob.Mode.REPLACE);
+            await().atMost(10, SECONDS).until(job::isFinished);
+            assertEquals(PesticideImportJob.Status.COMPLETED, job.getStatus());
+            assertEquals(3, DB.find(PesticideRegistration.class).findCount());
+
+            job = importService.submit(List.of(first, second), "登録適用部一.zip, 登録適用部二.zip", PesticideImportJob.Mode.REPLACE);
+            await().atMost(10, SECONDS).until(job::isFinished);
+            assertEquals(PesticideImportJob.Status.COMPLETED, job.getStatus());
+            assertEquals(7, job.getInserted());
+            assertEquals(1.0, job.getProgress(), 0.0);
+
+            assertEquals("Only the rows of the new dataset should be visible",
+                7, DB.find(PesticideRegistration.class).findCount());
+            assertEquals(1, DB.find(PesticideRegistration.class).where().eq("registrationNumber", "11").findCount());
+            assertEquals(1, DB.sqlQuery("select count(*) as c from pesticide_dataset where status = 'ACTIVE'")
+                .findOne().getInteger("c").intValue());
+
+            await().atMost(10, SECONDS).until(() -> DB.sqlQuery(
+                "select count(*) as c from pesticide_dataset where status in ('RETIRED', 'FAILED')")
+                .findOne().getInteger("c") == 0);
+        } finally {
+            Files.deleteIfExists(first);
+            Files.deleteIfExists(second);
+        }
+    }
+
+    @Test
+    public void testIncrementalImportAppliesOnlyDifferences() throws Exception {
+        final PesticideImportService importService = app.injector().instanceOf(PesticideImportService.class);
+
+        String header = "登録番号,用途,農薬の種類,農薬の名称,略称,作物名,適用場所,適用病害虫雑草名,使用目的,希釈倍数使用量\n";
+        Path initial = createZip("登録適用部一.csv", header
+            + "1,殺虫剤,乳剤,テスト乳剤1,,きゅうり,,アブラムシ類,,1000倍\n"
+            + "1,殺虫剤,乳剤,テスト乳剤1,,きゅうり,,アブラムシ類,,1000倍\n"
+            + "2,殺虫剤,乳剤,テスト乳剤2,,トマト,,アブラムシ類,,1000倍\n"
+            + "3,殺菌剤,水和剤,テスト水和剤3,,トマト,,うどんこ病,,2000倍\n");
+        Path updated = createZip("登録適用部一.csv", header
+            + "1,殺虫剤,乳剤,テスト乳剤1,,きゅうり,,アブラムシ類,,1000倍\n"
+            + "1,殺虫剤,乳剤,テスト乳剤1,,きゅうり,,アブラムシ類,,1000倍\n"
+            + "2,殺虫剤,乳剤,テスト乳剤2,,トマト,,アブラムシ類,,1500倍\n"
+            + "4,除草剤,粒剤,テスト粒剤4,,水稲,,一年生雑草,,3kg\n");
+        try {
+            PesticideImportJob job = importService.submit(List.of(initial), "登録適用部一.zip", PesticideImportJob.Mode.REPLACE);
+            await().atMost(10, SECONDS).until(job::isFinished);
+            assertEquals(PesticideImportJob.Status.COMPLETED, job.getStatus());
+            Long changedId = DB.find(PesticideRegistration.class).where().eq("registrationNumber", "2").findOne().getId();
+
+            job = importService.submit(List.of(updated), "登録適用部一.zip", PesticideImportJob.Mode.INCREMENTAL);
+            await().atMost(10, SECONDS).until(job::isFinished);
+            assertEquals(PesticideImportJob.Status.COMPLETED, job.getStatus());
+
+            PesticideDiff diff = job.getDiff();
+            assertNotNull(diff);
+            assertEquals(1, diff.getInserted());
+            assertEquals(1, diff.getUpdated());
+            assertEquals(1, diff.getDeleted());
+            assertEquals(2, diff.getUnchanged());
+
+            assertEquals(4, DB.find(PesticideRegistration.class).findCount());
+            assertEquals(2, DB.find(PesticideRegistration.class).where().eq("registrationNumber", "1").findCount());
+            PesticideRegistration changed = DB.find(PesticideRegistration.class).where().eq("registrationNumber", "2").findOne();
+            assertEquals("1500倍", changed.getDilutionAmount());
+            assertEquals("Changed rows should be updated in place", changedId, changed.getId());
+            assertNull("Removed rows should be deleted",
+                DB.find(PesticideRegistration.class).where().eq("registrationNumber", "3").findOne());
+            assertNotNull(DB.find(PesticideRegistration.class).where().eq("registrationNumber", "4").findOne());
+        } finally {
+            Files.deleteIfExists(initial);
+            Files.deleteIfExists(updated);
+        }
+    }
+
+    @Test
+    public void testIncrementalImportAfterAppendingOverlappingRows() throws Exception {
+        final PesticideImportService importService = app.injector().instanceOf(PesticideImportService.class);
+
+        String header = "登録番号,用途,農薬の種類,農薬の名称,略称,作物名,適用場所,適用病害虫雑草名,使用目的,希釈倍数使用量\n";
+        Path first = createZip("登録適用部一.csv", header
+            + "1,殺虫剤,乳剤,テスト乳剤1,,きゅうり,,アブラムシ類,,1000倍\n"
+            + "2,殺虫剤,乳剤,テスト乳剤2,,トマト,,アブラムシ類,,1000倍\n");
+        Path second = createZip("登録適用部二.csv", header
+            + "2,殺虫剤,乳剤,テスト乳剤2,,トマト,,アブラムシ類,,1000倍\n"
+            + "3,殺菌剤,水和剤,テスト水和剤3,,トマト,,うどんこ病,,2000倍\n");
+        Path updated = createZip("登録適用部一.csv", header
+            + "1,殺虫剤,乳剤,テスト乳剤1,,きゅうり,,アブラムシ類,,1000倍\n"
+            + "2,殺虫剤,乳剤,テスト乳剤2,,トマト,,アブラムシ類,,1500倍\n"
+            + "3,殺菌剤,水和剤,テスト水和剤3,,トマト,,うどんこ病,,2000倍\n");
+        try {
+            for (Path zip : List.of(first, second)) {
+                PesticideImportJob job = importService.submit(List.of(zip), "登録適用部.zip", PesticideImportJob.Mode.APPEND);
+                await().atMost(10, SECONDS).until(job::isFinished);
+                assertEquals(PesticideImportJob.Status.COMPLETED, job.getStatus());
+            }
+            assertEquals("Appended rows should not reuse the row keys in the table", 4, DB.sqlQuery(
+                "select count(distinct row_key) as c from pesticide_registration").findOne().getInteger("c").intValue());
+
+            PesticideImportJob job = importService.submit(List.of(updated), "登録適用部一.zip", PesticideImportJob.Mode.INCREMENTAL);
+            await().atMost(10, SECONDS).until(job::isFinished);
+            assertEquals(PesticideImportJob.Status.COMPLETED, job.getStatus());
+
+            PesticideDiff diff = job.getDiff();
+            assertEquals(0, diff.getInserted());
+            assertEquals(1, diff.getUpdated());
+            assertEquals("The second copy of the appended row should be deleted", 1, diff.getDeleted());
+            assertEquals(3, DB.find(PesticideRegistration.class).findCount());
+            List<PesticideRegistration> changed = DB.find(PesticideRegistration.class).where().eq("registrationNumber", "2").findList();
+            assertEquals(1, changed.size());
+            assertEquals("1500倍", changed.get(0).getDilutionAmount());
+        } finally {
+            Files.deleteIfExists(first);
+            Files.deleteIfExists(second);
+            Files.deleteIfExists(updated);
+        }
+    }
+
+    @Test
+    public void testBulkInsertKeepsValuesAndTimestamps() throws Exception {
+        final PesticideRepository pesticideRepository = app.injector().instanceOf(PesticideRepository.class);
+
+        PesticideRegistration pesticide = new PesticideRegistration();
+        pesticide.setRegistrationNumber("B-1");
+        pesticide.setPesticideName("\"引用符\",カンマ入り");
+        pesticide.setCropName("トマト");
+
+        pesticideRepository.insertAll(List.of(pesticide)).toCompletableFuture().get();
+
+        PesticideRegistration saved = DB.find(PesticideRegistration.class).where().eq("registrationNumber", "B-1").findOne();
+        assertNotNull(saved);
+        assertNotNull("Bulk loaded rows should get an id", saved.getId());
+        assertEquals("\"引用符\",カンマ入り", saved.getPesticideName());
+        assertNull("Missing columns should stay null", saved.getSprayVolume());
+        assertNotNull("Created at should be set", saved.getCreatedAt());
+        assertNotNull("Updated at should be set", saved.getUpdatedAt());
+    }
+
+    /**
+     * Create a ZIP file with one CSV entry holding {@code count} valid rows numbered from
+     * {@code first}, followed by one invalid line
+     */
+    private static Path createZip(String entryName, int first, int count) throws IOException {
+        StringBuilder csv = new StringBuilder("登録番号,用途,農薬の種類,農薬の名称,略称,作物名,適用場所,適用病害虫雑草名,使用目的,希釈倍数使用量\n");
+        for (int i = first; i < first + count; i++) {
+            csv.append(i).append(",殺虫剤,乳剤,テスト乳剤").append(i).append(",,きゅうり,,アブラムシ類,,1000倍\n");
+        }
+        csv.append("invalid line\n");
+        return createZip(entryName, csv.toString());
+    }
+
+    private static Path createZip(String entryName, String csv) throws IOException {
+        Path zip = Files.createTempFile("pesticide", ".zip");
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zip), PesticideCsvParser.CHARSET)) {
+            zos.putNextEntry(new ZipEntry(entryName));
+            zos.write(csv.getBytes(PesticideCsvParser.CHARSET));
+            zos.closeEntry();
+        }
+        return zip;
+    }
+}
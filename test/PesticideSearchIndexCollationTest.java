@@ -0,0 +1,79 @@
+import io.ebean.DB;
+import io.ebean.PagedList;
+import models.PesticideRegistration;
+import org.junit.Test;
+import play.Application;
+import play.inject.guice.GuiceApplicationBuilder;
+import play.test.WithApplication;
+import repositoryies.PesticideRepository;
+import repositoryies.PesticideSearchIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+
+/**
+ * Test that the search index sorts like the database when the collation of the database
+ * differs from the order of Java strings. The English collation of H2 ignores case
+ * like the collations of PostgreSQL, while Java sorts capital letters first.
+ */
+public class PesticideSearchIndexCollationTest extends WithApplication {
+
+    @Override
+    protected Application provideApplication() {
+        return new GuiceApplicationBuilder()
+            .configure("play.evolutions.db.default.enabled", "true")
+            .configure("play.evolutions.db.default.autoApply", "true")
+            .configure("play.filters.hosts.allowed.0", "localhost:19001")
+            .configure("db.default.driver", "org.h2.Driver")
+            .configure("db.default.url", "jdbc:h2:mem:pesticide-search-index-collation-test;COLLATION=ENGLISH")
+            .build();
+    }
+
+    private static PesticideRegistration registration(String number, String name) {
+        PesticideRegistration pesticide = new PesticideRegistration();
+        pesticide.setRegistrationNumber(number);
+        pesticide.setPesticideName(name);
+        return pesticide;
+    }
+
+    private static List<String> names(List<PesticideRegistration> list) {
+        return list.stream()
+            .map(PesticideRegistration::getPesticideName)
+            .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testSortsLikeTheDatabase() {
+        PesticideRepository repository = app.injector().instanceOf(PesticideRepository.class);
+        PesticideSearchIndex index = app.injector().instanceOf(PesticideSearchIndex.class);
+        repository.insertAll(List.of(
+            registration("00001", "cherry"),
+            registration("00002", "Banana"),
+            registration("00003", null),
+            registration("00004", "apple")
+        )).toCompletableFuture().join();
+
+        List<String> database = names(DB.find(PesticideRegistration.class)
+            .orderBy("pesticideName asc nulls last, id asc")
+            .findList());
+        assertEquals(Arrays.asList("apple", "Banana", "cherry", null), database);
+
+        repository.page(0, 10, "pesticideName", "asc", "", "").toCompletableFuture().join();
+        await().atMost(10, SECONDS).until(index::isReady);
+
+        PagedList<PesticideRegistration> ascending = repository.page(0, 10, "pesticideName", "asc", "", "").toCompletableFuture().join();
+        assertEquals(database, names(ascending.getList()));
+
+        List<String> reversed = new ArrayList<>(database);
+        Collections.reverse(reversed);
+        PagedList<PesticideRegistration> descending = repository.page(0, 10, "pesticideName", "desc", "", "").toCompletableFuture().join();
+        assertEquals(reversed, names(descending.getList()));
+    }
+}
@@ -0,0 +1,117 @@
+import io.ebean.PagedList;
+import models.PesticideRegistration;
+import org.junit.Test;
+import play.Application;
+import play.inject.guice.GuiceApplicationBuilder;
+import play.test.WithApplication;
+import repositoryies.PesticideRepository;
+import repositoryies.PesticideSearchIndex;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+
+/**
+ * Test for the in-memory pesticide registration search index
+ */
+public class PesticideSearchIndexTest extends WithApplication {
+
+    @Override
+    protected Application provideApplication() {
+        return new GuiceApplicationBuilder()
+            .configure("play.evolutions.db.default.enabled", "true")
+            .configure("play.evolutions.db.default.autoApply", "true")
+            .configure("play.filters.hosts.allowed.0", "localhost:19001")
+            .configure("db.default.driver", "org.h2.Driver")
+            .configure("db.default.url", "jdbc:h2:mem:pesticide-search-index-test")
+            .build();
+    }
+
+    private static PesticideRegistration registration(String number, String name, String crop, String sprayVolume) {
+        PesticideRegistration pesticide = new PesticideRegistration();
+        pesticide.setRegistrationNumber(number);
+        pesticide.setPesticideName(name);
+        pesticide.setCropName(crop);
+        pesticide.setSprayVolume(sprayVolume);
+        return pesticide;
+    }
+
+    private PagedList<PesticideRegistration> page(int page, int pageSize, String sortBy, String order, String filter) {
+        PesticideRepository repository = app.injector().instanceOf(PesticideRepository.class);
+        return repository.page(page, pageSize, sortBy, order, filter, "").toCompletableFuture().join();
+    }
+
+    private static List<String> numbers(PagedList<PesticideRegistration> page) {
+        return page.getList().stream()
+            .map(PesticideRegistration::getRegistrationNumber)
+            .collect(Collectors.toList());
+    }
+
+    private PesticideSearchIndex loadIndex() {
+        PesticideRepository repository = app.injector().instanceOf(PesticideRepository.class);
+        PesticideSearchIndex index = app.injector().instanceOf(PesticideSearchIndex.class);
+        repository.insertAll(List.of(
+            registration("00003", "アセタミプリド水溶剤", "キャベツ", "100～300L/10a"),
+            registration("00001", "マンゼブ水和剤", "トマト", null),
+            registration("00002", "アセタミプリド粒剤", "トマト", "6kg/10a"),
+            registration("00004", "Bacillus Subtilis", "きゅうり", "200L/10a")
+        )).toCompletableFuture().join();
+
+        page(0, 10, "registrationNumber", "asc", null);
+        await().atMost(10, SECONDS).until(index::isReady);
+        return index;
+    }
+
+    @Test
+    public void testFiltersLikeTheDatabase() {
+        loadIndex();
+
+        assertEquals(List.of("00002", "00003"), numbers(page(0, 10, "registrationNumber", "asc", "アセタミプリド")));
+        assertEquals("Single characters should match", List.of("00001", "00002"), numbers(page(0, 10, "registrationNumber", "asc", "ト")));
+        assertEquals("Matching should ignore case", List.of("00004"), numbers(page(0, 10, "registrationNumber", "asc", "subtilis")));
+        assertEquals("Registration numbers should match", List.of("00003"), numbers(page(0, 10, "registrationNumber", "asc", "003")));
+        assertEquals("Every pair of characters occurring is not a match", 0,
+            page(0, 10, "registrationNumber", "asc", "トマトマ").getTotalCount());
+        assertEquals(0, page(0, 10, "registrationNumber", "asc", "存在しない").getTotalCount());
+    }
+
+    @Test
+    public void testSortsAndPages() {
+        loadIndex();
+
+        assertEquals(List.of("00004", "00003", "00002", "00001"), numbers(page(0, 10, "registrationNumber", "desc", null)));
+        assertEquals("Null values should sort last", List.of("00003", "00004", "00002", "00001"),
+            numbers(page(0, 10, "sprayVolume", "asc", null)));
+
+        PagedList<PesticideRegistration> second = page(1, 3, "registrationNumber", "asc", null);
+        assertEquals(List.of("00004"), numbers(second));
+        assertEquals(4, second.getTotalCount());
+        assertEquals(2, second.getTotalPageCount());
+        assertTrue(second.hasPrev());
+        assertFalse(second.hasNext());
+
+        PagedList<PesticideRegistration> filtered = page(0, 1, "cropName", "asc", "トマト");
+        assertEquals(2, filtered.getTotalCount());
+        assertEquals("トマト", filtered.getList().get(0).getCropName());
+        assertNotNull(filtered.getList().get(0).getId());
+    }
+
+    @Test
+    public void testChangesInvalidateTheIndex() {
+        PesticideSearchIndex index = loadIndex();
+        PesticideRepository repository = app.injector().instanceOf(PesticideRepository.class);
+
+        repository.insert(registration("00005", "アセタミプリド液剤", "なす", null)).toCompletableFuture().join();
+        await().atMost(10, SECONDS).until(index::isReady);
+
+        assertEquals(List.of("00002", "00003", "00005"), numbers(page(0, 10, "registrationNumber", "asc", "アセタミプリド")));
+
+        repository.deleteAll().toCompletableFuture().join();
+        await().atMost(10, SECONDS).until(index::isReady);
+
+        assertEquals(0, page(0, 10, "registrationNumber", "asc", null).getTotalCount());
+    }
+}
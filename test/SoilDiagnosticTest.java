@@ -8,6 +8,7 @@ import play.inject.guice.GuiceApplicationBuilder;
 import play.test.WithApplication;
 import repositoryies.SoilDiagnosticRepository;
 import repositoryies.FieldRepository;
+import repositoryies.KeysetPage;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -37,7 +38,7 @@ public class SoilDiagnosticTest extends WithApplication {
         final SoilDiagnosticRepository soilDiagnosticRepository = app.injector().instanceOf(SoilDiagnosticRepository.class);
         
         // Test that the repository can be injected and basic operations work
-        CompletionStage<PagedList<SoilDiagnostic>> stage = soilDiagnosticRepository.pageByUser(0, 10, "diagnosticDate", "DESC", "", 999L);
+        CompletionStage<KeysetPage<SoilDiagnostic>> stage = soilDiagnosticRepository.pageByUser(0, 10, "diagnosticDate", "DESC", "", "", 999L);
 
         await().atMost(1, SECONDS).until(() -> {
             try {
@@ -52,7 +53,7 @@ public class SoilDiagnosticTest extends WithApplication {
     @Test
     public void paginationEmpty() {
         final SoilDiagnosticRepository soilDiagnosticRepository = app.injector().instanceOf(SoilDiagnosticRepository.class);
-        CompletionStage<PagedList<SoilDiagnostic>> stage = soilDiagnosticRepository.pageByUser(0, 10, "diagnosticDate", "DESC", "", 999L);
+        CompletionStage<KeysetPage<SoilDiagnostic>> stage = soilDiagnosticRepository.pageByUser(0, 10, "diagnosticDate", "DESC", "", "", 999L);
 
         // Test that pagination works for non-existent user
         await().atMost(1, SECONDS).until(() -> {
@@ -0,0 +1,133 @@
+import io.ebean.DB;
+import io.ebean.Query;
+import models.Crop;
+import models.Field;
+import models.PesticideRegistration;
+import models.WorkHistory;
+import org.junit.Test;
+import play.Application;
+import play.inject.guice.GuiceApplicationBuilder;
+import play.test.WithApplication;
+import repositoryies.PesticideRepository;
+import repositoryies.TrigramIndexes;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Test for the trigram indexes of the list filters. The query plans can only be
+ * checked on PostgreSQL, which is used when TEST_POSTGRES_URL is set, e.g.
+ * TEST_POSTGRES_URL=jdbc:postgresql://localhost:5432/diary_test. Without it the
+ * H2 fallback is tested.
+ */
+public class TrigramIndexesTest extends WithApplication {
+
+    private static final String POSTGRES_URL = System.getenv("TEST_POSTGRES_URL");
+
+    @Override
+    protected Application provideApplication() {
+        GuiceApplicationBuilder builder = new GuiceApplicationBuilder()
+            .configure("play.evolutions.db.default.enabled", "true")
+            .configure("play.evolutions.db.default.autoApply", "true")
+            .configure("play.filters.hosts.allowed.0", "localhost:19001")
+            .configure("pesticide.search.index.enabled", "false");
+        if (POSTGRES_URL != null) {
+            return builder
+                .configure("db.default.driver", "org.postgresql.Driver")
+                .configure("db.default.url", POSTGRES_URL)
+                .configure("db.default.username", System.getenv().getOrDefault("TEST_POSTGRES_USER", "postgres"))
+                .configure("db.default.password", System.getenv().getOrDefault("TEST_POSTGRES_PASSWORD", ""))
+                .build();
+        }
+        return builder
+            .configure("db.default.driver", "org.h2.Driver")
+            .configure("db.default.url", "jdbc:h2:mem:trigram-indexes-test")
+            .build();
+    }
+
+    private static PesticideRegistration registration(String number, String name, String crop) {
+        PesticideRegistration pesticide = new PesticideRegistration();
+        pesticide.setRegistrationNumber(number);
+        pesticide.setPesticideName(name);
+        pesticide.setCropName(crop);
+        return pesticide;
+    }
+
+    @Test
+    public void testFiltersIgnoreCase() {
+        PesticideRepository repository = app.injector().instanceOf(PesticideRepository.class);
+        repository.deleteAll().toCompletableFuture().join();
+        repository.insertAll(List.of(
+            registration("00001", "Bacillus Subtilis", "トマト"),
+            registration("00002", "アセタミプリド水溶剤", "キャベツ")
+        )).toCompletableFuture().join();
+
+        assertEquals(1, repository.page(0, 10, "registrationNumber", "asc", "SUBTILIS", "").toCompletableFuture().join().getTotalCount());
+        assertEquals(1, repository.page(0, 10, "registrationNumber", "asc", "キャベツ", "").toCompletableFuture().join().getTotalCount());
+        assertEquals(2, repository.page(0, 10, "registrationNumber", "asc", "0000", "").toCompletableFuture().join().getTotalCount());
+    }
+
+    @Test
+    public void testNoIndexesWithoutPostgres() {
+        assumeTrue(POSTGRES_URL == null);
+        TrigramIndexes indexes = app.injector().instanceOf(TrigramIndexes.class);
+
+        assertEquals(0, (int) indexes.created().toCompletableFuture().join());
+    }
+
+    @Test
+    public void testFiltersUseIndexScans() throws SQLException {
+        assumeTrue(POSTGRES_URL != null);
+        app.injector().instanceOf(TrigramIndexes.class).created().toCompletableFuture().join();
+        String pattern = TrigramIndexes.containsPattern("トマト");
+
+        assertUsesTrigramIndex(DB.find(Crop.class).where().ilike("name", pattern).query(), 1);
+        assertUsesTrigramIndex(DB.find(Field.class).where().ilike("name", pattern).query(), 1);
+        assertUsesTrigramIndex(DB.find(WorkHistory.class).where().ilike("content", pattern).query(), 1);
+        assertUsesTrigramIndex(DB.find(PesticideRegistration.class).where()
+            .or()
+                .ilike("registrationNumber", pattern)
+                .ilike("pesticideName", pattern)
+                .ilike("cropName", pattern)
+            .endOr()
+            .query(), 3);
+    }
+
+    /**
+     * Explain the SQL Ebean generates for a query. Sequential scans are disabled,
+     * because the planner rightly prefers them for the few rows of a test database.
+     */
+    private static void assertUsesTrigramIndex(Query<?> query, int patterns) throws SQLException {
+        query.findList();
+        String sql = query.getGeneratedSql();
+        try (Connection connection = DB.getDefault().dataSource().getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("set enable_seqscan = off");
+            }
+            StringBuilder plan = new StringBuilder();
+            try (PreparedStatement explain = connection.prepareStatement("explain " + sql)) {
+                for (int i = 1; i <= patterns; i++) {
+                    explain.setString(i, TrigramIndexes.containsPattern("トマト"));
+                }
+                try (ResultSet rs = explain.executeQuery()) {
+                    while (rs.next()) {
+                        plan.append(rs.getString(1)).append('\n');
+                    }
+                }
+            } finally {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("reset enable_seqscan");
+                }
+            }
+            assertTrue("Expected an index scan on a trigram index:\n" + plan,
+                plan.toString().contains("Index Scan") && plan.toString().contains("_trgm"));
+        }
+    }
+}
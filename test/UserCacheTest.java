@@ -0,0 +1,72 @@
+import models.User;
+import org.junit.Test;
+import org.mindrot.jbcrypt.BCrypt;
+import play.Application;
+import play.inject.guice.GuiceApplicationBuilder;
+import play.test.WithApplication;
+import repositoryies.UserCache;
+import repositoryies.UserRepository;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the cache of authenticated users
+ */
+public class UserCacheTest extends WithApplication {
+
+    @Override
+    protected Application provideApplication() {
+        return new GuiceApplicationBuilder()
+            .configure("play.evolutions.db.default.enabled", "true")
+            .configure("play.evolutions.db.default.autoApply", "true")
+            .configure("play.filters.hosts.allowed.0", "localhost:19001")
+            .configure("db.default.driver", "org.h2.Driver")
+            .configure("db.default.url", "jdbc:h2:mem:user-cache-test")
+            .build();
+    }
+
+    private User findAuthenticated(Long id) {
+        UserRepository repository = app.injector().instanceOf(UserRepository.class);
+        return repository.findAuthenticated(id).toCompletableFuture().join().orElse(null);
+    }
+
+    @Test
+    public void testServesRepeatedLookupsFromMemory() {
+        UserCache cache = app.injector().instanceOf(UserCache.class);
+        User user = UserFixture.user("cached", "cached@example.com", "Cached-Password-123");
+        user.save();
+
+        assertEquals("cached", findAuthenticated(user.getId()).getUsername());
+        assertEquals("cached", findAuthenticated(user.getId()).getUsername());
+
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testDropsUsersOnUpdate() {
+        UserRepository repository = app.injector().instanceOf(UserRepository.class);
+        UserCache cache = app.injector().instanceOf(UserCache.class);
+        User user = UserFixture.user("reset", "reset@example.com", "Reset-Password-123");
+        user.save();
+        String oldPassword = findAuthenticated(user.getId()).getPassword();
+
+        User changed = repository.findByUsername("reset").toCompletableFuture().join().get();
+        changed.setPasswordHash(BCrypt.hashpw("Changed-Password-456", BCrypt.gensalt(UserFixture.COST)));
+        repository.update(changed).toCompletableFuture().join();
+
+        assertNotEquals("The changed password should be read again", oldPassword, findAuthenticated(user.getId()).getPassword());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testDoesNotCacheUnknownUsers() {
+        UserCache cache = app.injector().instanceOf(UserCache.class);
+
+        assertNull(findAuthenticated(-1L));
+        assertNull(findAuthenticated(-1L));
+
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,28 @@
+import models.User;
+import org.mindrot.jbcrypt.BCrypt;
+
+/**
+ * Users for the tests. Their passwords are hashed with the lowest bcrypt cost, so that
+ * creating them takes no noticeable time.
+ */
+final class UserFixture {
+
+    /**
+     * bcrypt cost of the passwords, the lowest jBCrypt accepts
+     */
+    static final int COST = 4;
+
+    private UserFixture() {
+    }
+
+    /**
+     * A new user that is not saved yet
+     */
+    static User user(String username, String email, String password) {
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(email);
+        user.setPasswordHash(BCrypt.hashpw(password, BCrypt.gensalt(COST)));
+        return user;
+    }
+}
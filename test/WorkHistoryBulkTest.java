@@ -0,0 +1,116 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.ebean.DB;
+import models.Crop;
+import models.Field;
+import models.User;
+import models.WorkHistory;
+import org.junit.Test;
+import play.Application;
+import play.inject.guice.GuiceApplicationBuilder;
+import play.libs.Json;
+import play.mvc.Result;
+import play.test.WithApplication;
+
+import static org.junit.Assert.*;
+import static play.test.Helpers.*;
+
+/**
+ * Test for saving many work histories with one request
+ */
+public class WorkHistoryBulkTest extends WithApplication {
+
+    @Override
+    protected Application provideApplication() {
+        return new GuiceApplicationBuilder()
+            .configure("play.evolutions.db.default.enabled", "true")
+            .configure("play.evolutions.db.default.autoApply", "true")
+            .configure("play.filters.hosts.allowed.0", "localhost:19001")
+            .configure("db.default.driver", "org.h2.Driver")
+            .configure("db.default.url", "jdbc:h2:mem:work-history-bulk-test")
+            .build();
+    }
+
+    private static User user(String name) {
+        User user = UserFixture.user(name, name + "@example.com", "Bulk-Password-123");
+        user.save();
+        return user;
+    }
+
+    private static void fieldAndCrop(long id, User user) {
+        Field field = new Field();
+        field.setId(id);
+        field.setName("圃場" + id);
+        field.setUser(user);
+        DB.insert(field);
+        Crop crop = new Crop();
+        crop.setId(id);
+        crop.setName("作物" + id);
+        crop.setUser(user);
+        DB.insert(crop);
+    }
+
+    private static ObjectNode entry(long fieldId, long cropId, String content) {
+        ObjectNode entry = Json.newObject();
+        entry.put("date", "2024-04-01");
+        entry.put("startTime", "09:00");
+        entry.put("endTime", "11:00");
+        entry.putObject("field").put("id", fieldId);
+        entry.putObject("crop").put("id", cropId);
+        entry.put("content", content);
+        return entry;
+    }
+
+    private Result post(User user, JsonNode body) {
+        return route(app, fakeRequest(POST, controllers.routes.WorkHistoryController.bulkSave().url())
+            .host("localhost:19001")
+            .session("userId", user.getId().toString())
+            .bodyJson(body));
+    }
+
+    @Test
+    public void testSavesAllEntries() {
+        User user = user("bulk");
+        fieldAndCrop(1L, user);
+        ArrayNode body = Json.newArray();
+        for (int i = 0; i < 3; i++) {
+            body.add(entry(1L, 1L, "収穫" + i));
+        }
+
+        Result result = post(user, body);
+
+        assertEquals(CREATED, result.status());
+        assertEquals(3, Json.parse(contentAsString(result)).get("ids").size());
+        assertEquals(3, DB.find(WorkHistory.class).where().eq("user.id", user.getId()).findCount());
+    }
+
+    @Test
+    public void testReportsErrorsPerEntryAndSavesNothing() {
+        User user = user("bulk");
+        fieldAndCrop(1L, user);
+        fieldAndCrop(2L, user("other"));
+        ArrayNode body = Json.newArray();
+        body.add(entry(1L, 1L, "収穫"));
+        body.add(entry(1L, 1L, ""));
+        body.add(entry(2L, 1L, "他人の圃場"));
+
+        Result result = post(user, body);
+
+        assertEquals(BAD_REQUEST, result.status());
+        JsonNode errors = Json.parse(contentAsString(result)).get("errors");
+        assertEquals(2, errors.size());
+        assertEquals(1, errors.get(0).get("row").asInt());
+        assertEquals("content", errors.get(0).get("field").asText());
+        assertEquals(2, errors.get(1).get("row").asInt());
+        assertEquals("field.id", errors.get(1).get("field").asText());
+        assertEquals(0, DB.find(WorkHistory.class).findCount());
+    }
+
+    @Test
+    public void testRejectsBodiesOtherThanArrays() {
+        Result result = post(user("bulk"), Json.newObject());
+
+        assertEquals(BAD_REQUEST, result.status());
+    }
+}
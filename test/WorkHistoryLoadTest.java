@@ -0,0 +1,130 @@
+import io.ebean.DB;
+import models.Crop;
+import models.Field;
+import models.User;
+import models.WorkHistory;
+import org.junit.Test;
+import play.Application;
+import play.inject.guice.GuiceApplicationBuilder;
+import play.mvc.Result;
+import play.test.WithApplication;
+import repositoryies.Bulkhead;
+import repositoryies.Bulkheads;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+import static play.test.Helpers.*;
+
+/**
+ * Load test for the work history forms. The rendering pool is shrunk to two threads,
+ * so that a form waiting for the database on a rendering thread would hold up every
+ * other request; many edits waiting for the database must leave the pool free for
+ * other pages.
+ */
+public class WorkHistoryLoadTest extends WithApplication {
+
+    private static final int CONCURRENT_EDITS = 40;
+
+    @Override
+    protected Application provideApplication() {
+        return new GuiceApplicationBuilder()
+            .configure("play.evolutions.db.default.enabled", "true")
+            .configure("play.evolutions.db.default.autoApply", "true")
+            .configure("play.filters.hosts.allowed.0", "localhost:19001")
+            .configure("db.default.driver", "org.h2.Driver")
+            .configure("db.default.url", "jdbc:h2:mem:work-history-load-test")
+            .configure("pekko.actor.default-dispatcher.fork-join-executor.parallelism-min", 2)
+            .configure("pekko.actor.default-dispatcher.fork-join-executor.parallelism-max", 2)
+            .configure("options.cache.ttl", "0s")
+            .configure("database.bulkheads.interactive.maxQueued", CONCURRENT_EDITS * 3)
+            .build();
+    }
+
+    private WorkHistory createWorkHistory() {
+        User user = UserFixture.user("load", "load@example.com", "Load-Password-123");
+        user.save();
+        Field field = new Field();
+        field.setId(1L);
+        field.setName("北圃場");
+        field.setUser(user);
+        DB.insert(field);
+        Crop crop = new Crop();
+        crop.setId(1L);
+        crop.setName("トマト");
+        crop.setUser(user);
+        DB.insert(crop);
+        WorkHistory workHistory = new WorkHistory();
+        workHistory.setId(1L);
+        workHistory.setDate(LocalDate.of(2024, 4, 1));
+        workHistory.setStartTime(LocalTime.of(9, 0));
+        workHistory.setEndTime(LocalTime.of(11, 0));
+        workHistory.setField(field);
+        workHistory.setCrop(crop);
+        workHistory.setContent("定植");
+        workHistory.setUser(user);
+        DB.insert(workHistory);
+        return workHistory;
+    }
+
+    @Test
+    public void testConcurrentEditsDoNotStarveTheRenderingPool() throws Exception {
+        WorkHistory workHistory = createWorkHistory();
+        String userId = workHistory.getUser().getId().toString();
+        String editUrl = controllers.routes.WorkHistoryController.edit(workHistory.getId()).url();
+
+        // Hold the database work of the edits until the login page was rendered
+        Bulkhead interactive = app.injector().instanceOf(Bulkheads.class).interactive();
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < interactive.getMaxConcurrent(); i++) {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    release.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, interactive);
+        }
+
+        ExecutorService clients = Executors.newFixedThreadPool(CONCURRENT_EDITS + 1);
+        try {
+            List<CompletableFuture<Result>> edits = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_EDITS; i++) {
+                edits.add(CompletableFuture.supplyAsync(() -> route(app, fakeRequest(GET, editUrl)
+                    .host("localhost:19001")
+                    .session("userId", userId)), clients));
+            }
+            // Each edit looks up the work history and reads the field and crop options.
+            // An edit waiting for them on a rendering thread would never get this far.
+            await().atMost(10, TimeUnit.SECONDS).until(() -> interactive.getQueued() == CONCURRENT_EDITS * 3);
+
+            Result login = CompletableFuture.supplyAsync(() -> route(app,
+                    fakeRequest(GET, controllers.routes.AuthController.showLogin().url()).host("localhost:19001")), clients)
+                .get(10, TimeUnit.SECONDS);
+
+            assertEquals(OK, login.status());
+            for (CompletableFuture<Result> edit : edits) {
+                assertFalse("The edits should still wait for the database", edit.isDone());
+            }
+
+            release.countDown();
+            for (CompletableFuture<Result> edit : edits) {
+                Result result = edit.get(30, TimeUnit.SECONDS);
+                assertEquals(OK, result.status());
+                assertTrue(contentAsString(result).contains("北圃場"));
+            }
+        } finally {
+            release.countDown();
+            clients.shutdownNow();
+        }
+    }
+}
@@ -7,6 +7,7 @@ import org.junit.Test;
 import play.Application;
 import play.inject.guice.GuiceApplicationBuilder;
 import play.test.WithApplication;
+import repositoryies.KeysetPage;
 import repositoryies.WorkHistoryRepository;
 
 import java.time.LocalDate;
@@ -37,7 +38,7 @@ public class WorkHistoryTest extends WithApplication {
         final WorkHistoryRepository workHistoryRepository = app.injector().instanceOf(WorkHistoryRepository.class);
         
         // Test that the repository can be injected and basic operations work
-        CompletionStage<PagedList<WorkHistory>> stage = workHistoryRepository.pageByUser(0, 10, "date", "DESC", "", 999L);
+        CompletionStage<KeysetPage<WorkHistory>> stage = workHistoryRepository.pageByUser(0, 10, "date", "DESC", "", "", 999L);
 
         await().atMost(1, SECONDS).until(() -> {
             try {
@@ -52,7 +53,7 @@ public class WorkHistoryTest extends WithApplication {
     @Test
     public void paginationEmpty() {
         final WorkHistoryRepository workHistoryRepository = app.injector().instanceOf(WorkHistoryRepository.class);
-        CompletionStage<PagedList<WorkHistory>> stage = workHistoryRepository.pageByUser(0, 10, "date", "DESC", "", 999L);
+        CompletionStage<KeysetPage<WorkHistory>> stage = workHistoryRepository.pageByUser(0, 10, "date", "DESC", "", "", 999L);
 
         // Test that pagination works for non-existent user
         await().atMost(1, SECONDS).until(() -> {